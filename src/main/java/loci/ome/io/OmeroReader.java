@@ -34,7 +34,9 @@ import java.util.Arrays;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 
 import loci.common.Constants;
@@ -96,6 +98,12 @@ public class OmeroReader extends FormatReader {
 
     public static final int DEFAULT_PORT = 4064;
 
+    /** Default maximum number of bytes of recently read regions kept. */
+    public static final long DEFAULT_CACHE_SIZE = 32L * 1024 * 1024;
+
+    /** Default number of regions requested ahead of those being read. */
+    public static final int DEFAULT_READ_AHEAD = 2;
+
     // -- Fields --
 
     private String server;
@@ -123,6 +131,24 @@ public class OmeroReader extends FormatReader {
     private Image img;
     private Pixels pix;
 
+    /** The store from which pixels are read, open until the reader closes. */
+    private RawPixelsStorePrx pixelsStore;
+
+    private long cacheSize = DEFAULT_CACHE_SIZE;
+    private int readAhead = DEFAULT_READ_AHEAD;
+
+    /** Recently read regions, least recently used first. */
+    private final LinkedHashMap<Region, byte[]> cache =
+            new LinkedHashMap<Region, byte[]>(16, 0.75f, true);
+    private long cachedBytes;
+
+    /** Regions requested ahead of being read, oldest first. */
+    private final LinkedHashMap<Region, PendingRead> pending =
+            new LinkedHashMap<Region, PendingRead>();
+
+    /** The tile size last seen at the start of a row and of a column. */
+    private int tileWidth, tileHeight;
+
     // -- Constructors --
 
     public OmeroReader() {
@@ -163,6 +189,24 @@ public class OmeroReader extends FormatReader {
         this.groupID = groupID;
     }
 
+    /**
+     * Sets the maximum number of bytes of recently read regions to keep,
+     * 0 to disable caching.
+     */
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = Math.max(0, cacheSize);
+        evict();
+    }
+
+    /**
+     * Sets the number of regions to request from the server ahead of their
+     * being read, 0 to disable reading ahead. Regions are predicted by
+     * assuming that tiles are read row by row and planes in order.
+     */
+    public void setReadAhead(int readAhead) {
+        this.readAhead = Math.max(0, readAhead);
+    }
+
     // -- IFormatReader methods --
 
     @Override
@@ -178,27 +222,12 @@ public class OmeroReader extends FormatReader {
         FormatTools.checkPlaneNumber(this, no);
         FormatTools.checkBufferSize(this, buf.length, w, h);
 
-        final int[] zct = FormatTools.getZCTCoords(this, no);
-
         final byte[] plane;
-        RawPixelsStorePrx store = null;
         try {
-            store = serviceFactory.createRawPixelsStore();
-            store.setPixelsId(pix.getId().getValue(), false);
-            plane = store.getTile(zct[0], zct[1], zct[2], x, y, w, h);
+            plane = readRegion(new Region(no, x, y, w, h));
         }
         catch (ServerError e) {
             throw new FormatException(e);
-        } finally {
-            // cannot use try-with-resources
-            // RawPixelsStorePrx does not implement autocloseable
-            if (store != null) {
-                try {
-                    store.close();
-                } catch (Exception ex) {
-                    throw new FormatException(ex);
-                }
-            }
         }
 
         System.arraycopy(plane, 0, buf, 0, plane.length);
@@ -207,6 +236,7 @@ public class OmeroReader extends FormatReader {
 
     @Override
     public void close(boolean fileOnly) throws IOException {
+        closeStore();
         super.close(fileOnly);
         if (!fileOnly) {
             if (secureClient != null) {
@@ -465,6 +495,182 @@ public class OmeroReader extends FormatReader {
         }
     }
 
+    // -- Helper methods --
+
+    /**
+     * Reads a region, noting the tile size if it starts a row or column, and
+     * requests the regions predicted to follow it.
+     */
+    byte[] readRegion(Region region) throws ServerError {
+        final byte[] plane = read(region);
+        if (region.x == 0) tileWidth = region.w;
+        if (region.y == 0) tileHeight = region.h;
+        if (readAhead > 0) {
+            requestAhead(region);
+        }
+        return plane;
+    }
+
+    /**
+     * Reads a region from the cache, from a request sent ahead or else from
+     * the server, and caches it.
+     */
+    private byte[] read(Region region) throws ServerError {
+        byte[] plane = cache.get(region);
+        if (plane != null) {
+            return plane;
+        }
+        final PendingRead result = pending.remove(region);
+        plane = result != null ? result.get() : fetch(region);
+        addToCache(region, plane);
+        return plane;
+    }
+
+    /**
+     * Sends requests for the regions predicted to be read after the given
+     * one, unless already cached or requested. Completed requests which were
+     * not read are moved to the cache.
+     */
+    private void requestAhead(Region region) throws ServerError {
+        final List<Region> next = new ArrayList<Region>(readAhead);
+        Region r = region;
+        for (int i = 0; i < readAhead; i++) {
+            r = next(r);
+            if (r == null) break;
+            next.add(r);
+        }
+        final Iterator<Map.Entry<Region, PendingRead>> it =
+                pending.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<Region, PendingRead> e = it.next();
+            if (!next.contains(e.getKey()) &&
+                    (e.getValue().isCompleted() || pending.size() > 2 * readAhead)) {
+                it.remove();
+                try {
+                    addToCache(e.getKey(), e.getValue().get());
+                } catch (ServerError | Ice.LocalException ex) {
+                    LOGGER.debug("Discarding failed read ahead", ex);
+                }
+            }
+        }
+        for (final Region n : next) {
+            if (cache.containsKey(n) || pending.containsKey(n)) continue;
+            pending.put(n, request(n));
+        }
+    }
+
+    /**
+     * Predicts the region read after the given one: the next tile of the
+     * row, the first tile of the next row or the first tile of the next
+     * plane in the dimension order.
+     *
+     * @return the next region or <code>null</code> at the end of the image
+     */
+    Region next(Region r) {
+        final int sizeX = getSizeX(), sizeY = getSizeY();
+        if (r.x + r.w < sizeX) {
+            final int x = r.x + r.w;
+            return new Region(r.no, x, r.y, Math.min(r.w, sizeX - x), r.h);
+        }
+        final int w = Math.min(tileWidth > 0 ? tileWidth : r.w, sizeX);
+        if (r.y + r.h < sizeY) {
+            final int y = r.y + r.h;
+            return new Region(r.no, 0, y, w, Math.min(r.h, sizeY - y));
+        }
+        if (r.no + 1 < getImageCount()) {
+            final int h = Math.min(tileHeight > 0 ? tileHeight : r.h, sizeY);
+            return new Region(r.no + 1, 0, 0, w, h);
+        }
+        return null;
+    }
+
+    /** Reads a region from the server, waiting for the reply. */
+    byte[] fetch(Region region) throws ServerError {
+        final int[] zct = FormatTools.getZCTCoords(this, region.no);
+        return getStore().getTile(zct[0], zct[1], zct[2],
+                region.x, region.y, region.w, region.h);
+    }
+
+    /** Sends a request for a region to the server without waiting. */
+    PendingRead request(Region region) throws ServerError {
+        final int[] zct = FormatTools.getZCTCoords(this, region.no);
+        final RawPixelsStorePrx store = getStore();
+        final Ice.AsyncResult result = store.begin_getTile(zct[0], zct[1],
+                zct[2], region.x, region.y, region.w, region.h);
+        return new PendingRead() {
+            public boolean isCompleted() {
+                return result.isCompleted();
+            }
+            public byte[] get() throws ServerError {
+                return store.end_getTile(result);
+            }
+            public void waitForCompleted() {
+                result.waitForCompleted();
+            }
+        };
+    }
+
+    /** @return if the region is held by the cache */
+    boolean isCached(Region region) {
+        return cache.containsKey(region);
+    }
+
+    /** @return if the region has been requested and not yet read */
+    boolean isPending(Region region) {
+        return pending.containsKey(region);
+    }
+
+    /** @return the number of bytes held by the cache */
+    long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    private void addToCache(Region region, byte[] plane) {
+        if (plane.length > cacheSize) return;
+        final byte[] previous = cache.put(region, plane);
+        if (previous != null) cachedBytes -= previous.length;
+        cachedBytes += plane.length;
+        evict();
+    }
+
+    private void evict() {
+        final Iterator<byte[]> it = cache.values().iterator();
+        while (cachedBytes > cacheSize && it.hasNext()) {
+            cachedBytes -= it.next().length;
+            it.remove();
+        }
+    }
+
+    private RawPixelsStorePrx getStore() throws ServerError {
+        if (pixelsStore == null) {
+            pixelsStore = serviceFactory.createRawPixelsStore();
+            pixelsStore.setPixelsId(pix.getId().getValue(), false);
+        }
+        return pixelsStore;
+    }
+
+    /** Waits for outstanding requests, empties the cache and closes the store. */
+    private void closeStore() {
+        cache.clear();
+        cachedBytes = 0;
+        tileWidth = tileHeight = 0;
+        if (pixelsStore == null) {
+            pending.clear();
+            return;
+        }
+        try {
+            for (PendingRead result : pending.values()) {
+                result.waitForCompleted();
+            }
+            pixelsStore.close();
+        } catch (Exception e) {
+            LOGGER.warn("Failed to close the pixels store", e);
+        } finally {
+            pending.clear();
+            pixelsStore = null;
+        }
+    }
+
     /** A simple command line tool for downloading images from OMERO. */
     public static void main(String[] args) throws Exception {
         try (BufferedReader con = new BufferedReader(
@@ -870,4 +1076,40 @@ public class OmeroReader extends FormatReader {
 
 
 
+    /** A region requested from the server ahead of being read. */
+    interface PendingRead {
+
+        boolean isCompleted();
+
+        /** Waits for the region if necessary and returns it. */
+        byte[] get() throws ServerError;
+
+        void waitForCompleted();
+    }
+
+    /** A region of a plane, as passed to {@link #openBytes}. */
+    static final class Region {
+
+        final int no, x, y, w, h;
+
+        Region(int no, int x, int y, int w, int h) {
+            this.no = no;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Region)) return false;
+            final Region r = (Region) o;
+            return no == r.no && x == r.x && y == r.y && w == r.w && h == r.h;
+        }
+
+        @Override
+        public int hashCode() {
+            return (((no * 31 + x) * 31 + y) * 31 + w) * 31 + h;
+        }
+    }
 }
@@ -242,9 +242,21 @@ public class OMEROMetadataStoreClient
      */
     private Long groupID = null;
 
+    /** Ordering of the container cache by the OME-XML model hierarchy. */
+    private final OMEXMLModelComparator modelComparator =
+        new OMEXMLModelComparator();
+
     /** Our IObject container cache. */
     private Map<LSID, IObjectContainer> containerCache =
-        new TreeMap<LSID, IObjectContainer>(new OMEXMLModelComparator());
+        new TreeMap<LSID, IObjectContainer>(modelComparator);
+
+    /**
+     * Secondary index of the container cache by model class so that
+     * containers can be found from their integer indexes without building
+     * an {@link LSID}, and enumerated by class without scanning every key.
+     */
+    private Map<Class<? extends IObject>, ClassContainers> containersByClass =
+        new HashMap<Class<? extends IObject>, ClassContainers>();
 
     /** Our LSID reference cache. */
     private Map<LSID, List<LSID>> referenceCache =
@@ -274,6 +286,9 @@ public class OMEROMetadataStoreClient
 
     private OMEROMetadataStoreClientRoot pixelsList = new OMEROMetadataStoreClientRoot();
 
+    /** Round trip times in milliseconds of the batches sent by saveToDB(). */
+    private final List<Long> saveBatchTimes = new ArrayList<Long>();
+
     private boolean encryptedConnection = false;
 
     private client c;
@@ -322,6 +337,14 @@ public class OMEROMetadataStoreClient
     /** Image channel minimums and maximums. */
     private double[][][] imageChannelGlobalMinMax;
 
+    /**
+     * The number of channels of each image, recorded by
+     * {@link #saveToDB(FilesetJobLink)} before the containers are evicted so
+     * that {@link #setChannelGlobalMinMax(int, double, double, int)} can be
+     * called while the pixel data is parsed; <code>null</code> until then.
+     */
+    private int[] savedSizeC;
+
     /** Executor that will run our keep alive task. */
     private ScheduledThreadPoolExecutor executor;
 
@@ -1179,11 +1202,14 @@ public class OMEROMetadataStoreClient
             authoritativeContainerCache =
                 new HashMap<Class<? extends IObject>, Map<String, IObjectContainer>>();
             containerCache =
-                new TreeMap<LSID, IObjectContainer>(new OMEXMLModelComparator());
+                new TreeMap<LSID, IObjectContainer>(modelComparator);
+            containersByClass =
+                new HashMap<Class<? extends IObject>, ClassContainers>();
             referenceCache = new HashMap<LSID, List<LSID>>();
             referenceCacheCheck = new HashMap<LSID, Set<LSID>>();
             referenceStringCache = null;
             imageChannelGlobalMinMax = null;
+            savedSizeC = null;
             userSpecifiedAnnotations = null;
             userSpecifiedName = null;
             userSpecifiedDescription = null;
@@ -1771,10 +1797,6 @@ public class OMEROMetadataStoreClient
     {
         try
         {
-            Collection<IObjectContainer> containers = containerCache.values();
-            IObjectContainer[] containerArray =
-                containers.toArray(new IObjectContainer[containers.size()]);
-
             if (log.isDebugEnabled())
             {
                 log.debug("Starting containers....");
@@ -1802,52 +1824,76 @@ public class OMEROMetadataStoreClient
                           + " entries.");
             }
 
+            saveBatchTimes.clear();
             int maxBatchSize = getDefaultBatchSize();
+
+            // Only one batch is outstanding at a time since the server-side
+            // store must process them in order; each is acknowledged before
+            // the next is sent and the time it took is recorded. The cache
+            // is copied first since containers are evicted from it as each
+            // batch is acknowledged, after recording what the channel
+            // minimums and maximums still need.
+            savedSizeC = new int[countCachedContainers(Image.class)];
+            for (int series = 0; series < savedSizeC.length; series++)
+            {
+                savedSizeC[series] = getSizeC(series);
+            }
+            log.info("Handling # of containers: {}", containerCache.size());
+            int containerCount = containerCache.size();
+            LSID[] keys = new LSID[containerCount];
+            IObjectContainer[] containers = new IObjectContainer[containerCount];
+            int index = 0;
+            for (Entry<LSID, IObjectContainer> entry : containerCache.entrySet())
+            {
+                keys[index] = entry.getKey();
+                containers[index] = entry.getValue();
+                index++;
+            }
+            Batch pending = null;
             int containerBatchCount = 0;
-            int containerPointer = 0;
-            log.info("Handling # of containers: {}", containerArray.length);
-            while (containerPointer < containerArray.length)
+            for (int from = 0; from < containerCount; from += maxBatchSize)
             {
-                int nObjects = (int) Math.min(
-                    maxBatchSize, containerArray.length - containerPointer);
-
-                IObjectContainer[] batch = Arrays.copyOfRange(
-                        containerArray, containerPointer, containerPointer+nObjects);
-
-                delegate.updateObjects(batch);
-                containerPointer += nObjects;
+                int to = Math.min(containerCount, from + maxBatchSize);
+                IObjectContainer[] batch = Arrays.copyOfRange(containers, from, to);
+                LSID[] batchKeys = Arrays.copyOfRange(keys, from, to);
+                completeBatch(pending);
 
                 containerBatchCount += 1;
                 if (containerBatchCount > 1)
                 {
                     log.info("Starting containerBatch #{}", containerBatchCount);
                 }
+                pending = new Batch(BatchKind.CONTAINERS, containerBatchCount,
+                        batch.length, batchKeys);
+                pending.result = delegate.begin_updateObjects(batch);
             }
+            keys = null;
+            containers = null;
 
             int referenceBatchCount = 0;
-            int referencePointer = 0;
-            String[] referenceKeys = referenceStringCache.keySet().toArray(
-              new String[referenceStringCache.size()]);
+            Iterator<Entry<String, String[]>> references =
+                referenceStringCache.entrySet().iterator();
 
-            log.info("Handling # of references: {}", referenceKeys.length);
-            while (referencePointer < referenceKeys.length) {
+            log.info("Handling # of references: {}", referenceStringCache.size());
+            while (references.hasNext()) {
+                Map<String, String[]> referenceBatch = new HashMap<String, String[]>();
+                while (references.hasNext() && referenceBatch.size() < maxBatchSize)
+                {
+                    Entry<String, String[]> entry = references.next();
+                    referenceBatch.put(entry.getKey(), entry.getValue());
+                }
+                completeBatch(pending);
 
                 referenceBatchCount += 1;
                 if (referenceBatchCount > 1)
                 {
                     log.info("Starting referenceBatch #{}", referenceBatchCount);
                 }
-
-                Map<String, String[]> referenceBatch = new HashMap<String, String[]>();
-                int batchSize = (int) Math.min(
-                    maxBatchSize, referenceKeys.length - referencePointer);
-                for (int i=0; i<batchSize; i++) {
-                    String key = referenceKeys[referencePointer + i];
-                    referenceBatch.put(key, referenceStringCache.get(key));
-                }
-                delegate.updateReferences(referenceBatch);
-                referencePointer += batchSize;
+                pending = new Batch(BatchKind.REFERENCES, referenceBatchCount,
+                        referenceBatch.size(), null);
+                pending.result = delegate.begin_updateReferences(referenceBatch);
             }
+            completeBatch(pending);
 
             Map<String, List<IObject>> rv = delegate.saveToDB(link);
             pixelsList = new OMEROMetadataStoreClientRoot((List) rv.get("Pixels"));
@@ -1869,6 +1915,53 @@ public class OMEROMetadataStoreClient
         }
     }
 
+    /**
+     * Wait for the server to acknowledge a batch sent by
+     * {@link #saveToDB(FilesetJobLink)}, recording how long it took. The
+     * containers of an acknowledged batch are held by the server-side store
+     * so they are evicted from the container cache.
+     * @param batch the batch in flight, may be <code>null</code>
+     * @throws ServerError if the server failed to handle the batch
+     */
+    private void completeBatch(Batch batch) throws ServerError
+    {
+        if (batch == null)
+        {
+            return;
+        }
+        switch (batch.kind)
+        {
+            case CONTAINERS:
+                delegate.end_updateObjects(batch.result);
+                for (LSID key : batch.containers)
+                {
+                    removeIObjectContainer(key);
+                }
+                break;
+            case REFERENCES:
+                delegate.end_updateReferences(batch.result);
+                break;
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(
+                System.nanoTime() - batch.started);
+        saveBatchTimes.add(elapsed);
+        log.debug("{} #{} of {} handled in {} ms",
+                batch.kind.label, batch.number, batch.size, elapsed);
+    }
+
+    /**
+     * Returns the time taken by the server to acknowledge each of the
+     * <code>updateObjects</code> and <code>updateReferences</code> batches
+     * sent by the last call to {@link #saveToDB(FilesetJobLink)}, in the
+     * order they were sent. Useful for tuning <code>omero.batch_size</code>
+     * against server latency.
+     * @return the round trip time of each batch in milliseconds.
+     */
+    public List<Long> getSaveBatchTimes()
+    {
+        return Collections.unmodifiableList(new ArrayList<Long>(saveBatchTimes));
+    }
+
     public List<InteractiveProcessorPrx> launchProcessing()
     {
         try {
@@ -2241,18 +2334,19 @@ public class OMEROMetadataStoreClient
     public void setChannelGlobalMinMax(int channel, double minimum,
             double maximum, int series)
     {
-        Pixels pixels =
-            (Pixels) getSourceObject(new LSID(Pixels.class, series));
         if (imageChannelGlobalMinMax == null)
         {
-            int imageCount = countCachedContainers(Image.class);
+            int imageCount = savedSizeC != null ? savedSizeC.length
+                    : countCachedContainers(Image.class);
             imageChannelGlobalMinMax = new double[imageCount][][];
         }
         double[][] channelGlobalMinMax = imageChannelGlobalMinMax[series];
         if (channelGlobalMinMax == null)
         {
+            int sizeC = savedSizeC != null ? savedSizeC[series]
+                    : getSizeC(series);
             imageChannelGlobalMinMax[series] = channelGlobalMinMax =
-                new double[pixels.getSizeC().getValue()][];
+                new double[sizeC][];
         }
         double[] globalMinMax = channelGlobalMinMax[channel];
         if (globalMinMax == null)
@@ -2264,6 +2358,22 @@ public class OMEROMetadataStoreClient
         globalMinMax[1] = maximum;
     }
 
+    /**
+     * Returns the number of channels of the cached Pixels of an image.
+     * @param series the index of the image
+     * @return See above, <code>0</code> if not known.
+     */
+    private int getSizeC(int series)
+    {
+        Pixels pixels =
+            (Pixels) getSourceObject(new LSID(Pixels.class, series));
+        if (pixels == null || pixels.getSizeC() == null)
+        {
+            return 0;
+        }
+        return pixels.getSizeC().getValue();
+    }
+
     /**
      * Updates a list of Pixels.
      * @param pixelsList List of Pixels to update.
@@ -2353,25 +2463,33 @@ public class OMEROMetadataStoreClient
             i++;
         }
 
-        // Create a new LSID.
-        LSID lsid = new LSID(klass, indexesArray);
-
-        Map<String, Integer> asString = new HashMap<String, Integer>();
-        for (Entry<Index, Integer> v : indexes.entrySet())
+        ClassContainers containers = containersByClass.get(klass);
+        if (containers == null)
         {
-            asString.put(v.getKey().toString(), v.getValue());
+            containers = new ClassContainers(modelComparator);
+            containersByClass.put(klass, containers);
         }
 
-        if (!containerCache.containsKey(lsid))
+        // Only build the LSID and string indexes for new containers.
+        IndexKey key = new IndexKey(indexesArray);
+        IObjectContainer c = containers.byIndexes.get(key);
+        if (c == null)
         {
-            IObjectContainer c = new IObjectContainer();
+            LSID lsid = new LSID(klass, indexesArray);
+            Map<String, Integer> asString = new HashMap<String, Integer>();
+            for (Entry<Index, Integer> v : indexes.entrySet())
+            {
+                asString.put(v.getKey().toString(), v.getValue());
+            }
+            c = new IObjectContainer();
             c.indexes = asString;
             c.LSID = lsid.toString();
             c.sourceObject = getSourceObjectInstance(klass);
             containerCache.put(lsid, c);
+            containers.byIndexes.put(key, c);
+            containers.ordered.put(lsid, c);
         }
-
-        return containerCache.get(lsid);
+        return c;
     }
 
     /* (non-Javadoc)
@@ -2381,25 +2499,26 @@ public class OMEROMetadataStoreClient
     public void removeIObjectContainer(LSID lsid)
     {
         containerCache.remove(lsid);
+        ClassContainers containers =
+            containersByClass.get(lsid.getJavaClass());
+        if (containers != null)
+        {
+            containers.ordered.remove(lsid);
+            containers.byIndexes.remove(new IndexKey(lsid.getIndexes()));
+        }
     }
 
     /* (non-Javadoc)
      * @see ome.formats.model.IObjectContainerStore#getIObjectContainers(java.lang.Class)
      */
-    @SuppressWarnings("unchecked")
     public List<IObjectContainer> getIObjectContainers(Class<? extends IObject> klass)
     {
-        Set<LSID> keys = containerCache.keySet();
-        List<IObjectContainer> toReturn = new ArrayList<IObjectContainer>();
-        for (LSID key : keys)
+        ClassContainers containers = containersByClass.get(klass);
+        if (containers == null)
         {
-            Class<? extends IObject> keyClass = key.getJavaClass();
-            if (keyClass != null && keyClass.equals(klass))
-            {
-                toReturn.add(containerCache.get(key));
-            }
+            return new ArrayList<IObjectContainer>();
         }
-        return toReturn;
+        return new ArrayList<IObjectContainer>(containers.ordered.values());
     }
 
     /**
@@ -2416,7 +2535,6 @@ public class OMEROMetadataStoreClient
     /* (non-Javadoc)
      * @see ome.formats.model.IObjectContainerStore#countCachedContainers(java.lang.Class, int[])
      */
-    @SuppressWarnings("unchecked")
     public int countCachedContainers(Class<? extends IObject> klass,
                                      int... indexes)
     {
@@ -2425,38 +2543,37 @@ public class OMEROMetadataStoreClient
             return new HashSet<IObjectContainer>(containerCache.values()).size();
         }
 
+        ClassContainers containers = containersByClass.get(klass);
+        if (containers == null)
+        {
+            return 0;
+        }
+        if (indexes == null || indexes.length == 0)
+        {
+            // We're just doing a class match
+            return containers.byIndexes.size();
+        }
+
+        // We're doing a class and index match, loop over and check the
+        // indexes based on the shortest array.
         int count = 0;
-        for (LSID lsid : containerCache.keySet())
+        for (IndexKey key : containers.byIndexes.keySet())
         {
-            Class<? extends IObject> lsidClass = lsid.getJavaClass();
-            if (lsidClass != null && lsidClass.equals(klass))
+            int[] lsidIndexes = key.indexes;
+            int n = Math.min(indexes.length, lsidIndexes.length);
+            boolean match = true;
+            for (int i = 0; i < n; i++)
             {
-                if (indexes == null)
+                if (lsidIndexes[i] != indexes[i])
                 {
-                    // We're just doing a class match, increment the count
-                    count++;
-                }
-                else
-                {
-                    // We're doing a class and index match, loop over and
-                    // check the indexes based on the shortest array.
-                    int[] lsidIndexes = lsid.getIndexes();
-                    int n = Math.min(indexes.length, lsidIndexes.length);
-                    boolean match = true;
-                    for (int i = 0; i < n; i++)
-                    {
-                        if (lsidIndexes[i] != indexes[i])
-                        {
-                            match = false;
-                            break;
-                        }
-                    }
-                    if (match)
-                    {
-                        count++;
-                    }
+                    match = false;
+                    break;
                 }
             }
+            if (match)
+            {
+                count++;
+            }
         }
         return count;
     }
@@ -9047,4 +9164,98 @@ public class OMEROMetadataStoreClient
         String msg = ignoreMessage("No annotators linked. ", method, args);
         log.warn(msg, args);
     }
+
+    /**
+     * Hashable wrapper of the integer indexes of a container.
+     */
+    private static final class IndexKey
+    {
+        private final int[] indexes;
+
+        private final int hash;
+
+        IndexKey(int[] indexes)
+        {
+            this.indexes = indexes;
+            this.hash = Arrays.hashCode(indexes);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return obj instanceof IndexKey
+                && Arrays.equals(indexes, ((IndexKey) obj).indexes);
+        }
+    }
+
+    /**
+     * The cached containers of a single model class, both by index for
+     * lookup and by {@link LSID} in container cache order for enumeration.
+     */
+    private static final class ClassContainers
+    {
+        final Map<IndexKey, IObjectContainer> byIndexes =
+            new HashMap<IndexKey, IObjectContainer>();
+
+        final Map<LSID, IObjectContainer> ordered;
+
+        ClassContainers(OMEXMLModelComparator comparator)
+        {
+            ordered = new TreeMap<LSID, IObjectContainer>(comparator);
+        }
+    }
+
+    /**
+     * A batch of containers or references which has been sent to the server
+     * by {@link OMEROMetadataStoreClient#saveToDB(FilesetJobLink)} and is
+     * awaiting acknowledgement.
+     */
+    private static final class Batch
+    {
+        final BatchKind kind;
+
+        final int number;
+
+        final int size;
+
+        /** The cache keys of the containers sent, <code>null</code> for references. */
+        final LSID[] containers;
+
+        final long started = System.nanoTime();
+
+        Ice.AsyncResult result;
+
+        Batch(BatchKind kind, int number, int size, LSID[] containers)
+        {
+            this.kind = kind;
+            this.number = number;
+            this.size = size;
+            this.containers = containers;
+        }
+    }
+
+    /**
+     * The server call by which a {@link Batch} was sent.
+     */
+    private enum BatchKind
+    {
+        /** Sent by <code>updateObjects</code>. */
+        CONTAINERS("containerBatch"),
+
+        /** Sent by <code>updateReferences</code>. */
+        REFERENCES("referenceBatch");
+
+        final String label;
+
+        BatchKind(String label)
+        {
+            this.label = label;
+        }
+    }
 }
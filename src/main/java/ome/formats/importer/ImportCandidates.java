@@ -10,11 +10,18 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static omero.rtypes.rint;
 import static omero.rtypes.rstring;
@@ -121,6 +128,23 @@ public class ImportCandidates extends DirectoryWalker
     final private List<ImportContainer> containers = new ArrayList<ImportContainer>();
     final private long start = System.currentTimeMillis();
 
+    /**
+     * Number of threads parsing files, from {@link ImportConfig#parallelScan}.
+     */
+    final private int threads;
+
+    /**
+     * Files found by the walk which are to be parsed by {@link #scanQueued()}
+     * when {@link #threads} is greater than 1.
+     */
+    final private List<File> queued = new ArrayList<File>();
+
+    /**
+     * Outcomes of earlier scans, from {@link ImportConfig#scanCache}. May be
+     * null.
+     */
+    final private ScanCache cache;
+
     /**
      * Time taken for {@link IFormatReader#setId()}
      */
@@ -196,8 +220,14 @@ public class ImportCandidates extends DirectoryWalker
         super(TrueFileFilter.INSTANCE, depth);
         this.reader = reader;
         this.observer = observer;
-        log.info(String.format("Depth: %s Metadata Level: %s", depth,
-                METADATA_LEVEL));
+        ImportConfig config = reader == null ? null : reader.getConfig();
+        this.threads = config == null ? 1
+                : Math.max(1, config.parallelScan.get());
+        String cachePath = config == null ? null : config.scanCache.get();
+        this.cache = cachePath == null || cachePath.isEmpty() ? null
+                : new ScanCache(new File(cachePath));
+        log.info(String.format("Depth: %s Metadata Level: %s Threads: %s",
+                depth, METADATA_LEVEL, threads));
 
         if (paths != null && paths.length == 2 && "".equals(paths[0])
                 && "".equals(paths[1]))
@@ -220,6 +250,12 @@ public class ImportCandidates extends DirectoryWalker
             total = count;
             count = 0;
             execute(paths);
+            if (threads > 1) {
+                scanQueued();
+            }
+            if (cache != null) {
+                cache.save();
+            }
             g = new Groups(usedBy);
             g.parse(containers);
             long totalElapsed = System.currentTimeMillis() - start;
@@ -406,60 +442,138 @@ public class ImportCandidates extends DirectoryWalker
             return null;
         }
 
-        final String path = file.getAbsolutePath();
+        if (!checkReadable(file)) {
+            return null;
+        }
+
+        return toContainer(file, scan(reader, file), config);
+    }
+
+    /**
+     * Check that a single file can be read, raising
+     * {@link ErrorHandler.UNREADABLE_FILE} if it cannot.
+     * @param file - single file
+     * @return if the file exists and can be read
+     */
+    private boolean checkReadable(File file)
+    {
         if (!file.exists() || !file.canRead()) {
+            final String path = file.getAbsolutePath();
             safeUpdate(new ErrorHandler.UNREADABLE_FILE(path,
                 new java.io.FileNotFoundException(path), this));
-            return null;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parse a single file with the given reader, or take the outcome from
+     * the {@link #cache} if the file has not changed. No events are raised,
+     * so this may be called from any thread with its own reader.
+     * @param r - reader to use for parsing
+     * @param file - single file
+     * @return the outcome of parsing
+     */
+    private Scan scan(OMEROWrapper r, File file)
+    {
+        final String path = file.getAbsolutePath();
+        final Scan scan = new Scan();
+        scan.usedFiles = new String[] { path };
+
+        if (cache != null) {
+            ScanCache.Entry entry = cache.get(file);
+            if (entry != null) {
+                scan.format = entry.format;
+                scan.usedFiles = entry.usedFiles;
+                scan.readerClass = entry.reader;
+                scan.isSPW = entry.isSPW;
+                if (entry.reader == null) {
+                    scan.error = new UnknownFormatException(
+                            "Unknown file format (cached): " + path);
+                }
+                return scan;
+            }
         }
 
-        String format = null;
-        String[] usedFiles = new String[] { path };
         long start = System.currentTimeMillis();
         try {
-
             try {
-                setids++;
-                reader.close();
-                reader.setMetadataStore(new ImageNameMetadataStore());
-                reader.setMetadataOptions(
+                scan.setId = true;
+                r.close();
+                r.setMetadataStore(new ImageNameMetadataStore());
+                r.setMetadataOptions(
                         new DynamicMetadataOptions(METADATA_LEVEL));
-                reader.setId(path);
-                format = reader.getFormat();
-                usedFiles = getOrderedFiles();
-                String[] domains = reader.getReader().getDomains();
-                boolean isSPW = Arrays.asList(domains).contains(FormatTools.HCS_DOMAIN);
-
-                final String readerClassName = reader.unwrap().getClass().getCanonicalName();
-                ImportContainer ic = new ImportContainer(config,
-                        file, null, null,
-                        readerClassName, usedFiles, isSPW);
-                ic.setDoThumbnails(config.doThumbnails.get());
-                ic.setNoStatsInfo(config.noStatsInfo.get());
-                String configImageName = config.userSpecifiedName.get();
-                ic.setUserSpecifiedName(configImageName);
-                ic.setUserSpecifiedDescription(config.userSpecifiedDescription.get());
-                ic.setCustomAnnotationList(config.annotations.get());
-                return ic;
+                r.setId(path);
+                scan.format = r.getFormat();
+                scan.usedFiles = getOrderedFiles(r);
+                String[] domains = r.getReader().getDomains();
+                scan.isSPW = Arrays.asList(domains).contains(FormatTools.HCS_DOMAIN);
+                scan.readerClass = r.unwrap().getClass().getCanonicalName();
             } finally
             {
-                readerTime += (System.currentTimeMillis() - start);
-                reader.close();
+                scan.time = System.currentTimeMillis() - start;
+                r.close();
+            }
+        } catch (Throwable t)
+        {
+            scan.error = t;
+        }
+
+        if (cache != null) {
+            if (scan.error == null) {
+                cache.put(file, scan.readerClass, scan.format,
+                        scan.usedFiles, scan.isSPW);
+            } else if (scan.error instanceof UnknownFormatException
+                    || scan.error instanceof UnsupportedCompressionException) {
+                cache.put(file, null, scan.format, new String[0], false);
             }
+        }
+        return scan;
+    }
 
-        } catch (UnsupportedCompressionException uce)
+    /**
+     * Raise the events for the outcome of parsing a single file and create
+     * its container if it was parsed successfully.
+     * @param file - single file
+     * @param scan - the outcome of parsing the file
+     * @return importer container, or null
+     */
+    private ImportContainer toContainer(File file, Scan scan, ImportConfig config)
+    {
+        final String path = file.getAbsolutePath();
+        if (scan.setId) {
+            setids++;
+        }
+        readerTime += scan.time;
+
+        Throwable t = scan.error;
+        if (t == null) {
+            ImportContainer ic = new ImportContainer(config,
+                    file, null, null,
+                    scan.readerClass, scan.usedFiles, scan.isSPW);
+            ic.setDoThumbnails(config.doThumbnails.get());
+            ic.setNoStatsInfo(config.noStatsInfo.get());
+            String configImageName = config.userSpecifiedName.get();
+            ic.setUserSpecifiedName(configImageName);
+            ic.setUserSpecifiedDescription(config.userSpecifiedDescription.get());
+            ic.setCustomAnnotationList(config.annotations.get());
+            return ic;
+        } else if (t instanceof UnsupportedCompressionException)
         {
             unknown++;
             // Handling as UNKNOWN_FORMAT for 4.3.0
-            safeUpdate(new ErrorHandler.UNKNOWN_FORMAT(path, uce, this));
-        } catch (UnknownFormatException ufe)
+            safeUpdate(new ErrorHandler.UNKNOWN_FORMAT(path,
+                    (UnsupportedCompressionException) t, this));
+        } else if (t instanceof UnknownFormatException)
         {
             unknown++;
-            safeUpdate(new ErrorHandler.UNKNOWN_FORMAT(path, ufe, this));
-        } catch (MissingLibraryException mle)
+            safeUpdate(new ErrorHandler.UNKNOWN_FORMAT(path,
+                    (UnknownFormatException) t, this));
+        } else if (t instanceof MissingLibraryException)
         {
-            safeUpdate(new ErrorHandler.MISSING_LIBRARY(path, mle, usedFiles, format));
-        } catch (Throwable t)
+            safeUpdate(new ErrorHandler.MISSING_LIBRARY(path,
+                    (MissingLibraryException) t, scan.usedFiles, scan.format));
+        } else
         {
             Exception e = null;
             if (t instanceof Exception) {
@@ -468,13 +582,96 @@ public class ImportCandidates extends DirectoryWalker
             else {
                 e = new Exception(t);
             }
-            safeUpdate(new ErrorHandler.FILE_EXCEPTION(path, e, usedFiles, format));
+            safeUpdate(new ErrorHandler.FILE_EXCEPTION(path, e, scan.usedFiles, scan.format));
         }
 
         return null;
 
     }
 
+    /**
+     * Parse the files queued by {@link #handleFile(File, int, Collection)}
+     * on {@link #threads} threads, each with its own reader. The outcomes are
+     * consumed in the order in which the files were found, applying the same
+     * rules as a sequential scan, so the containers and events are the same.
+     * Workers skip unreadable files, which are reported once their turn
+     * comes, and files already claimed by the used files of any outcome so
+     * far; if such a file turns out not to be claimed once its turn comes, it
+     * is parsed then.
+     */
+    private void scanQueued()
+    {
+        final ImportConfig config = reader.getConfig();
+        final Set<String> claimed = Collections.newSetFromMap(
+                new ConcurrentHashMap<String, Boolean>());
+        final List<OMEROWrapper> workers = Collections.synchronizedList(
+                new ArrayList<OMEROWrapper>());
+        final ThreadLocal<OMEROWrapper> workerReader = new ThreadLocal<OMEROWrapper>();
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final List<Future<Scan>> futures = new ArrayList<Future<Scan>>(queued.size());
+        try {
+            for (final File file : queued) {
+                futures.add(pool.submit(new Callable<Scan>() {
+                    @Override
+                    public Scan call() {
+                        if (claimed.contains(file.getAbsolutePath())
+                                || !file.exists() || !file.canRead()) {
+                            return null;
+                        }
+                        OMEROWrapper worker = workerReader.get();
+                        if (worker == null) {
+                            worker = reader.duplicate();
+                            workers.add(worker);
+                            workerReader.set(worker);
+                        }
+                        Scan scan = scan(worker, file);
+                        if (scan.error == null) {
+                            claimed.addAll(Arrays.asList(scan.usedFiles));
+                        }
+                        return scan;
+                    }
+                }));
+            }
+            for (int i = 0; i < queued.size(); i++) {
+                File file = queued.get(i);
+                if (i % 100 == 0) {
+                    scanWithCancel(file, 0);
+                }
+                Scan scan;
+                try {
+                    scan = futures.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CANCEL();
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+                if (allFiles.contains(file.getAbsolutePath())) {
+                    continue;
+                }
+                if (!checkReadable(file)) {
+                    continue;
+                }
+                if (scan == null) {
+                    scan = scan(reader, file);
+                }
+                addContainer(file, toContainer(file, scan, config));
+            }
+        } finally {
+            pool.shutdownNow();
+            queued.clear();
+            synchronized (workers) {
+                for (OMEROWrapper worker : workers) {
+                    try {
+                        worker.close();
+                    } catch (IOException e) {
+                        log.warn("Failed to close worker reader", e);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Retrieves Image names for each image that Bio-Formats has detected.
      * @return a list of Image names, in the order of <i>series</i>.
@@ -494,7 +691,7 @@ public class ImportCandidates extends DirectoryWalker
      * used files. All files which can be used to initialize a fileset are
      * returned first.
      */
-    private String[] getOrderedFiles() {
+    private static String[] getOrderedFiles(OMEROWrapper reader) {
 
         FileInfo[] infos = reader.getAdvancedUsedFiles(false);
         String[] usedFiles = new String[infos.length];
@@ -573,7 +770,22 @@ public class ImportCandidates extends DirectoryWalker
             return;
         }
 
-        ImportContainer info = singleFile(file, reader.getConfig());
+        // Parsed later by scanQueued()
+        if (threads > 1) {
+            queued.add(file);
+            return;
+        }
+
+        addContainer(file, singleFile(file, reader.getConfig()));
+    }
+
+    /**
+     * Record a container found for the given file and its used files.
+     *
+     * @param file the file which was parsed
+     * @param info the container, or null if none was found
+     */
+    private void addContainer(File file, ImportContainer info) {
         if (info == null) {
             return;
         }
@@ -590,13 +802,29 @@ public class ImportCandidates extends DirectoryWalker
         }
     }
 
+    /**
+     * The outcome of parsing a single file. Either {@link #readerClass} or
+     * {@link #error} is set.
+     */
+    private static class Scan {
+        String readerClass;
+        String format;
+        String[] usedFiles;
+        boolean isSPW;
+        Throwable error;
+        /** Whether {@link IFormatReader#setId(String)} was called */
+        boolean setId;
+        /** Time taken for {@link IFormatReader#setId(String)} */
+        long time;
+    }
+
     /**
      * The {@link Groups} class serves as an algorithm for sorting the usedBy
      * map from the {@link ImportCandidates#walk(File, Collection)} method.
      * These objects should never leave the outer class.
      *
      * It is important that the Groups keep their used files ordered.
-     * @see ImportCandidates#getOrderedFiles()
+     * @see ImportCandidates#getOrderedFiles(OMEROWrapper)
      */
     private static class Groups {
 
@@ -131,6 +131,9 @@ public class ImportConfig {
     public final BoolValue sendLogFile;
     public final IntValue parallelUpload;
     public final IntValue parallelFileset;
+    public final IntValue parallelPixelData;
+    public final IntValue parallelScan;
+    public final StrValue scanCache;
     public final StrValue qaBaseURL;
     public final BoolValue checkUpgrade;
 
@@ -279,6 +282,9 @@ public class ImportConfig {
         sendLogFile  = new BoolValue("sendLogFile", this, true);
         parallelUpload  = new IntValue("parallelUpload", this, 1);
         parallelFileset = new IntValue("parallelFileset", this, 1);
+        parallelPixelData = new IntValue("parallelPixelData", this, 1);
+        parallelScan = new IntValue("parallelScan", this, 1);
+        scanCache = new StrValue("scanCache", this);
 
         useFullPath  = new BoolValue("useFullPath", this, true);
         useCustomImageNaming = new BoolValue("overrideImageName", this, true);
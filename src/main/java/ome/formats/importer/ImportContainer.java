@@ -21,6 +21,7 @@
 package ome.formats.importer;
 
 import static omero.rtypes.rbool;
+import static omero.rtypes.rint;
 import static omero.rtypes.rstring;
 
 import java.io.File;
@@ -322,6 +323,7 @@ public class ImportContainer
         // ImportUserSettings rather than misusing ImportContainer.
         settings.doThumbnails = rbool(getDoThumbnails());
         settings.noStatsInfo = rbool(getNoStatsInfo());
+        settings.parallelPixelData = rint(config.parallelPixelData.get());
         settings.userSpecifiedTarget = getTarget();
         settings.userSpecifiedName = getUserSpecifiedName() == null ? null
                 : rstring(getUserSpecifiedName());
@@ -79,6 +79,10 @@ public class OMEROWrapper extends MinMaxCalculator {
 
     private ImportConfig config;
 
+    private final long elapsedTime;
+
+    private final File cacheDirectory;
+
     /**
      * Wrapper for bio-formats
      *
@@ -92,6 +96,8 @@ public class OMEROWrapper extends MinMaxCalculator {
     public OMEROWrapper(ImportConfig config, long elapsedTime, File cacheDirectory) {
         super(createReader(config));
         this.config = config;
+        this.elapsedTime = elapsedTime;
+        this.cacheDirectory = cacheDirectory;
         this.iReader = (ImageReader) reader; // Save old value
         this.reader = null;
         filler = new ChannelFiller(iReader);
@@ -152,6 +158,16 @@ public class OMEROWrapper extends MinMaxCalculator {
         return this.config;
     }
 
+    /**
+     * Creates a new, unopened wrapper with the same configuration and
+     * memoization settings as this instance, e.g. so that pixel data from
+     * the same file can be read concurrently by several threads.
+     * @return a new wrapper on which {@link #setId(String)} has not been called
+     */
+    public OMEROWrapper duplicate() {
+        return new OMEROWrapper(config, elapsedTime, cacheDirectory);
+    }
+
     /**
      * Obtains an object which represents a given sub-image of a plane within
      * the file.
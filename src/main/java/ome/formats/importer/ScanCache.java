@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.formats.importer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import loci.formats.FormatTools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk cache of the outcome of {@link ImportCandidates} parsing a file,
+ * keyed by the file's path, size and modification time. When a directory is
+ * scanned again, files which have not changed since are not opened with
+ * Bio-Formats. An entry is only used if all of its used files still exist.
+ * The whole cache is discarded when the Bio-Formats version changes, since
+ * a new version may read files differently.
+ *
+ * This class is thread-safe.
+ *
+ * @since 5.5.0
+ */
+class ScanCache {
+
+    private final static Logger log = LoggerFactory.getLogger(ScanCache.class);
+
+    private final static int FORMAT_VERSION = 1;
+
+    /**
+     * The outcome of parsing a file. If {@link #reader} is null, the format of
+     * the file is unknown.
+     */
+    static class Entry {
+
+        final long size;
+
+        final long lastModified;
+
+        final String reader;
+
+        final String format;
+
+        final String[] usedFiles;
+
+        final boolean isSPW;
+
+        Entry(long size, long lastModified, String reader, String format,
+                String[] usedFiles, boolean isSPW) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.reader = reader;
+            this.format = format;
+            this.usedFiles = usedFiles;
+            this.isSPW = isSPW;
+        }
+    }
+
+    private final File file;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private volatile boolean modified = false;
+
+    /**
+     * Loads the cache from the given file, if it exists and is readable.
+     *
+     * @param file where the cache is stored
+     */
+    ScanCache(File file) {
+        this.file = file;
+        if (file.exists()) {
+            try {
+                load();
+            } catch (IOException e) {
+                log.warn("Ignoring unreadable scan cache {}", file, e);
+                entries.clear();
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if (in.readInt() != FORMAT_VERSION
+                    || !FormatTools.VERSION.equals(in.readUTF())) {
+                log.info("Discarding scan cache {} of other version", file);
+                modified = true;
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                String reader = in.readBoolean() ? in.readUTF() : null;
+                String format = in.readBoolean() ? in.readUTF() : null;
+                boolean isSPW = in.readBoolean();
+                String[] usedFiles = new String[in.readInt()];
+                for (int j = 0; j < usedFiles.length; j++) {
+                    usedFiles[j] = in.readUTF();
+                }
+                entries.put(path, new Entry(size, lastModified, reader,
+                        format, usedFiles, isSPW));
+            }
+            log.info("Loaded {} entries from scan cache {}", count, file);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param f a file to be parsed
+     * @return the cached outcome of parsing the file, or null if there is
+     *         none or the file has changed since
+     */
+    Entry get(File f) {
+        Entry entry = entries.get(f.getAbsolutePath());
+        if (entry == null || entry.size != f.length()
+                || entry.lastModified != f.lastModified()) {
+            return null;
+        }
+        for (String used : entry.usedFiles) {
+            if (!new File(used).exists()) {
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Records the outcome of parsing a file.
+     *
+     * @param f the file which was parsed
+     * @param reader the reader class, or null if the format is unknown
+     * @param format the format, may be null
+     * @param usedFiles the files used by the reader
+     * @param isSPW if the file contains plates
+     */
+    void put(File f, String reader, String format, String[] usedFiles,
+            boolean isSPW) {
+        entries.put(f.getAbsolutePath(), new Entry(f.length(),
+                f.lastModified(), reader, format, usedFiles, isSPW));
+        modified = true;
+    }
+
+    /**
+     * Writes the cache back to its file if it has changed, replacing the
+     * previous file only once completely written.
+     */
+    void save() {
+        if (!modified) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(FormatTools.VERSION);
+                Map<String, Entry> copy = new HashMap<String, Entry>(entries);
+                out.writeInt(copy.size());
+                for (Map.Entry<String, Entry> e : copy.entrySet()) {
+                    Entry entry = e.getValue();
+                    out.writeUTF(e.getKey());
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.lastModified);
+                    writeNullable(out, entry.reader);
+                    writeNullable(out, entry.format);
+                    out.writeBoolean(entry.isSPW);
+                    out.writeInt(entry.usedFiles.length);
+                    for (String used : entry.usedFiles) {
+                        out.writeUTF(used);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            modified = false;
+        } catch (IOException e) {
+            log.warn("Failed to save scan cache {}", file, e);
+            tmp.delete();
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String s)
+            throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+}
@@ -410,6 +410,8 @@ public class CommandLineImporter {
             + "        General options:    \t\n"
             + "          upload          \t# Default\n"
             + "          upload_rm       \t# Caution! File upload followed by source deletion.\n"
+            + "          upload_pipelined\t# Upload with several blocks in flight.\n"
+            + "          upload_mapped   \t# Upload reading memory-mapped source files.\n"
             + "          some.class.Name \t# Use a class on the CLASSPATH.\n\n"
             + "        Server-side options:\t\n"
             + "          ln              \t# Use hard-link.\n"
@@ -621,6 +623,12 @@ public class CommandLineImporter {
         LongOpt readers =
                 new LongOpt("readers", LongOpt.REQUIRED_ARGUMENT, null, 29);
 
+        LongOpt parallelScan =
+                new LongOpt("parallel-scan", LongOpt.REQUIRED_ARGUMENT, null, 30);
+
+        LongOpt scanCache =
+                new LongOpt("scan-cache", LongOpt.REQUIRED_ARGUMENT, null, 31);
+
         // DEPRECATED OPTIONS
         LongOpt minutesWaitDeprecated =
                 new LongOpt("minutes_wait", LongOpt.REQUIRED_ARGUMENT, null, 86);
@@ -660,7 +668,7 @@ public class CommandLineImporter {
                                 noUpgradeCheck, qaBaseURL,
                                 outputFormat, encryptedConnection,
                                 parallelUpload, parallelFileset,
-                                readers,
+                                readers, parallelScan, scanCache,
                                 plateName, plateName2,
                                 plateDescription, plateDescription2,
                                 noThumbnailsDeprecated,
@@ -935,6 +943,18 @@ public class CommandLineImporter {
                 config.readersPath.set(g.getOptarg());
                 break;
             }
+            case 30: {
+                String parallelSArg = g.getOptarg();
+                log.info("Setting parallel scan: {}", parallelSArg);
+                config.parallelScan.set(Integer.valueOf(parallelSArg));
+                break;
+            }
+            case 31: {
+                String scanCacheArg = g.getOptarg();
+                log.info("Setting scan cache: {}", scanCacheArg);
+                config.scanCache.set(scanCacheArg);
+                break;
+            }
             case 'h': {
                 usage(); // exits
             }
@@ -22,6 +22,7 @@ package ome.formats.importer.transfers;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -53,7 +54,9 @@ public abstract class AbstractFileTransfer implements FileTransfer {
         cp(CopyFileTransfer.class),
         cp_rm(CopyMoveFileTransfer.class),
         upload(UploadFileTransfer.class),
-        upload_rm(UploadRmFileTransfer.class);
+        upload_rm(UploadRmFileTransfer.class),
+        upload_pipelined(PipelinedUploadFileTransfer.class),
+        upload_mapped(MappedUploadFileTransfer.class);
         Class<?> kls;
         Transfers(Class<?> kls) {
             this.kls = kls;
@@ -117,6 +120,19 @@ public abstract class AbstractFileTransfer implements FileTransfer {
         return state.getChecksum();
     }
 
+    /**
+     * Open the stream from which the contents of the given file will be
+     * read for upload. Subclasses may override this to change how the
+     * source is read, e.g. {@link MappedUploadFileTransfer}.
+     *
+     * @param file the source file
+     * @return a new stream which the caller must close
+     * @throws IOException if the file cannot be opened
+     */
+    protected InputStream openStream(File file) throws IOException {
+        return new FileInputStream(file);
+    }
+
     /**
      * Utility method for closing resources.
      *
@@ -125,7 +141,7 @@ public abstract class AbstractFileTransfer implements FileTransfer {
      * @throws ServerError presently not at all as errors are simply logged, but possibly in the future
      */
     protected void cleanupUpload(RawFileStorePrx rawFileStore,
-            FileInputStream stream) throws ServerError {
+            InputStream stream) throws ServerError {
         try {
             if (rawFileStore != null) {
                 try {
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.formats.importer.transfers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link InputStream} which memory-maps its source file one region at a
+ * time and serves reads by bulk copying out of the mapping. Unlike
+ * {@link java.io.FileInputStream#read(byte[])} no intermediate native buffer
+ * is allocated per call, so each block is copied exactly once from the page
+ * cache into the caller's array. Only a single region is mapped at any one
+ * time which keeps the address space used bounded for very large files.
+ * <em>Not thread safe</em>
+ *
+ * @since 5.5.0
+ */
+public class MappedFileInputStream extends InputStream {
+
+    /**
+     * Size of the region mapped at any one time if none is specified.
+     */
+    public static final long DEFAULT_REGION_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final long regionSize;
+
+    private long regionStart;
+
+    private MappedByteBuffer region;
+
+    public MappedFileInputStream(File file) throws IOException {
+        this(file, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * @param file the file to read
+     * @param regionSize the maximum number of bytes to map at once
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedFileInputStream(File file, long regionSize) throws IOException {
+        if (regionSize < 1) {
+            throw new IllegalArgumentException("region size must be positive: " + regionSize);
+        }
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * Map the next region of the file if the current one is exhausted.
+     * @return false if the end of the file has been reached
+     */
+    private boolean nextRegion() throws IOException {
+        if (region != null && region.hasRemaining()) {
+            return true;
+        }
+        final long next = region == null ? regionStart : regionStart + region.capacity();
+        if (next >= size) {
+            return false;
+        }
+        regionStart = next;
+        region = channel.map(MapMode.READ_ONLY, next, Math.min(regionSize, size - next));
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextRegion()) {
+            return -1;
+        }
+        return region.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        } else if (len == 0) {
+            return 0;
+        }
+        int total = 0;
+        while (total < len && nextRegion()) {
+            final int count = Math.min(len - total, region.remaining());
+            region.get(b, off + total, count);
+            total += count;
+        }
+        return total == 0 ? -1 : total;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        final long position = position();
+        final long skipped = Math.min(n, size - position);
+        regionStart = position + skipped;
+        region = null;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, size - position());
+    }
+
+    /**
+     * Unmapping is left to the garbage collector. Dropping the reference
+     * here makes the current region eligible as soon as possible.
+     */
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+
+    private long position() {
+        return region == null ? regionStart : regionStart + region.position();
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.formats.importer.transfers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Version of the default {@link UploadFileTransfer} which reads each source
+ * file through a {@link MappedFileInputStream} rather than a
+ * {@link java.io.FileInputStream}. Each block is copied once from the
+ * mapping into {@link TransferState#getBuffer()} and that same buffer is
+ * passed to both the checksum provider and the server, which avoids the
+ * per-read native buffer of the stream-based path on very large filesets.
+ *
+ * @since 5.5.0
+ */
+public class MappedUploadFileTransfer extends UploadFileTransfer {
+
+    @Override
+    protected InputStream openStream(File file) throws IOException {
+        return new MappedFileInputStream(file);
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.formats.importer.transfers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import ome.util.checksum.ChecksumProvider;
+import omero.ServerError;
+import omero.api.RawFileStorePrx;
+
+import org.apache.commons.lang.ArrayUtils;
+
+/**
+ * Variant of {@link UploadFileTransfer} which keeps a bounded window of
+ * asynchronous {@link RawFileStorePrx#begin_write(byte[], long, int) writes}
+ * in flight rather than waiting for each block to be acknowledged before
+ * the next is read. The source file is read and checksummed on a separate
+ * thread into a small pool of recycled buffers so that disk I/O, hashing
+ * and network round trips overlap. This is primarily of use on high-latency
+ * links where the synchronous upload is limited to one block per round trip.
+ *
+ * The size of the window can be set via the
+ * {@value #WINDOW_PROPERTY} system property, and defaults to
+ * {@value #DEFAULT_WINDOW}. <em>Not thread safe</em>
+ *
+ * @since 5.5.0
+ */
+public class PipelinedUploadFileTransfer extends AbstractFileTransfer {
+
+    /**
+     * System property which can be used to set the number of writes which
+     * may be in flight at any one time.
+     */
+    public static final String WINDOW_PROPERTY = "omero.import.upload.window";
+
+    /**
+     * Number of writes in flight if {@link #WINDOW_PROPERTY} is not set.
+     */
+    public static final int DEFAULT_WINDOW = 4;
+
+    private final int window;
+
+    public PipelinedUploadFileTransfer() {
+        this(Integer.getInteger(WINDOW_PROPERTY, DEFAULT_WINDOW));
+    }
+
+    /**
+     * @param window the maximum number of writes which may be awaiting
+     * acknowledgement from the server at any one time. Must be positive.
+     */
+    public PipelinedUploadFileTransfer(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        this.window = window;
+    }
+
+    public String transfer(TransferState state) throws IOException, ServerError {
+
+        final RawFileStorePrx rawFileStore = start(state);
+        final byte[] buf = state.getBuffer();
+
+        // One more buffer than the window so that the reader can always
+        // be filling the next block while the window is full.
+        final BlockingQueue<byte[]> pool = new LinkedBlockingQueue<byte[]>();
+        pool.add(buf);
+        for (int i = 0; i < window; i++) {
+            pool.add(new byte[buf.length]);
+        }
+
+        final BlockingQueue<Chunk> ready = new LinkedBlockingQueue<Chunk>();
+        final Deque<Chunk> inFlight = new ArrayDeque<Chunk>(window);
+        InputStream stream = null;
+        Reader reader = null;
+        Thread thread = null;
+
+        try {
+            long offset = 0;
+            final long began = System.nanoTime();
+
+            state.uploadStarted();
+
+            // "touch" the file otherwise zero-length files
+            rawFileStore.write(ArrayUtils.EMPTY_BYTE_ARRAY, offset, 0);
+            state.stop();
+            state.uploadBytes(offset);
+
+            stream = openStream(state.getFile());
+            reader = new Reader(stream, state.getChecksumProvider(), pool, ready);
+            thread = new Thread(reader,
+                    "PipelinedUpload-" + state.getFile().getName());
+            thread.setDaemon(true);
+            thread.start();
+            state.start();
+            while (true) {
+                final Chunk chunk = take(ready);
+                if (chunk == Chunk.EOF) {
+                    // the reader may have stopped early: fail rather than
+                    // completing a truncated upload
+                    reader.checkError();
+                    break;
+                }
+                chunk.result = rawFileStore.begin_write(
+                        chunk.bytes, chunk.offset, chunk.length);
+                inFlight.addLast(chunk);
+                if (inFlight.size() >= window) {
+                    offset = complete(state, rawFileStore, inFlight.removeFirst(), pool);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                offset = complete(state, rawFileStore, inFlight.removeFirst(), pool);
+            }
+
+            state.uploadThroughput(offset, System.nanoTime() - began);
+            return finish(state, offset);
+        } finally {
+            if (thread != null) {
+                thread.interrupt();
+            }
+            for (Chunk chunk : inFlight) {
+                try {
+                    rawFileStore.end_write(chunk.result);
+                } catch (Exception e) {
+                    log.debug("error in pending write at offset {}", chunk.offset, e);
+                }
+            }
+            cleanupUpload(rawFileStore, stream);
+        }
+    }
+
+    /**
+     * Wait for the given write to be acknowledged, return its buffer to the
+     * pool and notify observers.
+     *
+     * @return the offset up to which the file has been written.
+     */
+    private long complete(TransferState state, RawFileStorePrx rawFileStore,
+            Chunk chunk, BlockingQueue<byte[]> pool) throws ServerError {
+        try {
+            rawFileStore.end_write(chunk.result);
+        } finally {
+            if (chunk.pooled) {
+                pool.offer(chunk.bytes);
+            }
+        }
+        final long offset = chunk.offset + chunk.length;
+        state.stop(chunk.length);
+        state.uploadBytes(offset);
+        state.start();
+        return offset;
+    }
+
+    private static Chunk take(BlockingQueue<Chunk> ready) throws IOException {
+        try {
+            return ready.take();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted awaiting next block");
+        }
+    }
+
+    /**
+     * Since the {@link RawFileStorePrx} instances are cleaned up after each
+     * transfer, there's no need to cleanup per {@link File}.
+     */
+    public void afterTransfer(int errors, List<String> srcFiles) throws CleanupFailure {
+        // no-op
+    }
+
+    /**
+     * A single block of the file which has been read and checksummed
+     * and is either waiting to be written or in flight.
+     */
+    private static class Chunk {
+
+        /**
+         * Marker placed on the queue once the reader has finished,
+         * successfully or otherwise.
+         */
+        static final Chunk EOF = new Chunk(null, -1, 0, false);
+
+        final byte[] bytes;
+
+        final long offset;
+
+        final int length;
+
+        /**
+         * Whether {@link #bytes} belongs to the buffer pool or was allocated
+         * for a short, final block.
+         */
+        final boolean pooled;
+
+        Ice.AsyncResult result;
+
+        Chunk(byte[] bytes, long offset, int length, boolean pooled) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+            this.pooled = pooled;
+        }
+    }
+
+    /**
+     * Reads the source stream into buffers taken from the pool, updating the
+     * {@link ChecksumProvider} as it goes. The checksum provider is only
+     * touched from this thread until {@link Chunk#EOF} has been queued.
+     * The stream itself is closed by the transfer.
+     */
+    private static class Reader implements Runnable {
+
+        private final InputStream stream;
+
+        private final ChecksumProvider cp;
+
+        private final BlockingQueue<byte[]> pool;
+
+        private final BlockingQueue<Chunk> ready;
+
+        private volatile Throwable error;
+
+        Reader(InputStream stream, ChecksumProvider cp, BlockingQueue<byte[]> pool,
+                BlockingQueue<Chunk> ready) {
+            this.stream = stream;
+            this.cp = cp;
+            this.pool = pool;
+            this.ready = ready;
+        }
+
+        public void run() {
+            try {
+                long offset = 0;
+                while (true) {
+                    final byte[] buf = pool.take();
+                    final int rlen = fill(stream, buf);
+                    if (rlen <= 0) {
+                        pool.offer(buf);
+                        break;
+                    }
+                    cp.putBytes(buf, 0, rlen);
+                    if (rlen < buf.length) {
+                        // Byte sequences are marshalled whole, so the final
+                        // block must be trimmed to size.
+                        ready.put(new Chunk(Arrays.copyOf(buf, rlen), offset, rlen, false));
+                        pool.offer(buf);
+                    } else {
+                        ready.put(new Chunk(buf, offset, rlen, true));
+                    }
+                    offset += rlen;
+                }
+            } catch (InterruptedException ie) {
+                error = new InterruptedIOException("reader interrupted");
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                ready.offer(Chunk.EOF);
+            }
+        }
+
+        /**
+         * Read until the buffer is full or the end of the stream is reached
+         * so that only the last block of the file is short.
+         */
+        private static int fill(InputStream stream, byte[] buf) throws IOException {
+            int total = 0;
+            while (total < buf.length) {
+                final int rlen = stream.read(buf, total, buf.length - total);
+                if (rlen == -1) {
+                    break;
+                }
+                total += rlen;
+            }
+            return total;
+        }
+
+        /**
+         * Rethrow whatever stopped the reader, if anything did. Must only
+         * be called once {@link Chunk#EOF} has been taken from the queue.
+         */
+        void checkError() throws IOException {
+            final Throwable t = error;
+            if (t == null) {
+                return;
+            } else if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new IOException("reader failed", t);
+        }
+    }
+}
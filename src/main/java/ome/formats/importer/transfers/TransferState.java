@@ -71,6 +71,12 @@ public class TransferState implements TimeEstimator {
 
     private String checksum;
 
+    /**
+     * Bytes per second as last recorded via
+     * {@link #uploadThroughput(long, long)}, or -1 if never recorded.
+     */
+    private double throughput = -1;
+
     /**
      * Cache of the latest return value from
      * {@link #getUploader(String)} which can be used to cleanup
@@ -170,6 +176,15 @@ public class TransferState implements TimeEstimator {
         return this.cp;
     }
 
+    /**
+     * Get the throughput in bytes per second of the transfer of
+     * {@link #getFile()} as recorded by {@link #uploadThroughput(long, long)}.
+     * @return bytes per second or -1 if no throughput has been recorded
+     */
+    public double getThroughput() {
+        return this.throughput;
+    }
+
     /**
      * Return the target file passed to the constructor.
      * @return the source file
@@ -298,6 +313,22 @@ public class TransferState implements TimeEstimator {
                 offset, length, null));
     }
 
+    /**
+     * Record and log the throughput of the transfer of {@link #getFile()}.
+     * @param bytes how many bytes were transferred
+     * @param elapsedNanos wall-clock time taken for the transfer
+     */
+    public void uploadThroughput(long bytes, long elapsedNanos) {
+        if (elapsedNanos > 0) {
+            throughput = bytes * 1e9 / elapsedNanos;
+        } else {
+            throughput = 0;
+        }
+        log.info(String.format("%s: %d bytes in %d ms (%.2f MB/s)",
+                file.getName(), bytes, elapsedNanos / 1000000,
+                throughput / (1024 * 1024)));
+    }
+
     //
     // ESTIMATOR DELEGATION
     //
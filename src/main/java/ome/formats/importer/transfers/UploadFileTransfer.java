@@ -20,8 +20,8 @@
 package ome.formats.importer.transfers;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 import ome.util.checksum.ChecksumProvider;
@@ -48,10 +48,10 @@ public class UploadFileTransfer extends AbstractFileTransfer {
         final byte[] buf = state.getBuffer();
         final ChecksumProvider cp = state.getChecksumProvider();
         
-        FileInputStream stream = null;
+        InputStream stream = null;
 
         try {
-            stream = new FileInputStream(file);
+            stream = openStream(file);
             int rlen = 0;
             long offset = 0;
 
@@ -5,8 +5,10 @@
 
 package ome.services.blitz.fire;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import ome.security.NodeProvider;
@@ -16,12 +18,14 @@ import ome.services.blitz.redirect.NullRedirector;
 import ome.services.blitz.redirect.Redirector;
 import ome.services.blitz.util.BlitzConfiguration;
 import ome.services.scripts.ScriptRepoHelper;
+import ome.services.throttling.ThrottlingStrategy;
 import ome.services.sessions.SessionManager;
 import ome.services.util.Executor;
 import ome.system.Principal;
 import ome.util.SqlAction;
 import omero.grid.ClusterNodePrx;
 import omero.grid.ClusterNodePrxHelper;
+import omero.grid.NodeLoad;
 import omero.grid._ClusterNodeDisp;
 
 import org.slf4j.Logger;
@@ -79,6 +83,23 @@ public class Ring extends _ClusterNodeDisp implements Redirector.Context {
      */
     private/* final */String directProxy;
 
+    /**
+     * Source of the session and servant counts reported by
+     * {@link #getLoad(Current)}. Null until set.
+     */
+    private volatile ServantHoldersMXBean servantHolders;
+
+    /**
+     * Source of the queue depth reported by {@link #getLoad(Current)}. Null
+     * until set.
+     */
+    private volatile ThrottlingStrategy throttlingStrategy;
+
+    /**
+     * Milliseconds to wait for another node to report its load.
+     */
+    private int loadTimeout = 2000;
+
     public Ring(String uuid, Executor executor) {
         this(uuid, executor, new NullRedirector(), null, new NodeProviderInMemory(uuid));
     }
@@ -101,6 +122,18 @@ public class Ring extends _ClusterNodeDisp implements Redirector.Context {
         this.registry = registry;
     }
 
+    public void setServantHolders(ServantHoldersMXBean servantHolders) {
+        this.servantHolders = servantHolders;
+    }
+
+    public void setThrottlingStrategy(ThrottlingStrategy throttlingStrategy) {
+        this.throttlingStrategy = throttlingStrategy;
+    }
+
+    public void setLoadTimeout(int loadTimeout) {
+        this.loadTimeout = loadTimeout;
+    }
+
     // Redirector.Context API
     // =========================================================================
 
@@ -129,6 +162,35 @@ public class Ring extends _ClusterNodeDisp implements Redirector.Context {
         return this.communicator;
     }
 
+    /**
+     * Asks each node registered in the cluster for its load, this node
+     * included. Nodes which cannot be reached within the load timeout are
+     * skipped.
+     */
+    public List<NodeLoad> getNodeLoads() {
+        List<NodeLoad> loads = new ArrayList<NodeLoad>();
+        loads.add(getLoad(null));
+        ClusterNodePrx[] nodes = registry.lookupClusterNodes();
+        if (nodes == null) {
+            return loads;
+        }
+        for (ClusterNodePrx prx : nodes) {
+            if (prx == null) {
+                continue;
+            }
+            try {
+                NodeLoad load = ClusterNodePrxHelper.uncheckedCast(
+                        prx.ice_invocationTimeout(loadTimeout)).getLoad();
+                if (!uuid.equals(load.uuid)) {
+                    loads.add(load);
+                }
+            } catch (Exception e) {
+                log.warn("Error getting load from node " + prx, e);
+            }
+        }
+        return loads;
+    }
+
     // Configuration and cluster usage
     // =========================================================================
 
@@ -258,6 +320,22 @@ public class Ring extends _ClusterNodeDisp implements Redirector.Context {
         redirector.handleRingShutdown(this, downUuid);
     }
 
+    public NodeLoad getLoad(Current __current) {
+        NodeLoad load = new NodeLoad();
+        load.uuid = this.uuid;
+        load.proxy = this.directProxy;
+        ServantHoldersMXBean holders = servantHolders;
+        if (holders != null) {
+            load.sessions = holders.getSessionCount();
+            load.servants = holders.getServantCount();
+        }
+        ThrottlingStrategy strategy = throttlingStrategy;
+        if (strategy != null) {
+            load.queueDepth = strategy.getQueueDepth();
+        }
+        return load;
+    }
+
     // Local usage
     // =========================================================================
 
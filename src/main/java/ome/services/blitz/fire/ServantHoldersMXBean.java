@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package ome.services.blitz.fire;
+
+import java.util.Map;
+
+/**
+ * JMX gauges of the {@link omero.util.ServantHolder} of each session of a
+ * {@link SessionManagerI}. Sessions are identified by the first characters of
+ * their UUID only, since the full UUID grants access to the session.
+ *
+ * @since 5.5.0
+ */
+public interface ServantHoldersMXBean {
+
+    /**
+     * @return the number of sessions holding servants
+     */
+    int getSessionCount();
+
+    /**
+     * @return the number of servants held by all sessions
+     */
+    int getServantCount();
+
+    /**
+     * @return the number of servants held by each session
+     */
+    Map<String, Integer> getServantCounts();
+
+    /**
+     * @return the number of times locking a servant of each session had to
+     *         wait for another thread
+     */
+    Map<String, Long> getLockContentions();
+}
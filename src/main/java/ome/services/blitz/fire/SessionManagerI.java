@@ -7,7 +7,9 @@
 
 package ome.services.blitz.fire;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -64,7 +66,8 @@ import omero.util.ServantHolder;
  * @since 3.0-Beta2
  */
 public final class SessionManagerI extends Glacier2._SessionManagerDisp
-        implements ApplicationContextAware, ApplicationListener<InternalMessage> {
+        implements ApplicationContextAware, ApplicationListener<InternalMessage>,
+        ServantHoldersMXBean {
 
     /**
      * "ome.security.basic.BasicSecurityWiring" <em>may</em> be replaced by
@@ -400,6 +403,45 @@ public final class SessionManagerI extends Glacier2._SessionManagerDisp
         }
     }
 
+    // Gauges
+    // =========================================================================
+
+    /**
+     * Identifies a session in the gauges without revealing its UUID.
+     */
+    private static String label(ServantHolder holder) {
+        final String uuid = holder.getSession();
+        return uuid.length() > 8 ? uuid.substring(0, 8) : uuid;
+    }
+
+    public int getSessionCount() {
+        return (int) sessionToHolder.size();
+    }
+
+    public int getServantCount() {
+        int count = 0;
+        for (ServantHolder holder : sessionToHolder.asMap().values()) {
+            count += holder.getServantCount();
+        }
+        return count;
+    }
+
+    public Map<String, Integer> getServantCounts() {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (ServantHolder holder : sessionToHolder.asMap().values()) {
+            counts.put(label(holder), holder.getServantCount());
+        }
+        return counts;
+    }
+
+    public Map<String, Long> getLockContentions() {
+        Map<String, Long> contentions = new HashMap<String, Long>();
+        for (ServantHolder holder : sessionToHolder.asMap().values()) {
+            contentions.put(label(holder), holder.getLockContentions());
+        }
+        return contentions;
+    }
+
     // Helpers
     // =========================================================================
 
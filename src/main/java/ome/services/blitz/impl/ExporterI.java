@@ -8,8 +8,10 @@ package ome.services.blitz.impl;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -23,15 +25,14 @@ import loci.common.xml.XMLTools;
 import loci.formats.FormatTools;
 import loci.formats.IFormatWriter;
 import loci.formats.meta.IMetadata;
+import loci.formats.meta.IPyramidStore;
 import loci.formats.meta.MetadataRetrieve;
 import loci.formats.out.OMETiffWriter;
 import loci.formats.services.OMEXMLService;
-import loci.formats.tiff.IFD;
 import ome.api.RawPixelsStore;
 import ome.conditions.ApiUsageException;
 import ome.conditions.InternalException;
 import ome.io.nio.PixelsService;
-import ome.io.nio.RomioPixelBuffer;
 import ome.services.blitz.util.BlitzExecutor;
 import ome.services.blitz.util.BlitzOnly;
 import ome.services.blitz.util.ServiceFactoryAware;
@@ -41,6 +42,7 @@ import ome.services.util.Executor;
 import ome.system.ServiceFactory;
 import ome.xml.model.MetadataOnly;
 import ome.xml.model.OME;
+import ome.xml.model.primitives.PositiveInteger;
 import omero.ServerError;
 import omero.api.AMD_Exporter_addImage;
 import omero.api.AMD_Exporter_generateTiff;
@@ -80,13 +82,19 @@ public class ExporterI extends AbstractCloseableAmdServant implements
 
     private final static int MAX_SIZE = 1024 * 1024;
 
+    /**
+     * The number of bytes read from the file at once, from which sequential
+     * reads of up to {@link #MAX_SIZE} are served.
+     */
+    private final static int READ_AHEAD_SIZE = 4 * MAX_SIZE;
+
     /**
      * The size above which a big tiff should be written as opposed to
      * a normal tiff. This value is checked against the data size PLUS
      * various metadata sizes.
      *
      * @see #getMetadataBytes(OmeroReader)
-     * @see #getDataBytes(OmeroReader)
+     * @see #getDataBytes(OmeroReader, List)
      * @see ticket:6520
      */
     private final static long BIG_TIFF_SIZE = 2L * Integer.MAX_VALUE;
@@ -122,6 +130,33 @@ public class ExporterI extends AbstractCloseableAmdServant implements
      */
     private volatile File file;
 
+    /**
+     * Channel open on {@link #channelFile} for reading the output, or null.
+     */
+    private FileChannel channel;
+
+    /**
+     * The file on which {@link #channel} is open, so that the channel is
+     * reopened when a new file is generated.
+     */
+    private File channelFile;
+
+    /**
+     * Bytes of {@link #channelFile} read ahead, starting at
+     * {@link #readAheadPos}.
+     */
+    private ByteBuffer readAhead;
+
+    /**
+     * The position in the file of {@link #readAhead}, -1 if it holds nothing.
+     */
+    private long readAheadPos = -1;
+
+    /**
+     * An array returned by a previous read which may be reused.
+     */
+    private byte[] spare;
+
     /**
      * Encapsulates the logic for creating new LSIDs and comparing existing ones
      * to the internal value for this DB.
@@ -131,9 +166,8 @@ public class ExporterI extends AbstractCloseableAmdServant implements
     /** LOCI OME-XML service for working with OME-XML. */
     private final OMEXMLService service;
 
-    /** Access to information about big images to prevent exporting large
-     * files since there is currently no generally readable tiff support
-     * for our tiles.
+    /** Access to information about big images, whose sub-resolutions are
+     * exported along with the full resolution.
      *
      * @see ticket:6713
      */
@@ -218,7 +252,9 @@ public class ExporterI extends AbstractCloseableAmdServant implements
             return;
         case output:
             try {
-                __cb.ice_response(read(pos, size));
+                byte[] buf = read(pos, size);
+                __cb.ice_response(buf);
+                recycle(buf);
             } catch (Exception e) {
                 if (e instanceof ServerError) {
                     __cb.ice_exception(e);
@@ -258,6 +294,7 @@ public class ExporterI extends AbstractCloseableAmdServant implements
      * Transition from waiting to config
      */
     private void startConfig() {
+        closeChannel();
         if (file != null) {
             file.delete();
             file = null;
@@ -357,15 +394,7 @@ public class ExporterI extends AbstractCloseableAmdServant implements
 
                                 Image image = retrieve.getImage(0);
                                 Pixels pix = image.getPixels(0);
-                                if (requiresPyramid(sf, pix.getId().getValue())) {
-                                    long id = image.getId().getValue();
-                                    int x = pix.getSizeX().getValue();
-                                    int y = pix.getSizeY().getValue();
-                                    throw new omero.ApiUsageException(
-                                            null, null, String.format(
-                                            "Image:%s is too large for export (sizeX=%s, sizeY=%s)",
-                                            id, x, y));
-                                }
+                                boolean pyramid = requiresPyramid(sf, pix.getId().getValue());
 
                                 file = TempFileManager.create_path("__omero_export__",
                                         ".ome.tiff");
@@ -377,10 +406,19 @@ public class ExporterI extends AbstractCloseableAmdServant implements
                                 reader.setId("OMERO");
 
                                 writer = new OMETiffWriter();
-                                writer.setMetadataRetrieve(retrieve);
+                                TiledTiffExport export = new TiledTiffExport(raw,
+                                        writer, retrieve.getPixelsDimensionOrder(0).getValue(),
+                                        reader.getSizeZ(), reader.getSizeC(), reader.getSizeT());
+                                List<int[]> resolutions = export.getResolutions(pyramid);
+                                if (resolutions.size() > 1) {
+                                    writer.setMetadataRetrieve(
+                                            getPyramidMetadata(resolutions));
+                                } else {
+                                    writer.setMetadataRetrieve(retrieve);
+                                }
                                 writer.setWriteSequentially(true); // ticket:6701
                                 long mSize = getMetadataBytes(reader);
-                                long dSize = getDataBytes(reader);
+                                long dSize = getDataBytes(reader, resolutions);
                                 final boolean bigtiff =
                                     ( ( mSize + dSize ) > BIG_TIFF_SIZE );
                                 if (bigtiff) {
@@ -388,31 +426,13 @@ public class ExporterI extends AbstractCloseableAmdServant implements
                                 }
                                 writer.setId(file.getAbsolutePath());
 
-                                int planeCount = reader.planes;
-                                int planeSize = RomioPixelBuffer.safeLongToInteger(
-                                        raw.getPlaneSize());
                                 log.info(String.format(
                                             "Using big TIFF? %s mSize=%d " +
                                             "dSize=%d planeCount=%d " +
-                                            "planeSize=%d",
+                                            "resolutions=%d",
                                             bigtiff, mSize, dSize,
-                                            planeCount, planeSize));
-                                byte[] plane = new byte[planeSize];
-                                for (int i = 0; i < planeCount; i++) {
-                                    int[] zct = FormatTools.getZCTCoords(
-                                        retrieve.getPixelsDimensionOrder(0).getValue(),
-                                        reader.getSizeZ(), reader.getSizeC(), reader.getSizeT(),
-                                        planeCount, i);
-                                    int readerIndex = reader.getIndex(zct[0], zct[1], zct[2]);
-                                    reader.openBytes(readerIndex, plane);
-
-
-                                    IFD ifd = new IFD();
-                                    ifd.put(IFD.TILE_WIDTH, 128);
-                                    ifd.put(IFD.TILE_LENGTH, 128);
-
-                                    writer.saveBytes(i, plane, ifd);
-                                }
+                                            reader.planes, resolutions.size()));
+                                export.write(resolutions);
                                 retrieve = null;
 
                                 try {
@@ -470,51 +490,101 @@ public class ExporterI extends AbstractCloseableAmdServant implements
 
     /**
      * Read size bytes, and transition to "waiting" If any exception is thrown,
-     * the offset for the current file will not be updated.
+     * the offset for the current file will not be updated. Reads are served
+     * from {@link #readAhead}, which is refilled from the channel kept open on
+     * the file whenever a read falls outside of it, so sequential reads only
+     * access the file once every {@link #READ_AHEAD_SIZE} bytes.
      */
-    private byte[] read(long pos, int size) throws ServerError {
+    private synchronized byte[] read(long pos, int size) throws ServerError {
         if (size > MAX_SIZE) {
             throw new ApiUsageException("Max read size is: " + MAX_SIZE);
         }
 
-        byte[] buf = new byte[size];
-
-        RandomAccessFile ra = null;
         try {
-            ra = new RandomAccessFile(file, "r");
+            FileChannel ch = openChannel();
 
-            long l = ra.length();
+            long l = ch.size();
+            if (pos >= l || size <= 0) {
+                return new byte[0];
+            }
             if (pos + size > l) {
-                size  = (int) (l - pos);
+                size = (int) (l - pos);
             }
 
-            ra.seek(pos);
-            int read = ra.read(buf);
-
-            // Handle end of file
-            if (read < 0) {
-                buf = new byte[0];
-            } else if (read < size) {
-                byte[] newBuf = new byte[read];
-                System.arraycopy(buf, 0, newBuf, 0, read);
-                buf = newBuf;
+            if (readAheadPos < 0 || pos < readAheadPos
+                    || pos + size > readAheadPos + readAhead.limit()) {
+                fillReadAhead(ch, pos);
             }
 
+            byte[] buf = spare != null && spare.length == size ? spare
+                    : new byte[size];
+            spare = null;
+            int offset = (int) (pos - readAheadPos);
+            System.arraycopy(readAhead.array(), offset, buf, 0, size);
+            return buf;
         } catch (IOException io) {
+            closeChannel();
             throw new RuntimeException(io);
-        } finally {
+        }
+    }
 
-            if (ra != null) {
-                try {
-                    ra.close();
-                } catch (IOException e) {
-                    log.warn("IOException on file close");
-                }
+    /**
+     * Keep a result of {@link #read(long, int)} for reuse once it has been
+     * marshalled, since clients usually read in blocks of the same size.
+     */
+    private synchronized void recycle(byte[] buf) {
+        spare = buf;
+    }
+
+    /**
+     * Open the channel on the current file unless it is already open.
+     */
+    private FileChannel openChannel() throws IOException {
+        if (channel != null && channelFile != file) {
+            closeChannel();
+        }
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            channelFile = file;
+            if (readAhead == null) {
+                readAhead = ByteBuffer.allocate(READ_AHEAD_SIZE);
             }
+        }
+        return channel;
+    }
 
+    /**
+     * Read as much of the file as fits in {@link #readAhead} from the given
+     * position.
+     */
+    private void fillReadAhead(FileChannel ch, long pos) throws IOException {
+        readAheadPos = -1;
+        readAhead.clear();
+        while (readAhead.hasRemaining()) {
+            int read = ch.read(readAhead, pos + readAhead.position());
+            if (read < 0) {
+                break;
+            }
         }
+        readAhead.flip();
+        readAheadPos = pos;
+    }
 
-        return buf;
+    /**
+     * Close the channel, if open, and forget what was read ahead.
+     */
+    private synchronized void closeChannel() {
+        readAheadPos = -1;
+        spare = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("IOException on file close");
+            }
+            channel = null;
+            channelFile = null;
+        }
     }
 
     // XML Generation (public for testing)
@@ -540,6 +610,7 @@ public class ExporterI extends AbstractCloseableAmdServant implements
     @Override
     protected void preClose(Ice.Current current) {
         retrieve = null;
+        closeChannel();
         if (file != null) {
             file.delete();
             file = null;
@@ -569,11 +640,34 @@ public class ExporterI extends AbstractCloseableAmdServant implements
         return planebytes + xmlbytes;
     }
 
-    private long getDataBytes(OmeroReader reader) {
-        return (long) reader.planes * reader.sizeX * reader.sizeY *
+    private long getDataBytes(OmeroReader reader, List<int[]> resolutions) {
+        long pixels = 0;
+        for (int[] resolution : resolutions) {
+            pixels += (long) resolution[1] * resolution[2];
+        }
+        return reader.planes * pixels *
             FormatTools.getBytesPerPixel(reader.getPixelType());
     }
 
+    /**
+     * Converts the metadata to OME-XML and adds the sizes of the
+     * sub-resolutions, so that the writer will accept them.
+     */
+    private MetadataRetrieve getPyramidMetadata(List<int[]> resolutions)
+            throws ServiceException {
+        IMetadata meta = convertXml(retrieve);
+        if (!(meta instanceof IPyramidStore)) {
+            throw new InternalException("Cannot write sub-resolutions");
+        }
+        IPyramidStore store = (IPyramidStore) meta;
+        for (int r = 1; r < resolutions.size(); r++) {
+            int[] resolution = resolutions.get(r);
+            store.setResolutionSizeX(new PositiveInteger(resolution[1]), 0, r);
+            store.setResolutionSizeY(new PositiveInteger(resolution[2]), 0, r);
+        }
+        return meta;
+    }
+
     private boolean requiresPyramid(ServiceFactory sf, long id) {
         ome.model.core.Pixels _p =
             sf.getQueryService().get(ome.model.core.Pixels.class, id);
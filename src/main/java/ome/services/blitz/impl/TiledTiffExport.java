@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.blitz.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import loci.formats.FormatTools;
+import loci.formats.IFormatWriter;
+import loci.formats.tiff.IFD;
+import ome.api.RawPixelsStore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the pixels of an image to a tiled TIFF tile by tile. Tiles are
+ * fetched from the {@link RawPixelsStore} on the calling thread, which
+ * holds the session, and handed through a bounded queue to a single writer
+ * thread which encodes them, so that fetching and encoding overlap while no
+ * more than {@link #QUEUE_SIZE} tiles are held in memory. The sub-resolutions
+ * of a pyramid may be written along with the full resolution.
+ *
+ * @since 5.5.0
+ */
+class TiledTiffExport {
+
+    private final static Logger log = LoggerFactory.getLogger(TiledTiffExport.class);
+
+    /** The number of fetched tiles which may await encoding. */
+    final static int QUEUE_SIZE = 16;
+
+    /** The tile size used if the store's is not a multiple of 16. */
+    final static int DEFAULT_TILE_SIZE = 256;
+
+    /** Marks the end of the tiles. */
+    private final static Tile END = new Tile(0, 0, 0, 0, 0, 0, null);
+
+    private final RawPixelsStore raw;
+
+    private final IFormatWriter writer;
+
+    private final String dimensionOrder;
+
+    private final int sizeZ, sizeC, sizeT;
+
+    private final int tileWidth, tileHeight;
+
+    /**
+     * @param raw the store, with the pixels set
+     * @param writer the writer, with its id set
+     * @param dimensionOrder the order in which to write the planes
+     * @param sizeZ the number of z-sections
+     * @param sizeC the number of channels
+     * @param sizeT the number of timepoints
+     */
+    TiledTiffExport(RawPixelsStore raw, IFormatWriter writer,
+            String dimensionOrder, int sizeZ, int sizeC, int sizeT) {
+        this.raw = raw;
+        this.writer = writer;
+        this.dimensionOrder = dimensionOrder;
+        this.sizeZ = sizeZ;
+        this.sizeC = sizeC;
+        this.sizeT = sizeT;
+        int[] tileSize = raw.getTileSize();
+        this.tileWidth = tiffTileSize(tileSize[0]);
+        this.tileHeight = tiffTileSize(tileSize[1]);
+    }
+
+    /**
+     * TIFF tile dimensions must be multiples of 16.
+     */
+    private static int tiffTileSize(int size) {
+        return size > 0 && size % 16 == 0 ? size : DEFAULT_TILE_SIZE;
+    }
+
+    /**
+     * Lists the resolutions of the pixels, largest first, as the store's
+     * resolution level along with the size in X and Y.
+     *
+     * @param pyramid if the sub-resolutions are to be included
+     * @return see above
+     */
+    List<int[]> getResolutions(boolean pyramid) {
+        List<int[]> resolutions = new ArrayList<int[]>();
+        int levels = raw.getResolutionLevels();
+        List<List<Integer>> sizes = raw.getResolutionDescriptions();
+        /* descriptions are listed from the full resolution, which is the
+         * highest resolution level, downwards */
+        int count = pyramid ? Math.min(levels, sizes.size()) : 1;
+        for (int i = 0; i < count; i++) {
+            List<Integer> size = sizes.get(i);
+            resolutions.add(new int[] {levels - 1 - i, size.get(0), size.get(1)});
+        }
+        return resolutions;
+    }
+
+    /**
+     * Writes every plane of each resolution in turn.
+     *
+     * @param resolutions the resolutions as returned by {@link #getResolutions(boolean)}
+     * @throws Exception if a tile could not be fetched or written
+     */
+    void write(List<int[]> resolutions) throws Exception {
+        final BlockingQueue<Tile> queue = new ArrayBlockingQueue<Tile>(QUEUE_SIZE);
+        final ExecutorService encoder = Executors.newSingleThreadExecutor();
+        final Future<Void> encoding = encoder.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                encode(queue);
+                return null;
+            }
+        });
+        try {
+            final int planeCount = sizeZ * sizeC * sizeT;
+            for (int r = 0; r < resolutions.size(); r++) {
+                final int[] resolution = resolutions.get(r);
+                raw.setResolutionLevel(resolution[0]);
+                for (int i = 0; i < planeCount; i++) {
+                    int[] zct = FormatTools.getZCTCoords(dimensionOrder,
+                            sizeZ, sizeC, sizeT, planeCount, i);
+                    for (int y = 0; y < resolution[2]; y += tileHeight) {
+                        for (int x = 0; x < resolution[1]; x += tileWidth) {
+                            int w = Math.min(tileWidth, resolution[1] - x);
+                            int h = Math.min(tileHeight, resolution[2] - y);
+                            byte[] buf = raw.getTile(zct[0], zct[1], zct[2],
+                                    x, y, w, h);
+                            put(queue, encoding, new Tile(r, i, x, y, w, h, buf));
+                        }
+                    }
+                }
+            }
+            put(queue, encoding, END);
+            encoding.get();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw ee;
+        } finally {
+            encoder.shutdownNow();
+        }
+    }
+
+    /**
+     * Hands a tile to the writer thread, waiting for space in the queue
+     * unless the writer has failed.
+     */
+    private static void put(BlockingQueue<Tile> queue, Future<Void> encoding,
+            Tile tile) throws Exception {
+        while (!queue.offer(tile, 1, TimeUnit.SECONDS)) {
+            if (encoding.isDone()) {
+                encoding.get();
+                throw new IllegalStateException("TIFF encoding stopped early");
+            }
+        }
+    }
+
+    /**
+     * Writes the queued tiles until the end is reached.
+     */
+    private void encode(BlockingQueue<Tile> queue) throws Exception {
+        int resolution = -1;
+        long count = 0;
+        while (true) {
+            Tile tile = queue.take();
+            if (tile == END) {
+                log.debug("Wrote {} tiles", count);
+                return;
+            }
+            if (tile.resolution != resolution) {
+                resolution = tile.resolution;
+                writer.setResolution(resolution);
+            }
+            IFD ifd = new IFD();
+            ifd.put(IFD.TILE_WIDTH, tileWidth);
+            ifd.put(IFD.TILE_LENGTH, tileHeight);
+            writer.saveBytes(tile.plane, tile.buf, ifd, tile.x, tile.y,
+                    tile.w, tile.h);
+            count++;
+        }
+    }
+
+    /**
+     * A fetched tile awaiting encoding.
+     */
+    private static class Tile {
+
+        final int resolution, plane, x, y, w, h;
+
+        final byte[] buf;
+
+        Tile(int resolution, int plane, int x, int y, int w, int h, byte[] buf) {
+            this.resolution = resolution;
+            this.plane = plane;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+            this.buf = buf;
+        }
+    }
+}
@@ -8,7 +8,10 @@
 package ome.services.blitz.measurements;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -29,6 +32,11 @@ import org.slf4j.LoggerFactory;
  * Parser API implementation for storing result measurements from SPW companion
  * files as ROIs and OMERO.tables.
  * 
+ * Objects are saved in batches of at most {@link #setRoiBatchSize(int)} as
+ * they are added, and rows passed to {@link #appendRows(Object[][])} are
+ * written to the table in chunks of {@link #setRowChunkSize(int)} rows, so
+ * that measurement files of any size can be stored with bounded memory.
+ * 
  * @since Beta4.1
  */
 public class MeasurementStore implements OmeroMeasurementStore {
@@ -37,10 +45,19 @@ public class MeasurementStore implements OmeroMeasurementStore {
 
     private final static Logger log = LoggerFactory.getLogger(MeasurementStore.class);
 
+    /** The default number of objects saved at once. */
+    public final static int DEFAULT_ROI_BATCH_SIZE = 1000;
+
+    /** The default number of rows written to the table at once. */
+    public final static int DEFAULT_ROW_CHUNK_SIZE = 10000;
+
     // Final
 
     private final Map<String, IObject> lsidMap = new HashMap<String, IObject>();
 
+    /** Objects added since they were last saved, in order of addition. */
+    private final Map<String, IObject> unsaved = new LinkedHashMap<String, IObject>();
+
     private final List<Long> roiIds = new ArrayList<Long>();
 
     private final LocalUpdate update;
@@ -63,12 +80,50 @@ public class MeasurementStore implements OmeroMeasurementStore {
 
     private boolean initialized = false;
 
+    private int roiBatchSize = DEFAULT_ROI_BATCH_SIZE;
+
+    private int rowChunkSize = DEFAULT_ROW_CHUNK_SIZE;
+
+    /** Rows appended but not yet written to the table. */
+    private Object[][] buffer;
+
+    private int buffered = 0;
+
     public MeasurementStore(LocalUpdate update, TablePrx table)
             throws ServerError {
         this.table = table;
         this.update = update;
     }
 
+    /**
+     * Sets the maximum number of objects saved in one call. Objects are
+     * saved as soon as that many have been added.
+     *
+     * @param roiBatchSize a positive number
+     */
+    public void setRoiBatchSize(int roiBatchSize) {
+        if (roiBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.roiBatchSize = roiBatchSize;
+    }
+
+    /**
+     * Sets the number of rows written to the table in one call.
+     *
+     * @param rowChunkSize a positive number
+     */
+    public void setRowChunkSize(int rowChunkSize) {
+        if (rowChunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        if (buffered > 0) {
+            throw new IllegalStateException("Rows are pending");
+        }
+        this.rowChunkSize = rowChunkSize;
+        this.buffer = null;
+    }
+
     // LOCI API
     // =========================================================================
 
@@ -102,8 +157,10 @@ public class MeasurementStore implements OmeroMeasurementStore {
         if (lsid != null) {
             if (obj == null) {
                 lsidMap.remove(lsid);
+                unsaved.remove(lsid);
             } else {
                 lsidMap.put(lsid, obj);
+                addUnsaved(lsid, obj);
             }
         }
     }
@@ -111,11 +168,14 @@ public class MeasurementStore implements OmeroMeasurementStore {
     public void addObjects(Map<String, IObject> map) {
         if (map != null) {
             lsidMap.putAll(map);
+            for (Map.Entry<String, IObject> entry : map.entrySet()) {
+                addUnsaved(entry.getKey(), entry.getValue());
+            }
         }
     }
 
     public void addRows(Object[][] rows) throws ServerError {
-        if (rows != null) {
+        if (this.rows != null) {
             throw new ApiUsageException(null, null,
                     "Call save before adding more data");
         }
@@ -146,6 +206,103 @@ public class MeasurementStore implements OmeroMeasurementStore {
         }
         roi.setImage(image);
         lsidMap.put(lsid, roi);
+        addUnsaved(lsid, roi);
+    }
+
+    /**
+     * Queues an object to be saved, saving the queued objects once a batch
+     * is complete.
+     */
+    private void addUnsaved(String lsid, IObject obj) {
+        unsaved.put(lsid, obj);
+        if (unsaved.size() >= roiBatchSize) {
+            saveObjects();
+        }
+    }
+
+    /**
+     * Saves the objects added since the last save, in batches of at most
+     * {@link #roiBatchSize}, and replaces them by their unloaded versions.
+     */
+    private void saveObjects() {
+        while (!unsaved.isEmpty()) {
+            List<IObject> batch = new ArrayList<IObject>(Math.min(
+                    roiBatchSize, unsaved.size()));
+            for (IObject obj : unsaved.values()) {
+                if (batch.size() == roiBatchSize) {
+                    break;
+                }
+                batch.add(obj);
+            }
+            IObject[] objs = batch.toArray(new IObject[batch.size()]);
+            List<Long> ids = update.saveAndReturnIds(objs);
+            for (int i = 0; i < ids.size(); i++) {
+                batch.get(i).setId(ids.get(i));
+                batch.get(i).unload();
+                roiIds.add(ids.get(i));
+            }
+            Iterator<IObject> it = unsaved.values().iterator();
+            for (int i = 0; i < objs.length; i++) {
+                it.next();
+                it.remove();
+            }
+            log.debug("Saved {} objects", objs.length);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see ome.services.blitz.measurements.OmeroMeasurementStore#appendRows(Object[][])
+     */
+    public void appendRows(Object[][] rows) throws Exception {
+
+        if (!initialized) {
+            throw new ApiUsageException(null, null, "Not initialized");
+        }
+        if (rows == null) {
+            return;
+        }
+        if (buffer == null) {
+            buffer = new Object[rowChunkSize][];
+        }
+        for (Object[] row : rows) {
+            buffer[buffered++] = row;
+            if (buffered == buffer.length) {
+                writeRows();
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see ome.services.blitz.measurements.OmeroMeasurementStore#flush()
+     */
+    public void flush() throws Exception {
+
+        if (!initialized) {
+            throw new ApiUsageException(null, null, "Not initialized");
+        }
+        saveObjects();
+        writeRows();
+    }
+
+    /**
+     * Writes the buffered rows to the table, after saving the objects they
+     * may refer to.
+     */
+    private void writeRows() throws ServerError {
+        if (buffered == 0) {
+            return;
+        }
+        saveObjects();
+        Object[][] chunk = buffered == buffer.length ? buffer
+                : Arrays.copyOf(buffer, buffered);
+        cols.fill(chunk);
+        table.addData(cols.asArray());
+        Arrays.fill(buffer, 0, buffered, null);
+        buffered = 0;
     }
 
     /*
@@ -163,24 +320,14 @@ public class MeasurementStore implements OmeroMeasurementStore {
         // First save the rois, so that if it fails, no changes will be
         // made to the table
         //
-        List<IObject> unsaved = new ArrayList<IObject>();
-        for (Map.Entry<String, IObject> entry : lsidMap.entrySet()) {
-            unsaved.add(entry.getValue());
-        }
-        if (unsaved.size() > 0) {
-            IObject[] objs = unsaved.toArray(new IObject[unsaved.size()]);
-            List<Long> ids = update.saveAndReturnIds(objs);
-            for (int i = 0; i < ids.size(); i++) {
-                unsaved.get(i).setId(ids.get(i));
-                unsaved.get(i).unload();
-                roiIds.add(ids.get(i));
-            }
-        }
+        saveObjects();
 
         // Now fill the columns with data, and send to the table instance
-        cols.fill(rows);
-        table.addData(cols.asArray());
-        rows = null;
+        if (rows != null) {
+            appendRows(rows);
+            rows = null;
+        }
+        writeRows();
 
     }
 
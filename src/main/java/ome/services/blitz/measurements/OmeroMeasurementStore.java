@@ -39,6 +39,28 @@ public interface OmeroMeasurementStore {
      */
     public abstract void addRows(Object[][] rows) throws Exception;
 
+    /**
+     * Adds a chunk of rows to the store for streaming ingestion. Unlike
+     * {@link #addRows(Object[][])}, this may be called any number of times
+     * without calling {@link #save()} in between: the rows are written to
+     * the table in fixed-size chunks as they accumulate, after saving the
+     * objects added so far. Any objects which the rows refer to by LSID must
+     * therefore be added before the rows. Call {@link #flush()} once all
+     * rows have been appended.
+     *
+     * @param rows the rows to append
+     * @throws Exception
+     */
+    public abstract void appendRows(Object[][] rows) throws Exception;
+
+    /**
+     * Saves all pending objects and writes all rows appended with
+     * {@link #appendRows(Object[][])} to the table.
+     *
+     * @throws Exception
+     */
+    public abstract void flush() throws Exception;
+
     public abstract void addCircle(String roiLsid, double x, double y, double r)
             throws Exception;
 
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package ome.services.blitz.redirect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ome.services.util.Executor;
+import omero.grid.NodeLoad;
+import Glacier2.CannotCreateSessionException;
+import Glacier2.SessionPrx;
+
+/**
+ * Creates each new session on the node of the cluster which currently has
+ * the least load, as reported by {@link Context#getNodeLoads()}: the number
+ * of sessions, of servants and of calls waiting to be run on the node,
+ * weighted by {@link #setSessionWeight(double)},
+ * {@link #setServantWeight(double)} and {@link #setQueueWeight(double)}.
+ *
+ * Joining an existing session is still routed to the node which holds it,
+ * as by the other {@link AbstractRedirector}s. The load reports are cached for a
+ * configurable period, so that logging in does not contact every node; while
+ * cached, each session sent to a node is added to its reported load, so that
+ * a burst of logins is spread rather than sent to the same node.
+ *
+ * @since 5.5.0
+ */
+public class LoadRedirector extends AbstractRedirector {
+
+    private final long cacheMillis;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    private double sessionWeight = 1.0;
+
+    private double servantWeight = 0.1;
+
+    private double queueWeight = 1.0;
+
+    /** The cached load reports; guarded by this instance. */
+    private List<NodeLoad> loads = Collections.emptyList();
+
+    /** When {@link #loads} were last fetched; guarded by this instance. */
+    private long fetched = 0;
+
+    /**
+     * @param ex
+     *            the executor, for finding the node of a joined session
+     * @param cacheMillis
+     *            for how long the load reports of the nodes are used before
+     *            they are fetched again
+     */
+    public LoadRedirector(Executor ex, long cacheMillis) {
+        super(ex);
+        this.cacheMillis = cacheMillis;
+    }
+
+    public void setSessionWeight(double sessionWeight) {
+        this.sessionWeight = sessionWeight;
+    }
+
+    public void setServantWeight(double servantWeight) {
+        this.servantWeight = servantWeight;
+    }
+
+    public void setQueueWeight(double queueWeight) {
+        this.queueWeight = queueWeight;
+    }
+
+    public SessionPrx getProxyOrNull(Context ctx, String userId,
+            Glacier2.SessionControlPrx control, Ice.Current current)
+            throws CannotCreateSessionException {
+
+        if (alreadyRouted(current)) {
+            log.info("Session creation already routed once for " + userId);
+            return null; // EARLY EXIT
+        }
+
+        // Joined sessions stay on the node which holds them
+        String proxyString = proxyForSession(ctx, userId);
+        if (proxyString != null) {
+            if (proxyString.equals(ctx.getDirectProxy())) {
+                return null; // EARLY EXIT
+            }
+            log.info(String.format("Returning remote session on %s",
+                    proxyString));
+            return obtainProxy(proxyString, ctx, userId, control, current);
+        }
+
+        NodeLoad target = choose(ctx);
+        if (target == null || ctx.uuid().equals(target.uuid)
+                || target.proxy == null) {
+            return null; // Create the session locally.
+        }
+        log.info(String.format("Load balancing to %s", target.proxy));
+        return obtainProxy(target.proxy, ctx, userId, control, current);
+    }
+
+    /**
+     * Picks the least loaded node and counts one more session for it.
+     *
+     * @return the node, or null if no loads are known
+     */
+    protected NodeLoad choose(Context ctx) {
+        refreshIfStale(ctx);
+        synchronized (this) {
+            NodeLoad best = null;
+            double lowest = Double.MAX_VALUE;
+            for (NodeLoad load : loads) {
+                double score = score(load);
+                // On a tie, prefer the local node
+                if (score < lowest || (score == lowest
+                        && ctx.uuid().equals(load.uuid))) {
+                    best = load;
+                    lowest = score;
+                }
+            }
+            if (best != null) {
+                best.sessions++;
+            }
+            return best;
+        }
+    }
+
+    protected double score(NodeLoad load) {
+        return sessionWeight * load.sessions + servantWeight * load.servants
+                + queueWeight * load.queueDepth;
+    }
+
+    /**
+     * Fetches the load reports if they are older than the cache period. Only
+     * one thread fetches at a time; the others meanwhile use the previous
+     * reports.
+     */
+    private void refreshIfStale(Context ctx) {
+        synchronized (this) {
+            if (System.currentTimeMillis() - fetched < cacheMillis) {
+                return;
+            }
+        }
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<NodeLoad> fresh = ctx.getNodeLoads();
+            synchronized (this) {
+                loads = new ArrayList<NodeLoad>(fresh);
+                fetched = System.currentTimeMillis();
+            }
+        } catch (Exception e) {
+            log.warn("Failed to get node loads; keeping previous", e);
+            synchronized (this) {
+                fetched = System.currentTimeMillis();
+            }
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * Discards the cached load reports, since the nodes of the cluster
+     * changed.
+     */
+    public synchronized void chooseNextRedirect(Context context,
+            Set<String> nodeUuids) {
+        fetched = 0;
+    }
+
+    /**
+     * Stops sending sessions to the node which is shutting down.
+     */
+    public synchronized void handleRingShutdown(Context context, String uuid) {
+        List<NodeLoad> remaining = new ArrayList<NodeLoad>(loads.size());
+        for (NodeLoad load : loads) {
+            if (!load.uuid.equals(uuid)) {
+                remaining.add(load);
+            }
+        }
+        loads = remaining;
+    }
+
+}
@@ -5,12 +5,14 @@
 
 package ome.services.blitz.redirect;
 
+import java.util.List;
 import java.util.Set;
 
 import ome.model.meta.Node;
 import ome.services.blitz.fire.Ring;
 import ome.services.blitz.fire.SessionManagerI;
 import ome.system.Principal;
+import omero.grid.NodeLoad;
 import Glacier2.CannotCreateSessionException;
 import Glacier2.SessionPrx;
 
@@ -59,6 +61,13 @@ public interface Redirector {
          * filtering out the inactive ones.
          */
         Set<String> getManagerList(boolean activeOnly);
+
+        /**
+         * Return the current load of each reachable node in the cluster,
+         * including the local node. Each call contacts every node, so
+         * implementations of {@link Redirector} should cache the result.
+         */
+        List<NodeLoad> getNodeLoads();
     }
 
     /**
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.blitz.repo;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ome.util.checksum.ChecksumProvider;
+import ome.util.checksum.ChecksumProviderFactory;
+import ome.util.checksum.ChecksumType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Calculates the checksums of batches of repository files on a bounded pool
+ * of worker threads. Each file is read exactly once regardless of how many
+ * checksum algorithms are requested for it, so that
+ * {@link ManagedRepositoryI#setChecksumAlgorithm(omero.model.ChecksumAlgorithm, List, Ice.Current)}
+ * can check the old hash and calculate the new one in a single pass.
+ * Progress is logged periodically since verifying a large repository may
+ * take a long time.
+ *
+ * @since 5.5.0
+ */
+public class ChecksumVerifier {
+
+    private final static Logger log = LoggerFactory.getLogger(ChecksumVerifier.class);
+
+    /* how often to log progress */
+    private static final long PROGRESS_INTERVAL_MS = 10 * 1000;
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * A single file to be read along with the algorithms with which to hash
+     * it. After {@link ChecksumVerifier#hash(List)} returns, the
+     * {@link #getChecksum(int) checksums} are available in the same order
+     * as the algorithms.
+     */
+    public static class Task {
+
+        private final long id;
+
+        private final String osPath;
+
+        private final ChecksumType[] types;
+
+        private final String[] checksums;
+
+        /**
+         * @param id the ID of the original file, for reporting
+         * @param osPath the server-side path of the file to read
+         * @param types the algorithms with which to hash the file
+         */
+        public Task(long id, String osPath, ChecksumType... types) {
+            this.id = id;
+            this.osPath = osPath;
+            this.types = types;
+            this.checksums = new String[types.length];
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @param index which of the algorithms given to the constructor
+         * @return the checksum calculated with that algorithm
+         */
+        public String getChecksum(int index) {
+            return checksums[index];
+        }
+    }
+
+    private final ChecksumProviderFactory checksumProviderFactory;
+
+    private final int threads;
+
+    /**
+     * @param checksumProviderFactory the source of checksum providers
+     * @param threads the maximum number of files to read concurrently,
+     * which should reflect how much parallel I/O the storage can sustain
+     */
+    public ChecksumVerifier(ChecksumProviderFactory checksumProviderFactory, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.checksumProviderFactory = checksumProviderFactory;
+        this.threads = threads;
+    }
+
+    /**
+     * Calculate the checksums for all the given tasks, returning once all
+     * have completed.
+     * @param tasks the files to hash
+     * @throws IOException if any of the files could not be read
+     */
+    public void hash(List<Task> tasks) throws IOException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        final Progress progress = new Progress(tasks.size());
+        if (threads == 1 || tasks.size() == 1) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            for (final Task task : tasks) {
+                hash(task, buffer, progress);
+            }
+            progress.done();
+            return;
+        }
+
+        final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+            @Override
+            protected byte[] initialValue() {
+                return new byte[BUFFER_SIZE];
+            }
+        };
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, tasks.size()));
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+            for (final Task task : tasks) {
+                futures.add(pool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        hash(task, buffers.get(), progress);
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while calculating checksums", ie);
+                } catch (ExecutionException ee) {
+                    final Throwable cause = ee.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IOException(cause);
+                }
+            }
+            progress.done();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Read the task's file once, feeding every block to each of its checksum
+     * providers.
+     */
+    private void hash(Task task, byte[] buffer, Progress progress) throws IOException {
+        final ChecksumProvider[] providers = new ChecksumProvider[task.types.length];
+        for (int i = 0; i < providers.length; i++) {
+            providers[i] = checksumProviderFactory.getProvider(task.types[i]);
+        }
+        long bytes = 0;
+        final FileInputStream stream = new FileInputStream(task.osPath);
+        try {
+            int rlen;
+            while ((rlen = stream.read(buffer)) != -1) {
+                for (final ChecksumProvider provider : providers) {
+                    provider.putBytes(buffer, 0, rlen);
+                }
+                bytes += rlen;
+            }
+        } catch (IOException e) {
+            throw new IOException("failed to read file ID " + task.id + ": " + task.osPath, e);
+        } finally {
+            stream.close();
+        }
+        for (int i = 0; i < providers.length; i++) {
+            task.checksums[i] = providers[i].checksumAsString();
+        }
+        progress.fileDone(bytes);
+    }
+
+    /**
+     * Thread-safe counters which are logged at most every
+     * {@link #PROGRESS_INTERVAL_MS}.
+     */
+    private static class Progress {
+
+        private final int total;
+
+        private final long started = System.currentTimeMillis();
+
+        private final AtomicLong files = new AtomicLong();
+
+        private final AtomicLong bytes = new AtomicLong();
+
+        private final AtomicLong lastReport = new AtomicLong(started);
+
+        Progress(int total) {
+            this.total = total;
+        }
+
+        void fileDone(long fileBytes) {
+            files.incrementAndGet();
+            bytes.addAndGet(fileBytes);
+            final long now = System.currentTimeMillis();
+            final long last = lastReport.get();
+            if (now - last >= PROGRESS_INTERVAL_MS && lastReport.compareAndSet(last, now)) {
+                report(now);
+            }
+        }
+
+        void done() {
+            report(System.currentTimeMillis());
+        }
+
+        private void report(long now) {
+            final long elapsed = Math.max(1, now - started);
+            final long read = bytes.get();
+            log.info(String.format("checksummed %d/%d files, %d MB in %d s (%.1f MB/s)",
+                    files.get(), total, read >> 20, elapsed / 1000,
+                    (read / (1024.0 * 1024.0)) / (elapsed / 1000.0)));
+        }
+    }
+}
@@ -147,6 +147,18 @@ public class ManagedImportRequestI extends ImportRequest implements IRequest {
 
     private boolean noStatsInfo = false;
 
+    /**
+     * How many threads to use when reading the pixel data in
+     * {@link #parseData(String, int, ImportSize)}.
+     */
+    private int parallelPixelData = 1;
+
+    /**
+     * Non-null only during {@link #pixelData(PixelDataJob)} if
+     * {@link #parallelPixelData} is greater than one.
+     */
+    private ParallelPixelParser parallelParser = null;
+
     private String fileName = null;
 
     private String shortName = null;
@@ -269,6 +281,9 @@ public class ManagedImportRequestI extends ImportRequest implements IRequest {
                 settings.doThumbnails.getValue();
             noStatsInfo = settings.noStatsInfo == null ? false :
                 settings.noStatsInfo.getValue();
+            parallelPixelData = settings.parallelPixelData == null ? 1 :
+                Math.max(1, Math.min(settings.parallelPixelData.getValue(),
+                        Runtime.getRuntime().availableProcessors()));
 
             IFormatReader baseReader = reader.getImageReader().getReader();
             if (log.isInfoEnabled())
@@ -667,16 +682,26 @@ public class ManagedImportRequestI extends ImportRequest implements IRequest {
 
         if (!reader.isMinMaxSet() && !noStatsInfo)
         {
-            // Parse the binary data to generate min/max values
-            int seriesCount = reader.getSeriesCount();
-            for (int series = 0; series < seriesCount; series++) {
-                ImportSize size = new ImportSize(fileName,
-                        pixList.get(series), reader.getDimensionOrder());
-                Pixels pixels = pixList.get(series);
-                MessageDigest md = parseData(fileName, series, size);
-                if (md != null) {
-                   final String s = Hex.encodeHexString(md.digest());
-                   pixels.setSha1(store.toRType(s));
+            if (parallelPixelData > 1) {
+                parallelParser = new ParallelPixelParser(reader, file, parallelPixelData);
+            }
+            try {
+                // Parse the binary data to generate min/max values
+                int seriesCount = reader.getSeriesCount();
+                for (int series = 0; series < seriesCount; series++) {
+                    ImportSize size = new ImportSize(fileName,
+                            pixList.get(series), reader.getDimensionOrder());
+                    Pixels pixels = pixList.get(series);
+                    MessageDigest md = parseData(fileName, series, size);
+                    if (md != null) {
+                       final String s = Hex.encodeHexString(md.digest());
+                       pixels.setSha1(store.toRType(s));
+                    }
+                }
+            } finally {
+                if (parallelParser != null) {
+                    parallelParser.close();
+                    parallelParser = null;
                 }
             }
         }
@@ -770,13 +795,15 @@ public class ManagedImportRequestI extends ImportRequest implements IRequest {
 
     /**
      * Parse the binary data to generate min/max values and
-     * allow an md to be calculated.
+     * allow an md to be calculated. If {@link omero.grid.ImportSettings#parallelPixelData}
+     * requested more than one thread, the tiles are decoded concurrently but
+     * the digest is identical to that of the single-threaded case.
      *
      * @param series
      * @return The SHA1 message digest for the binary data.
      */
     public MessageDigest parseData(
-            String fileName, int series,
+            String fileName, final int series,
             ImportSize size)
         throws FormatException, IOException, ServerError
     {
@@ -796,6 +823,15 @@ public class ManagedImportRequestI extends ImportRequest implements IRequest {
             throw new RuntimeException(
                 "Required SHA-1 message digest algorithm unavailable.");
         }
+        if (parallelParser != null) {
+            return parallelParser.parse(md, series, size, store,
+                    new ParallelPixelParser.PlaneListener() {
+                        public void planeParsed(int planeNo) {
+                            notifyObservers(new ImportEvent.IMPORT_STEP(
+                                    planeNo, series, reader.getSeriesCount()));
+                        }
+                    });
+        }
         int planeNo = 1;
         for (int t = 0; t < size.sizeT; t++) {
             for (int c = 0; c < size.sizeC; c++) {
@@ -857,7 +893,7 @@ public class ManagedImportRequestI extends ImportRequest implements IRequest {
                     h = size.sizeY - y;
                 }
                 int bytesToRead = w * h * bytesPerPixel;
-                if (arrayBuf.length != bytesToRead)
+                if (arrayBuf.length < bytesToRead)
                 {
                     arrayBuf = new byte[bytesToRead];
                 }
@@ -872,7 +908,7 @@ public class ManagedImportRequestI extends ImportRequest implements IRequest {
                 arrayBuf = reader.openBytes(
                         planeNumber, arrayBuf, x, y, w, h);
                 try {
-                    md.update(arrayBuf);
+                    md.update(arrayBuf, 0, bytesToRead);
                 }
                 catch (Exception e) {
                     // This better not happen. :)
@@ -121,6 +121,9 @@ public class ManagedRepositoryI extends PublicRepositoryI
 
     private final static int parentDirsToRetain = 3;
 
+    /* default for how many files to read concurrently when calculating checksums */
+    private final static int DEFAULT_CHECKSUM_THREADS = 4;
+
     /* This class is used in the server-side creation of import containers.
      * The suggestImportPaths method sanitizes the paths in due course.
      * From the server side, we cannot imitate ImportLibrary.createImport
@@ -156,6 +159,9 @@ public class ManagedRepositoryI extends PublicRepositoryI
 
     private final Set<String> managedRepoUuids;
 
+    /* how many files to read concurrently when calculating checksums */
+    private int checksumThreads = DEFAULT_CHECKSUM_THREADS;
+
     /**
      * Creates a {@link ProcessContainer} internally that will not be managed
      * by background threads. Used primarily during testing.
@@ -197,6 +203,19 @@ public class ManagedRepositoryI extends PublicRepositoryI
         log.info("Repository template: " + template);
     }
 
+    /**
+     * Set how many files may be read concurrently when verifying or
+     * recalculating checksums. This should reflect how much parallel I/O the
+     * underlying storage can sustain.
+     * @param checksumThreads a positive number of threads
+     */
+    public void setChecksumThreads(int checksumThreads) {
+        if (checksumThreads < 1) {
+            throw new IllegalArgumentException("checksum threads must be positive: " + checksumThreads);
+        }
+        this.checksumThreads = checksumThreads;
+    }
+
     @Override
     public Ice.Object tie() {
         return new _ManagedRepositoryTie(this);
@@ -348,25 +367,30 @@ public class ManagedRepositoryI extends PublicRepositoryI
         allGroupsCurrent.ctx = new HashMap<String, String>(__current.ctx);
         allGroupsCurrent.ctx.put(omero.constants.GROUP.value, "-1");
 
-        /* verify the checksum of the specified files that are in this repository */
-        final List<Long> mismatchFiles = new ArrayList<Long>();
-        for (final long id : repositoryDao.filterFilesByRepository(getRepoUuid(), ids, allGroupsCurrent)) {
-            /* get one of the files */
-            final OriginalFile file = repositoryDao.getOriginalFileWithHasher(id, allGroupsCurrent);
-            final FsFile fsPath = new FsFile(file.getPath() + file.getName());
-            final String osPath = serverPaths.getServerFileFromFsFile(fsPath).getAbsolutePath();
+        /* load the specified files that are in this repository */
+        final List<Long> inRepo = repositoryDao.filterFilesByRepository(getRepoUuid(), ids, allGroupsCurrent);
+        final List<OriginalFile> files = repositoryDao.getOriginalFilesWithHasher(inRepo, allGroupsCurrent);
 
-            /* check the file's checksum */
+        /* hash those that have a valid checksum */
+        final List<String> hashes = new ArrayList<String>(files.size());
+        final List<ChecksumVerifier.Task> tasks = new ArrayList<ChecksumVerifier.Task>(files.size());
+        for (final OriginalFile file : files) {
             final ome.model.enums.ChecksumAlgorithm hasher = file.getHasher();
             final String hash = file.getHash();
             if (hasher != null && hash != null) {
-                /* has a valid checksum, so check it */
-                final ChecksumProvider fromProvider =
-                        checksumProviderFactory.getProvider(ChecksumAlgorithmMapper.getChecksumType(hasher));
-                fromProvider.putFile(osPath);
-                if (!fromProvider.checksumAsString().equalsIgnoreCase(hash)) {
-                    mismatchFiles.add(id);
-                }
+                hashes.add(hash);
+                tasks.add(new ChecksumVerifier.Task(file.getId(), getOsPath(file),
+                        ChecksumAlgorithmMapper.getChecksumType(hasher)));
+            }
+        }
+        hashFiles(tasks);
+
+        /* check the files' checksums */
+        final List<Long> mismatchFiles = new ArrayList<Long>();
+        for (int i = 0; i < tasks.size(); i++) {
+            final ChecksumVerifier.Task task = tasks.get(i);
+            if (!task.getChecksum(0).equalsIgnoreCase(hashes.get(i))) {
+                mismatchFiles.add(task.getId());
             }
         }
         return mismatchFiles;
@@ -384,47 +408,55 @@ public class ManagedRepositoryI extends PublicRepositoryI
         final ome.model.enums.ChecksumAlgorithm toHasher = repositoryDao.getChecksumAlgorithm(toHasherName, adjustedGroupCurrent);
         final ChecksumType toType = ChecksumAlgorithmMapper.getChecksumType(toHasher);
 
-        /* set the specified files that are in this repository */
-        final List<Long> adjustedFiles = new ArrayList<Long>();
-        for (final long id : repositoryDao.filterFilesByRepository(getRepoUuid(), ids, adjustedGroupCurrent)) {
-            /* get one of the files */
-            final OriginalFile file = repositoryDao.getOriginalFileWithHasher(id, adjustedGroupCurrent);
-            final FsFile fsPath = new FsFile(file.getPath() + file.getName());
-            final String osPath = serverPaths.getServerFileFromFsFile(fsPath).getAbsolutePath();
+        /* load the specified files that are in this repository */
+        final List<Long> inRepo = repositoryDao.filterFilesByRepository(getRepoUuid(), ids, adjustedGroupCurrent);
+        final List<OriginalFile> files = repositoryDao.getOriginalFilesWithHasher(inRepo, adjustedGroupCurrent);
 
+        /* find which files need rehashing, and with which hashers */
+        final List<OriginalFile> toAdjust = new ArrayList<OriginalFile>(files.size());
+        final List<ChecksumVerifier.Task> tasks = new ArrayList<ChecksumVerifier.Task>(files.size());
+        for (final OriginalFile file : files) {
             /* check the file's existing hasher */
             final ome.model.enums.ChecksumAlgorithm fromHasher = file.getHasher();
             final String fromHash = file.getHash();
-            ChecksumProvider fromProvider = null;
+            final ChecksumVerifier.Task task;
             if (fromHasher != null && fromHash != null) {
                 /* already has a valid hash */
                 if (toHasherName.equals(fromHasher.getValue())) {
                     /* already hashed in the specified manner */
                     continue;
                 } else {
-                    /* hashed with a different hasher */
-                    fromProvider = checksumProviderFactory.getProvider(ChecksumAlgorithmMapper.getChecksumType(fromHasher));
+                    /* hashed with a different hasher, so find the new hash and check the old in the same read */
+                    task = new ChecksumVerifier.Task(file.getId(), getOsPath(file),
+                            toType, ChecksumAlgorithmMapper.getChecksumType(fromHasher));
                 }
+            } else {
+                task = new ChecksumVerifier.Task(file.getId(), getOsPath(file), toType);
             }
-            /* find the new hash */
-            final ChecksumProvider toProvider = checksumProviderFactory.getProvider(toType);
-            toProvider.putFile(osPath);
-            final String toHash = toProvider.checksumAsString();
-            if (fromProvider != null) {
-                /* check old hash after new one is calculated */
-                fromProvider.putFile(osPath);
-                if (!fromProvider.checksumAsString().equals(fromHash)) {
-                    throw new ServerError(null, null, "hash mismatch on file ID " + id);
+            toAdjust.add(file);
+            tasks.add(task);
+        }
+        hashFiles(tasks);
+
+        /* set the files' checksums */
+        final List<Long> adjustedFiles = new ArrayList<Long>();
+        for (int i = 0; i < tasks.size(); i++) {
+            final OriginalFile file = toAdjust.get(i);
+            final ChecksumVerifier.Task task = tasks.get(i);
+            if (file.getHasher() != null && file.getHash() != null) {
+                /* check old hash */
+                if (!task.getChecksum(1).equals(file.getHash())) {
+                    throw new ServerError(null, null, "hash mismatch on file ID " + task.getId());
                 }
             }
             /* update the file's checksum */
             file.setHasher(toHasher);
-            file.setHash(toHash);
+            file.setHash(task.getChecksum(0));
             final String fileGroup = Long.toString(file.getDetails().getGroup().getId());
             adjustedGroupCurrent.ctx.put(omero.constants.GROUP.value, fileGroup);
             repositoryDao.saveObject(file, adjustedGroupCurrent);
             adjustedGroupCurrent.ctx.put(omero.constants.GROUP.value, "-1");
-            adjustedFiles.add(id);
+            adjustedFiles.add(task.getId());
         }
         return adjustedFiles;
     }
@@ -433,6 +465,30 @@ public class ManagedRepositoryI extends PublicRepositoryI
     // HELPERS
     //
 
+    /**
+     * @param file an original file in this repository
+     * @return the server-side path of the file
+     */
+    private String getOsPath(OriginalFile file) {
+        final FsFile fsPath = new FsFile(file.getPath() + file.getName());
+        return serverPaths.getServerFileFromFsFile(fsPath).getAbsolutePath();
+    }
+
+    /**
+     * Calculate the checksums for the given tasks using the
+     * {@link #setChecksumThreads(int) configured} number of threads.
+     * @param tasks the files to hash
+     * @throws ResourceError if any of the files could not be read
+     */
+    private void hashFiles(List<ChecksumVerifier.Task> tasks) throws ResourceError {
+        try {
+            new ChecksumVerifier(checksumProviderFactory, checksumThreads).hash(tasks);
+        } catch (IOException e) {
+            log.warn("failed to calculate checksums", e);
+            throw new ResourceError(null, null, e.getMessage());
+        }
+    }
+
     /**
      * Creating the process will register itself in an appropriate
      * container (i.e. a SessionI or similar) for the current
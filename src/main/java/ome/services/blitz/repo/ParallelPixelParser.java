@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.blitz.repo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.meta.IMinMaxStore;
+import ome.formats.importer.ImportSize;
+import ome.formats.importer.OMEROWrapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes the tiles of a series concurrently, each worker thread using its
+ * own {@link OMEROWrapper} opened on the same file and its own buffers. The
+ * decoded tiles are consumed strictly in the order used by
+ * {@link ManagedImportRequestI#parseData(String, int, ImportSize)} so the
+ * resulting SHA-1 is identical to that of a single-threaded import. Since
+ * the worker readers do not see every plane, channel minima and maxima are
+ * calculated from the tiles here and passed to the {@link IMinMaxStore}
+ * rather than by the readers' {@link loci.formats.MinMaxCalculator}.
+ * Progress is reported to a {@link PlaneListener} as each plane is
+ * consumed, also in that order.
+ *
+ * @since 5.5.0
+ */
+class ParallelPixelParser {
+
+    private final static Logger log = LoggerFactory.getLogger(ParallelPixelParser.class);
+
+    private final OMEROWrapper reader;
+
+    private final CheckedPath file;
+
+    private final int threads;
+
+    private final ExecutorService pool;
+
+    /* every worker reader opened, so that all may be closed */
+    private final List<OMEROWrapper> workers =
+            Collections.synchronizedList(new ArrayList<OMEROWrapper>());
+
+    private final ThreadLocal<OMEROWrapper> workerReader = new ThreadLocal<OMEROWrapper>();
+
+    /**
+     * Notified as the tiles of each plane have been consumed.
+     */
+    interface PlaneListener {
+
+        /**
+         * @param planeNo the number of the plane, counting from 1 in the
+         * order in which the planes are parsed
+         */
+        void planeParsed(int planeNo);
+    }
+
+    /**
+     * @param reader the reader already opened on {@code file} by the import
+     * @param file the file to open in each worker
+     * @param threads how many tiles to decode concurrently
+     */
+    ParallelPixelParser(OMEROWrapper reader, CheckedPath file, int threads) {
+        this.reader = reader;
+        this.file = file;
+        this.threads = threads;
+        this.pool = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Read all the tiles of the given series, returning the SHA-1 of the
+     * pixel data and setting the channels' global minima and maxima in the
+     * given store. The listener is notified of each plane once its last
+     * tile has been consumed.
+     */
+    MessageDigest parse(MessageDigest md, int series, ImportSize size,
+            IMinMaxStore minMaxStore, PlaneListener listener)
+            throws FormatException, IOException {
+        reader.setSeries(series);
+        final int pixelType = reader.getPixelType();
+        final int bytesPerPixel = FormatTools.getBytesPerPixel(pixelType);
+        final boolean littleEndian = reader.isLittleEndian();
+        final int tileWidth = reader.getOptimalTileWidth();
+        final int tileHeight = reader.getOptimalTileHeight();
+        final int maxTileBytes = tileWidth * tileHeight * bytesPerPixel;
+
+        final double[] channelMin = new double[size.sizeC];
+        final double[] channelMax = new double[size.sizeC];
+        Arrays.fill(channelMin, Double.POSITIVE_INFINITY);
+        Arrays.fill(channelMax, Double.NEGATIVE_INFINITY);
+
+        /* bound how many decoded tiles may be awaiting the digest */
+        final int window = threads * 2;
+        final Deque<Future<Tile>> pending = new ArrayDeque<Future<Tile>>(window);
+        final Deque<byte[]> buffers = new ArrayDeque<byte[]>(window);
+
+        try {
+            int planeNo = 1;
+            for (int t = 0; t < size.sizeT; t++) {
+                for (int c = 0; c < size.sizeC; c++) {
+                    for (int z = 0; z < size.sizeZ; z++) {
+                        final int planeNumber = reader.getIndex(z, c, t);
+                        for (int y = 0; y < size.sizeY; y += tileHeight) {
+                            for (int x = 0; x < size.sizeX; x += tileWidth) {
+                                if (pending.size() >= window) {
+                                    consume(pending.removeFirst(), md, buffers, channelMin, channelMax, listener);
+                                }
+                                final byte[] buf = buffers.isEmpty() ? new byte[maxTileBytes] : buffers.removeFirst();
+                                final boolean lastOfPlane = y + tileHeight >= size.sizeY
+                                        && x + tileWidth >= size.sizeX;
+                                final Tile tile = new Tile(series, planeNumber, c, x, y,
+                                        Math.min(tileWidth, size.sizeX - x),
+                                        Math.min(tileHeight, size.sizeY - y),
+                                        bytesPerPixel, buf, lastOfPlane ? planeNo : 0);
+                                pending.addLast(pool.submit(new Callable<Tile>() {
+                                    @Override
+                                    public Tile call() throws Exception {
+                                        tile.read(getWorkerReader(), pixelType, littleEndian);
+                                        return tile;
+                                    }
+                                }));
+                            }
+                        }
+                        planeNo++;
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                consume(pending.removeFirst(), md, buffers, channelMin, channelMax, listener);
+            }
+        } finally {
+            for (final Future<Tile> future : pending) {
+                future.cancel(true);
+            }
+        }
+
+        for (int c = 0; c < size.sizeC; c++) {
+            if (channelMin[c] <= channelMax[c]) {
+                minMaxStore.setChannelGlobalMinMax(c, channelMin[c], channelMax[c], series);
+            }
+        }
+        return md;
+    }
+
+    /**
+     * Wait for the next tile in order, add it to the digest and statistics,
+     * then recycle its buffer and report the plane if the tile completes it.
+     */
+    private void consume(Future<Tile> future, MessageDigest md, Deque<byte[]> buffers,
+            double[] channelMin, double[] channelMax, PlaneListener listener)
+            throws FormatException, IOException {
+        final Tile tile;
+        try {
+            tile = future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while reading pixel data", ie);
+        } catch (ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            if (cause instanceof FormatException) {
+                throw (FormatException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+        md.update(tile.buf, 0, tile.length);
+        channelMin[tile.channel] = Math.min(channelMin[tile.channel], tile.min);
+        channelMax[tile.channel] = Math.max(channelMax[tile.channel], tile.max);
+        buffers.addLast(tile.buf);
+        if (tile.completesPlane > 0 && listener != null) {
+            listener.planeParsed(tile.completesPlane);
+        }
+    }
+
+    /**
+     * @return the reader for the current worker thread, opening it if necessary
+     */
+    private OMEROWrapper getWorkerReader() throws FormatException, IOException {
+        OMEROWrapper worker = workerReader.get();
+        if (worker == null) {
+            worker = reader.duplicate();
+            workers.add(worker);
+            file.bfSetId(worker);
+            workerReader.set(worker);
+        }
+        return worker;
+    }
+
+    /**
+     * Stop the worker threads and close their readers.
+     */
+    void close() {
+        pool.shutdownNow();
+        synchronized (workers) {
+            for (final OMEROWrapper worker : workers) {
+                try {
+                    worker.close();
+                } catch (Exception e) {
+                    log.warn("Failed to close worker reader", e);
+                }
+            }
+            workers.clear();
+        }
+    }
+
+    /**
+     * A region of a plane, along with its pixel data and statistics once read.
+     */
+    private static class Tile {
+
+        final int series, planeNumber, channel, x, y, w, h;
+
+        final int length;
+
+        final byte[] buf;
+
+        /* the number of the plane if this is its last tile, otherwise 0 */
+        final int completesPlane;
+
+        double min, max;
+
+        Tile(int series, int planeNumber, int channel, int x, int y, int w, int h,
+                int bytesPerPixel, byte[] buf, int completesPlane) {
+            this.series = series;
+            this.planeNumber = planeNumber;
+            this.channel = channel;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+            this.length = w * h * bytesPerPixel;
+            this.buf = buf;
+            this.completesPlane = completesPlane;
+        }
+
+        void read(OMEROWrapper worker, int pixelType, boolean littleEndian)
+                throws FormatException, IOException {
+            if (worker.getSeries() != series) {
+                worker.setSeries(series);
+            }
+            worker.openBytes(planeNumber, buf, x, y, w, h);
+            minMax(ByteBuffer.wrap(buf, 0, length).order(
+                    littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN), pixelType);
+        }
+
+        private void minMax(ByteBuffer bytes, int pixelType) {
+            double lo = Double.POSITIVE_INFINITY;
+            double hi = Double.NEGATIVE_INFINITY;
+            switch (pixelType) {
+                case FormatTools.INT8:
+                    for (int i = 0; i < length; i++) {
+                        final byte v = buf[i];
+                        if (v < lo) lo = v;
+                        if (v > hi) hi = v;
+                    }
+                    break;
+                case FormatTools.UINT8:
+                case FormatTools.BIT:
+                    for (int i = 0; i < length; i++) {
+                        final int v = buf[i] & 0xff;
+                        if (v < lo) lo = v;
+                        if (v > hi) hi = v;
+                    }
+                    break;
+                case FormatTools.INT16: {
+                    final ShortBuffer values = bytes.asShortBuffer();
+                    for (int i = 0; i < values.limit(); i++) {
+                        final short v = values.get(i);
+                        if (v < lo) lo = v;
+                        if (v > hi) hi = v;
+                    }
+                    break;
+                }
+                case FormatTools.UINT16: {
+                    final ShortBuffer values = bytes.asShortBuffer();
+                    for (int i = 0; i < values.limit(); i++) {
+                        final int v = values.get(i) & 0xffff;
+                        if (v < lo) lo = v;
+                        if (v > hi) hi = v;
+                    }
+                    break;
+                }
+                case FormatTools.INT32: {
+                    final IntBuffer values = bytes.asIntBuffer();
+                    for (int i = 0; i < values.limit(); i++) {
+                        final int v = values.get(i);
+                        if (v < lo) lo = v;
+                        if (v > hi) hi = v;
+                    }
+                    break;
+                }
+                case FormatTools.UINT32: {
+                    final IntBuffer values = bytes.asIntBuffer();
+                    for (int i = 0; i < values.limit(); i++) {
+                        final long v = values.get(i) & 0xffffffffL;
+                        if (v < lo) lo = v;
+                        if (v > hi) hi = v;
+                    }
+                    break;
+                }
+                case FormatTools.FLOAT: {
+                    final FloatBuffer values = bytes.asFloatBuffer();
+                    for (int i = 0; i < values.limit(); i++) {
+                        final float v = values.get(i);
+                        if (v < lo) lo = v;
+                        if (v > hi) hi = v;
+                    }
+                    break;
+                }
+                case FormatTools.DOUBLE: {
+                    final DoubleBuffer values = bytes.asDoubleBuffer();
+                    for (int i = 0; i < values.limit(); i++) {
+                        final double v = values.get(i);
+                        if (v < lo) lo = v;
+                        if (v > hi) hi = v;
+                    }
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown pixel type: " + pixelType);
+            }
+            this.min = lo;
+            this.max = hi;
+        }
+    }
+}
@@ -316,6 +316,15 @@ public interface RepositoryDao {
      */
     ome.model.core.OriginalFile getOriginalFileWithHasher(long id, Current current);
 
+    /**
+     * Retrieve the original files of the given IDs, loading them in batches
+     * rather than with a query per file.
+     * @param ids the IDs of original files, must exist
+     * @param current Ice method invocation context
+     * @return the corresponding original file model objects, with their hashers
+     */
+    List<ome.model.core.OriginalFile> getOriginalFilesWithHasher(List<Long> ids, Current current);
+
     /**
      * Save the given model object.
      * @param object a model object
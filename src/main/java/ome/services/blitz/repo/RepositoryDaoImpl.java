@@ -1170,6 +1170,36 @@ public class RepositoryDaoImpl implements RepositoryDao {
         });
     }
 
+    @Override
+    public List<ome.model.core.OriginalFile> getOriginalFilesWithHasher(List<Long> ids, Ice.Current current) {
+        final List<ome.model.core.OriginalFile> files = new ArrayList<ome.model.core.OriginalFile>(ids.size());
+        for (final List<Long> idsBatch : Iterables.partition(ids, BATCH_SIZE)) {
+            files.addAll(executor.execute(current.ctx, currentUser(current),
+                    new Executor.LoggedWork<List<ome.model.core.OriginalFile>>() {
+
+                @Override
+                public String description() {
+                    return "get " + idsBatch.size() + " original files, with hashers joined";
+                }
+
+                @Override
+                @Transactional(readOnly = true)
+                public List<ome.model.core.OriginalFile> doWork(Session session, ServiceFactory sf) {
+                    final String query = "FROM OriginalFile o LEFT OUTER JOIN FETCH o.hasher WHERE o.id IN (:ids)";
+                    final Parameters params = new Parameters().addIds(idsBatch);
+                    final List<Object[]> results = sf.getQueryService().projection(query, params);
+                    final List<ome.model.core.OriginalFile> batch =
+                            new ArrayList<ome.model.core.OriginalFile>(results.size());
+                    for (final Object[] result : results) {
+                        batch.add((ome.model.core.OriginalFile) result[0]);
+                    }
+                    return batch;
+                }
+            }));
+        }
+        return files;
+    }
+
     @Override
     public void saveObject(final IObject object, Ice.Current current) {
         executor.execute(current.ctx, currentUser(current),
@@ -5,8 +5,12 @@
 
 package ome.services.blitz.util;
 
+import java.lang.management.ManagementFactory;
 import java.net.URL;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import ome.security.SecuritySystem;
 import ome.services.blitz.fire.PermissionsVerifierI;
 import ome.services.blitz.fire.Registry;
@@ -36,6 +40,12 @@ public class BlitzConfiguration {
 
     private final static String CONFIG_KEY = "--Ice.Config=";
 
+    /**
+     * JMX name of the {@link ome.services.blitz.fire.ServantHoldersMXBean}
+     * gauges.
+     */
+    public final static String SERVANT_HOLDERS = "omero:type=ServantHolders";
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private final Ring blitzRing;
@@ -125,6 +135,7 @@ public class BlitzConfiguration {
             // When using adapter methods from within the ring, it is necessary
             // to start the adapter first.
             blitzRing.setRegistry(registry);
+            blitzRing.setServantHolders(blitzManager);
             blitzRing.init(blitzAdapter, communicator
                     .proxyToString(getDirectProxy()));
         } catch (RuntimeException e) {
@@ -261,6 +272,7 @@ public class BlitzConfiguration {
                 servantsPerSession);
         Ice.Identity id = managerId();
         Ice.ObjectPrx prx = this.blitzAdapter.add(manager, id);
+        registerGauges(manager);
         return manager;
     }
 
@@ -277,8 +289,34 @@ public class BlitzConfiguration {
         return verifier;
     }
 
+    /**
+     * Exports the servant gauges of the manager via JMX as
+     * {@link #SERVANT_HOLDERS}. Failure is logged but not fatal.
+     */
+    protected void registerGauges(SessionManagerI manager) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(manager,
+                    new ObjectName(SERVANT_HOLDERS));
+        } catch (JMException e) {
+            logger.warn("Failed to register " + SERVANT_HOLDERS, e);
+        }
+    }
+
+    protected void unregisterGauges() {
+        try {
+            ObjectName name = new ObjectName(SERVANT_HOLDERS);
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to unregister " + SERVANT_HOLDERS, e);
+        }
+    }
+
     public void destroy() {
 
+        unregisterGauges();
+
         if (blitzRing != null) {
             blitzRing.destroy();
         }
@@ -5,12 +5,17 @@
 
 package ome.services.blitz.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ome.api.ServiceInterface;
 import ome.system.OmeroContext;
+import omero.RType;
 import omero.ServerError;
 import omero.util.IceMapper;
 
@@ -39,6 +44,12 @@ import org.springframework.util.Assert;
  * It is also possible to have this class not handle mapping arguments and
  * return values by passing a return value mapper.
  * 
+ * Each method is compiled once into a {@link MethodHandle} which takes the
+ * target and an array of arguments, avoiding the cost of
+ * {@link Method#invoke(Object, Object...)} on every call. Methods whose
+ * parameters or return type are all {@link IceMapper#isPrimitiveType(Class)
+ * primitive} skip the {@link IceMapper} for those values.
+ * 
  * Future:
  * <ul>
  * <li>Currently ignoring
@@ -56,14 +67,32 @@ public class IceMethodInvoker {
     static class Info {
         Method method;
 
+        /**
+         * Calls {@link #method} with the signature (Object, Object[])Object,
+         * or null if the method could not be unreflected.
+         */
+        MethodHandle handle;
+
         Class<?>[] params;
 
         Class<?> retType;
 
         int[] switches;
+
+        /**
+         * If no argument needs to be mapped, provided that none of the
+         * arguments passed is an {@link RType}.
+         */
+        boolean primitiveArgs;
+
+        /** If the return value does not need to be mapped. */
+        boolean primitiveReturn;
     }
 
-    private final static Map<Class<?>, Map<String, Info>> staticmap = new HashMap<Class<?>, Map<String, Info>>();
+    private final static MethodType GENERIC = MethodType.methodType(
+            Object.class, Object.class, Object[].class);
+
+    private final static Map<Class<?>, Map<String, Info>> staticmap = new ConcurrentHashMap<Class<?>, Map<String, Info>>();
 
     private final Class<?> serviceClass;
 
@@ -111,6 +140,13 @@ public class IceMethodInvoker {
                         i.method = m;
                         i.params = m.getParameterTypes();
                         i.retType = m.getReturnType();
+                        i.handle = compile(m);
+                        i.primitiveArgs = true;
+                        for (Class<?> p : i.params) {
+                            i.primitiveArgs &= IceMapper.isPrimitiveType(p);
+                        }
+                        i.primitiveReturn = i.retType.equals(void.class)
+                                || IceMapper.isPrimitiveType(i.retType);
                         map.put(m.getName(), i);
                     }
                     staticmap.put(this.serviceClass, map);
@@ -119,6 +155,23 @@ public class IceMethodInvoker {
         }
     }
 
+    /**
+     * Compiles the method into a handle of type {@link #GENERIC} which spreads
+     * the argument array over the parameters and boxes the return value.
+     * Returns null if access to the method is denied, in which case
+     * reflection is used instead.
+     */
+    private static MethodHandle compile(Method m) {
+        try {
+            return MethodHandles.publicLookup().unreflect(m)
+                    .asSpreader(Object[].class, m.getParameterTypes().length)
+                    .asType(GENERIC);
+        } catch (IllegalAccessException iae) {
+            log.debug("Using reflection for " + m, iae);
+            return null;
+        }
+    }
+
     Map<String, Info> map() {
         return staticmap.get(serviceClass);
     }
@@ -169,7 +222,11 @@ public class IceMethodInvoker {
 
         Object retVal = null;
         try {
-            retVal = info.method.invoke(obj, objs);
+            if (info.handle != null) {
+                retVal = (Object) info.handle.invokeExact(obj, objs);
+            } else {
+                retVal = info.method.invoke(obj, objs);
+            }
         } catch (Throwable t) {
             throw mapper.handleException(t, ctx);
         }
@@ -185,6 +242,8 @@ public class IceMethodInvoker {
         // to convert the return value, otherwise this class must do it.
         if (mapper.canMapReturnValue()) {
             return mapper.mapReturnValue(retVal);
+        } else if (info.primitiveReturn) {
+            return retVal;
         } else {
             return mapper.handleOutput(retType, retVal);
         }
@@ -211,6 +270,10 @@ public class IceMethodInvoker {
                     + args.length);
         }
 
+        if (info.primitiveArgs && !containsRType(args)) {
+            return args; // Nothing to map
+        }
+
         // The Mapped argument parameters to be passed to the
         // ServiceInterface instance.
         Object[] objs = new Object[params.length];
@@ -232,6 +295,19 @@ public class IceMethodInvoker {
 
     }
 
+    /**
+     * Servants may pass {@link RType}s, e.g. an RString for a String
+     * parameter, which {@link IceMapper#handleInput(Class, Object)} unwraps.
+     */
+    private static boolean containsRType(Object[] args) {
+        for (Object arg : args) {
+            if (arg instanceof RType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /** For testing the cached method. */
     public Method getMethod(String name) {
         return map().get(name).method;
@@ -9,18 +9,26 @@ import static omero.rtypes.rdouble;
 import static omero.rtypes.rint;
 import static omero.rtypes.rlong;
 
+import java.awt.Dimension;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import ome.conditions.ApiUsageException;
+import ome.conditions.InternalException;
 import ome.io.nio.PixelBuffer;
 import ome.model.IObject;
 import ome.model.core.Pixels;
@@ -50,6 +58,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.hibernate.Query;
 import org.hibernate.Session;
@@ -75,6 +84,15 @@ public class GeomTool {
 
     protected final String uuid;
 
+    protected int statsThreads = 1;
+
+    /**
+     * Shared by all calls to {@link #getStatsRestricted(List, int, int, int[])}
+     * so that no more than {@link #statsThreads} channels are processed at
+     * once across the server; <code>null</code> when single-threaded.
+     */
+    protected ExecutorService statsPool;
+
     public GeomTool(PixelData data, SqlAction sql,
             SessionFactory factory) {
         this(data, sql, factory, null, null);
@@ -89,6 +107,37 @@ public class GeomTool {
         this.uuid = uuid;
     }
 
+    /**
+     * Sets how many channels {@link #getStatsRestricted(List, int, int, int[])}
+     * may read and evaluate concurrently, each with its own
+     * {@link PixelBuffer}. Defaults to 1.
+     *
+     * @param statsThreads the maximum number of channels to process at once
+     */
+    public synchronized void setStatsThreads(int statsThreads) {
+        if (statsThreads < 1) {
+            throw new IllegalArgumentException("statsThreads must be positive: " + statsThreads);
+        }
+        this.statsThreads = statsThreads;
+        if (statsPool != null) {
+            statsPool.shutdown();
+        }
+        statsPool = statsThreads > 1 ? Executors.newFixedThreadPool(statsThreads,
+                new ThreadFactoryBuilder().setNameFormat("roi-stats-%d")
+                        .setDaemon(true).build()) : null;
+    }
+
+    /**
+     * Stops the threads which calculate statistics. Called by Spring on
+     * shutdown.
+     */
+    public synchronized void destroy() {
+        if (statsPool != null) {
+            statsPool.shutdownNow();
+            statsPool = null;
+        }
+    }
+
     /**
      * Loads just the shape and no other relationships. This
      * 
@@ -410,9 +459,9 @@ public class GeomTool {
            zt_lookup.put(theZ + "/" + theT, shape);
        }
 
-       // any point iteration in a tiled image is a lost cause
-       if (data.requiresPixelsPyramid(pixels)) 
-           throw new ApiUsageException("This method cannot handle tiled images yet.");
+       // whole planes of a tiled image may not fit in memory so only the
+       // tiles which contain points of the shapes are read
+       final boolean tiled = data.requiresPixelsPyramid(pixels);
 
        // check if given channels are valid
        Set<Integer> validChannels = new HashSet<Integer>();
@@ -423,69 +472,182 @@ public class GeomTool {
                validChannels.add(ch);
            }
        }
+       final int[] channelList = new int[validChannels.size()];
+       int index = 0;
+       for (int c : validChannels) {
+           channelList[index++] = c;
+       }
 
        // common info for all shapes
        final long pixelId = pixels.getId();
        final int sizeX = pixels.getSizeX();
        final int sizeY = pixels.getSizeY();
 
-       // loop over shapes (grouped by z/t planes)
-       for (final String key : zt_lookup.keySet()) {
-           final String[] keyTokens = key.split("/");
-           final int z = Integer.parseInt(keyTokens[0]);
-           final int t = Integer.parseInt(keyTokens[1]);
-
-           for (ome.model.roi.Shape shape : zt_lookup.get(key)) {
-               final SmartShape smartShape = (SmartShape) new ShapeMapper().map(shape);
-               final int size_stats = validChannels.size();
-               final ShapeStats stats = makeStats(size_stats);
-               stats.shapeId = shape.getId();
-               final double[] sumOfSquares = new double[size_stats];
-
-               try (final PixelBuffer buf = data.getBuffer(pixelId)) {
-            	   int i = 0;
-                   for (int c : validChannels) {
-                       final int w = i;
-                       stats.channelIds[w] = c;
-                       final ome.util.PixelData pd = data.getPlane(buf, z, c, t);
-                       smartShape.areaPoints(
-                           new SmartShape.PointCallback() {
-                               public void handle(int x, int y) {
-                                   // we won't use pixels outside of the image 
-                                   if (x < 0 || y < 0 || x >= sizeX || y >= sizeY) return;
-                                   stats.pointsCount[w]++;
-                                   double value = pd.getPixelValue(sizeX * y + x);
-                                   stats.min[w] = Math.min(value, stats.min[w]);
-                                   stats.max[w] = Math.max(value, stats.max[w]);
-                                   stats.sum[w] += value;
-                                   sumOfSquares[w] += value * value;
+       // each worker reads from its own buffer, opened here since the
+       // pixels description is loaded within the caller's session
+       final ExecutorService pool;
+       final int workers;
+       synchronized (this) {
+           pool = statsPool;
+           workers = pool == null ? 1 : Math.min(statsThreads, channelList.length);
+       }
+       final PixelBuffer[] buffers = new PixelBuffer[workers];
+       try {
+           for (int b = 0; b < workers; b++) {
+               buffers[b] = data.getBuffer(pixelId);
+               if (tiled) {
+                   buffers[b].setResolutionLevel(buffers[b].getResolutionLevels() - 1);
+               }
+           }
+           final int tileWidth, tileHeight;
+           if (tiled) {
+               final Dimension tileSize = buffers[0].getTileSize();
+               tileWidth = tileSize.width;
+               tileHeight = tileSize.height;
+           } else {
+               tileWidth = sizeX;
+               tileHeight = sizeY;
+           }
+           final int tilesX = (sizeX + tileWidth - 1) / tileWidth;
+
+           // loop over shapes (grouped by z/t planes)
+           for (final String key : zt_lookup.keySet()) {
+               final String[] keyTokens = key.split("/");
+               final int z = Integer.parseInt(keyTokens[0]);
+               final int t = Integer.parseInt(keyTokens[1]);
+
+               // the points of each shape are the same for every channel,
+               // bucketed by the region of the plane which contains them
+               final List<ShapeAccumulator> accumulators =
+                       new ArrayList<ShapeAccumulator>();
+               final Map<Long, Region> regions = new TreeMap<Long, Region>();
+               for (ome.model.roi.Shape shape : zt_lookup.get(key)) {
+                   final SmartShape smartShape =
+                           (SmartShape) new ShapeMapper().map(shape);
+                   final ShapeAccumulator acc =
+                           new ShapeAccumulator(makeStats(channelList.length));
+                   acc.stats.shapeId = shape.getId();
+                   for (int w = 0; w < channelList.length; w++) {
+                       acc.stats.channelIds[w] = channelList[w];
+                   }
+                   smartShape.areaRuns(new SmartShape.RunCallback() {
+                       public void handle(int y, int xStart, int xEnd) {
+                           // we won't use pixels outside of the image
+                           if (y < 0 || y >= sizeY) return;
+                           xStart = Math.max(0, xStart);
+                           xEnd = Math.min(sizeX - 1, xEnd);
+                           if (xStart > xEnd) return;
+                           final int ty = y / tileHeight;
+                           // split the run at tile boundaries
+                           for (int tx = xStart / tileWidth; tx <= xEnd / tileWidth; tx++) {
+                               final Long tile = (long) ty * tilesX + tx;
+                               Region region = regions.get(tile);
+                               if (region == null) {
+                                   final int rx = tx * tileWidth;
+                                   final int ry = ty * tileHeight;
+                                   region = new Region(!tiled, rx, ry,
+                                           Math.min(tileWidth, sizeX - rx),
+                                           Math.min(tileHeight, sizeY - ry));
+                                   regions.put(tile, region);
+                               }
+                               region.add(acc, y, Math.max(xStart, region.x),
+                                       Math.min(xEnd, region.x + region.width - 1));
+                           }
+                       }
+                   });
+                   accumulators.add(acc);
+               }
+
+               // each plane or tile is read once and shared by all shapes on it
+               if (workers == 1) {
+                   for (int w = 0; w < channelList.length; w++) {
+                       accumulatePlane(buffers[0], z, channelList[w], t, w, regions.values());
+                   }
+               } else {
+                   final List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+                   for (int b = 0; b < workers; b++) {
+                       final PixelBuffer buf = buffers[b];
+                       final int first = b;
+                       futures.add(pool.submit(new Runnable() {
+                           public void run() {
+                               for (int w = first; w < channelList.length; w += workers) {
+                                   accumulatePlane(buf, z, channelList[w], t, w, regions.values());
                                }
-                           });
-                       pd.dispose();
-                       i++;
+                           }
+                       }));
                    }
-               } catch (IOException io) {
-                   log.error("Error closing buffer", io);
+                   awaitAll(futures);
                }
 
-               for (int w = 0; w < size_stats; w++) {
-                   if (stats.pointsCount[w] > 0) {
-                       stats.mean[w] = stats.sum[w] / stats.pointsCount[w];
-                       if (stats.pointsCount[w] > 1) {
-                           double sigmaSquare =
-                               (sumOfSquares[w] - stats.sum[w] * stats.mean[w]) /
-                               (stats.pointsCount[w] - 1);
-                           if (sigmaSquare > 0) stats.stdDev[w] = Math.sqrt(sigmaSquare);
-                       }
+               for (final ShapeAccumulator acc : accumulators) {
+                   shapeStats.add(acc.finish());
+               }
+           }
+       } finally {
+           for (final PixelBuffer buf : buffers) {
+               if (buf != null) {
+                   try {
+                       buf.close();
+                   } catch (IOException io) {
+                       log.error("Error closing buffer", io);
                    }
                }
-               shapeStats.add(stats);
            }
        }
-       
+
        return shapeStats.toArray(new ShapeStats[] {});
     }
 
+    /**
+     * Reads each region of a single plane in turn and adds its values at
+     * each shape's points to the statistics for the given channel index.
+     * Only one region's pixel data is held at any one time.
+     */
+    private void accumulatePlane(PixelBuffer buf, int z, int c, int t, int w,
+            Collection<Region> regions) {
+        for (final Region region : regions) {
+            final ome.util.PixelData pd = region.wholePlane ?
+                    data.getPlane(buf, z, c, t) :
+                    data.getTile(buf, z, c, t, region.x, region.y, region.width, region.height);
+            try {
+                for (int i = 0; i < region.shapes.size(); i++) {
+                    region.shapes.get(i).accumulate(pd, w, region.runs.get(i));
+                }
+            } finally {
+                pd.dispose();
+            }
+        }
+    }
+
+    /**
+     * Waits for all of the per-channel statistics tasks, since they read
+     * from buffers which are closed afterward, then rethrows the first
+     * failure. If interrupted, the tasks are cancelled.
+     */
+    private static void awaitAll(List<Future<?>> futures) {
+        Throwable failure = null;
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException ie) {
+                for (final Future<?> other : futures) {
+                    other.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new InternalException("Interrupted calculating statistics");
+            } catch (ExecutionException ee) {
+                if (failure == null) {
+                    failure = ee.getCause();
+                }
+            }
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new InternalException("Failed to calculate statistics: " + failure);
+        }
+    }
+
     /**
      * Maps from multiple possible user-provided names of shapes (e.g.
      * "::omero::model::Text", "Text", "TextI", "omero.model.TextI",
@@ -562,6 +724,127 @@ public class GeomTool {
         return ss;
     }
 
+    /**
+     * Growable array of the runs of points within a region, each held as
+     * its starting offset and length. A run which continues the previous
+     * one, as happens when a shape spans whole rows, extends it.
+     */
+    private static class Runs {
+
+        /** Pairs of start offset and length. */
+        int[] values = new int[16];
+
+        /** The number of ints used in {@link #values}. */
+        int size = 0;
+
+        /** The total length of the runs. */
+        long count = 0;
+
+        void add(int start, int length) {
+            count += length;
+            if (size > 0 && values[size - 2] + values[size - 1] == start) {
+                values[size - 1] += length;
+                return;
+            }
+            if (size + 2 > values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = start;
+            values[size++] = length;
+        }
+    }
+
+    /**
+     * A rectangle of a plane which is read in one go, either the whole
+     * plane or a single tile of a pyramid, along with the offsets within
+     * it of the runs of points of each shape which it contains.
+     */
+    private static class Region {
+
+        final boolean wholePlane;
+
+        final int x, y, width, height;
+
+        final List<ShapeAccumulator> shapes = new ArrayList<ShapeAccumulator>();
+
+        final List<Runs> runs = new ArrayList<Runs>();
+
+        Region(boolean wholePlane, int x, int y, int width, int height) {
+            this.wholePlane = wholePlane;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        void add(ShapeAccumulator shape, int py, int xStart, int xEnd) {
+            // points are visited shape by shape so only the last may match
+            final int last = shapes.size() - 1;
+            final Runs points;
+            if (last >= 0 && shapes.get(last) == shape) {
+                points = runs.get(last);
+            } else {
+                points = new Runs();
+                shapes.add(shape);
+                runs.add(points);
+            }
+            points.add((py - y) * width + (xStart - x), xEnd - xStart + 1);
+        }
+    }
+
+    /**
+     * The statistics accumulated for a single shape. Each channel index is
+     * only updated by one thread.
+     */
+    private static class ShapeAccumulator {
+
+        final ShapeStats stats;
+
+        final double[] sumOfSquares;
+
+        ShapeAccumulator(ShapeStats stats) {
+            this.stats = stats;
+            this.sumOfSquares = new double[stats.channelIds.length];
+        }
+
+        void accumulate(ome.util.PixelData pd, int w, Runs points) {
+            double min = stats.min[w];
+            double max = stats.max[w];
+            double sum = 0, squares = 0;
+            final int[] runs = points.values;
+            for (int r = 0; r < points.size; r += 2) {
+                final int end = runs[r] + runs[r + 1];
+                for (int i = runs[r]; i < end; i++) {
+                    final double value = pd.getPixelValue(i);
+                    if (value < min) min = value;
+                    if (value > max) max = value;
+                    sum += value;
+                    squares += value * value;
+                }
+            }
+            stats.min[w] = min;
+            stats.max[w] = max;
+            stats.sum[w] += sum;
+            sumOfSquares[w] += squares;
+            stats.pointsCount[w] += points.count;
+        }
+
+        ShapeStats finish() {
+            for (int w = 0; w < stats.pointsCount.length; w++) {
+                if (stats.pointsCount[w] > 0) {
+                    stats.mean[w] = stats.sum[w] / stats.pointsCount[w];
+                    if (stats.pointsCount[w] > 1) {
+                        double sigmaSquare =
+                            (sumOfSquares[w] - stats.sum[w] * stats.mean[w]) /
+                            (stats.pointsCount[w] - 1);
+                        if (sigmaSquare > 0) stats.stdDev[w] = Math.sqrt(sigmaSquare);
+                    }
+                }
+            }
+            return stats;
+        }
+    }
+
     private static class ShapeMapper extends IceMapper {
 
         boolean called = false;
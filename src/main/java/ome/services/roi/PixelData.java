@@ -83,6 +83,34 @@ public class PixelData {
         }
     }
 
+    /**
+     * Returns the {@link ome.util.PixelData} for a tile given its z, c and t
+     * and its position and size within the plane, as well as a
+     * {@link PixelBuffer}
+     *
+     * @param buf the {@link PixelBuffer}
+     * @param z the Z
+     * @param c the C
+     * @param t the T
+     * @param x the X coordinate of the tile's top left corner
+     * @param y the Y coordinate of the tile's top left corner
+     * @param w the width of the tile
+     * @param h the height of the tile
+     * @return the ome.util.PixelData for the tile
+     */
+    public ome.util.PixelData getTile(PixelBuffer buf, int z, int c, int t,
+            int x, int y, int w, int h) {
+        try {
+            return buf.getTile(z, c, t, x, y, w, h);
+        } catch (IOException e) {
+            throw new ResourceError("IOException: " + e);
+        } catch (DimensionsOutOfBoundsException e) {
+            throw new ApiUsageException("DimensionsOutOfBounds: " + e);
+        } catch (IndexOutOfBoundsException iobe) {
+            throw new ValidationException("IndexOutOfBounds: " + iobe);
+        }
+    }
+
     /**
      * Returns whether a pyramid should be used for the given {@link Pixels}.
      * This usually implies that this is a "Big image" and therefore will
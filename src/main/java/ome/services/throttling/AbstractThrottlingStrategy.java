@@ -30,11 +30,45 @@ public abstract class AbstractThrottlingStrategy implements ApplicationContextAw
 
     protected /*final*/ OmeroContext ctx;
 
+    protected CallMetrics metrics;
+
     public void setApplicationContext(ApplicationContext applicationContext)
             throws BeansException {
         this.ctx = (OmeroContext) applicationContext;
     }
 
+    /**
+     * Sets where the timings of the tasks run by this strategy are recorded.
+     * If not set, nothing is recorded.
+     */
+    public void setCallMetrics(CallMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs the task, recording its timings if {@link CallMetrics} are set.
+     * Subclasses should run all tasks via this method.
+     */
+    protected void execute(Task task) {
+        if (metrics == null) {
+            task.run(ctx);
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            task.run(ctx);
+        } finally {
+            metrics.record(task, started, System.nanoTime());
+        }
+    }
+
+    /**
+     * Returns zero, for strategies which run each call as it arrives.
+     */
+    public int getQueueDepth() {
+        return 0;
+    }
+
     public void onApplicationEvent(ApplicationEvent event) {
         if (event instanceof ObjectsReadStatsMessage) {
             ObjectsReadStatsMessage read = (ObjectsReadStatsMessage) event;
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.throttling;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Latency histograms of the calls run by a {@link ThrottlingStrategy}, kept
+ * per servant and operation: the time each call waited before it started,
+ * the time it took to run and, for array responses, the size of the response.
+ * Servants are named after their Slice interface, e.g.
+ * <code>RawPixelsStore</code>, or for tasks without an AMD callback after
+ * the class which created the task.
+ *
+ * The metrics are registered with the platform MBean server as
+ * {@link #OBJECT_NAME} by {@link #register()}, and may be read by
+ * administrators via {@link omero.cmd.CallMetricsRequest}.
+ *
+ * @since 5.5.0
+ */
+public class CallMetrics implements CallMetricsMXBean {
+
+    private final static Logger log = LoggerFactory.getLogger(CallMetrics.class);
+
+    public final static String OBJECT_NAME = "omero:type=CallMetrics";
+
+    /** The histograms of one operation. */
+    public static class Operation {
+
+        private final String servant;
+
+        private final String operation;
+
+        private final Histogram queueWait = new Histogram();
+
+        private final Histogram runTime = new Histogram();
+
+        private final Histogram payloadBytes = new Histogram();
+
+        Operation(String servant, String operation) {
+            this.servant = servant;
+            this.operation = operation;
+        }
+
+        public String getServant() {
+            return servant;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        /** Nanoseconds from the creation of each task until it started. */
+        public Histogram getQueueWait() {
+            return queueWait;
+        }
+
+        /** Nanoseconds each task took to run. */
+        public Histogram getRunTime() {
+            return runTime;
+        }
+
+        /** Bytes in each response, where known. */
+        public Histogram getPayloadBytes() {
+            return payloadBytes;
+        }
+    }
+
+    private final ConcurrentMap<String, Operation> operations = new ConcurrentHashMap<String, Operation>();
+
+    private ObjectName registered;
+
+    private static String key(String servant, String operation) {
+        return servant + "." + operation;
+    }
+
+    /**
+     * Records a call.
+     *
+     * @param servant the name of the servant
+     * @param operation the name of the operation
+     * @param queueWait the nanoseconds the call waited to start
+     * @param runTime the nanoseconds the call took to run
+     * @param payloadBytes the size of the response, or -1 if not known
+     */
+    public void record(String servant, String operation, long queueWait,
+            long runTime, long payloadBytes) {
+        String key = key(servant, operation);
+        Operation op = operations.get(key);
+        if (op == null) {
+            Operation added = new Operation(servant, operation);
+            op = operations.putIfAbsent(key, added);
+            if (op == null) {
+                op = added;
+            }
+        }
+        op.queueWait.record(queueWait);
+        op.runTime.record(runTime);
+        if (payloadBytes >= 0) {
+            op.payloadBytes.record(payloadBytes);
+        }
+    }
+
+    /**
+     * Records a task run by a {@link ThrottlingStrategy}.
+     *
+     * @param task the task
+     * @param started {@link System#nanoTime()} when it started
+     * @param finished {@link System#nanoTime()} when it finished
+     */
+    void record(Task task, long started, long finished) {
+        String operation = task.current == null
+                || task.current.operation == null ? "unknown"
+                : task.current.operation;
+        record(task.getServant(), operation, started - task.created,
+                finished - started, task.payload);
+    }
+
+    /**
+     * Estimates the number of bytes of a response: the size of the data of
+     * primitive arrays and strings, otherwise unknown.
+     *
+     * @param rv the return value
+     * @return the size, or -1 if not known
+     */
+    static long sizeOf(Object rv) {
+        if (rv instanceof byte[]) {
+            return ((byte[]) rv).length;
+        } else if (rv instanceof short[]) {
+            return 2L * ((short[]) rv).length;
+        } else if (rv instanceof int[]) {
+            return 4L * ((int[]) rv).length;
+        } else if (rv instanceof long[]) {
+            return 8L * ((long[]) rv).length;
+        } else if (rv instanceof float[]) {
+            return 4L * ((float[]) rv).length;
+        } else if (rv instanceof double[]) {
+            return 8L * ((double[]) rv).length;
+        } else if (rv instanceof String) {
+            return 2L * ((String) rv).length();
+        }
+        return -1;
+    }
+
+    /**
+     * @param servant the name of the servant
+     * @param operation the name of the operation
+     * @return the histograms of the operation, or null if no calls were
+     *         recorded
+     */
+    public Operation getOperation(String servant, String operation) {
+        return operations.get(key(servant, operation));
+    }
+
+    /**
+     * @return the histograms of all operations with recorded calls
+     */
+    public List<Operation> list() {
+        return new ArrayList<Operation>(operations.values());
+    }
+
+    // JMX
+    // =========================================================================
+
+    /**
+     * Registers these metrics with the platform MBean server.
+     */
+    public synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                log.warn("{} already registered", OBJECT_NAME);
+                return;
+            }
+            server.registerMBean(this, name);
+            registered = name;
+        } catch (JMException e) {
+            log.warn("Failed to register " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server, if registered.
+     */
+    public synchronized void unregister() {
+        if (registered == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                    registered);
+        } catch (JMException e) {
+            log.warn("Failed to unregister " + OBJECT_NAME, e);
+        } finally {
+            registered = null;
+        }
+    }
+
+    private static long[] summary(Histogram h) {
+        return new long[] { h.getCount(), Math.round(h.getMean()),
+                h.getValueAtPercentile(50), h.getValueAtPercentile(90),
+                h.getValueAtPercentile(99), h.getMax() };
+    }
+
+    private Operation lookup(String operation) {
+        Operation op = operations.get(operation);
+        if (op == null) {
+            throw new IllegalArgumentException("No calls recorded for "
+                    + operation);
+        }
+        return op;
+    }
+
+    public String[] getOperations() {
+        return operations.keySet().toArray(new String[0]);
+    }
+
+    public long[] getQueueWait(String operation) {
+        return summary(lookup(operation).queueWait);
+    }
+
+    public long[] getRunTime(String operation) {
+        return summary(lookup(operation).runTime);
+    }
+
+    public long[] getPayloadBytes(String operation) {
+        return summary(lookup(operation).payloadBytes);
+    }
+
+    public void reset() {
+        operations.clear();
+    }
+}
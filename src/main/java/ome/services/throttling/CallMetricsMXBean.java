@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.throttling;
+
+/**
+ * JMX view of the {@link CallMetrics}. Operations are named
+ * <code>servant.operation</code>, e.g. <code>RawPixelsStore.getTile</code>.
+ * Each summary holds the count, mean, 50th, 90th and 99th percentiles and the
+ * maximum of the recorded values, in that order.
+ *
+ * @since 5.5.0
+ */
+public interface CallMetricsMXBean {
+
+    /**
+     * @return the names of the operations with recorded calls
+     */
+    String[] getOperations();
+
+    /**
+     * @param operation the name of an operation
+     * @return the summary of the nanoseconds its calls waited to start
+     */
+    long[] getQueueWait(String operation);
+
+    /**
+     * @param operation the name of an operation
+     * @return the summary of the nanoseconds its calls took to run
+     */
+    long[] getRunTime(String operation);
+
+    /**
+     * @param operation the name of an operation
+     * @return the summary of the sizes in bytes of its responses, where known
+     */
+    long[] getPayloadBytes(String operation);
+
+    /**
+     * Discards all recorded calls.
+     */
+    void reset();
+}
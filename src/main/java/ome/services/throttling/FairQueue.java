@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.throttling;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded queue of tasks for one lane of the {@link FairThrottlingStrategy}.
+ * Tasks are queued per session, and {@link #take()} serves the sessions with
+ * waiting tasks in turn, each session's tasks in the order they were offered.
+ * Also keeps the statistics of the lane.
+ *
+ * @since 5.5.0
+ */
+class FairQueue {
+
+    /** A waiting task. */
+    static class Entry {
+
+        final Task task;
+
+        final Ice.Current current;
+
+        final long queued = System.nanoTime();
+
+        Entry(Task task, Ice.Current current) {
+            this.task = task;
+            this.current = current;
+        }
+    }
+
+    private final String name;
+
+    private final int capacity;
+
+    private final int sessionCapacity;
+
+    /** The waiting tasks by session. */
+    private final Map<String, ArrayDeque<Entry>> sessions = new HashMap<String, ArrayDeque<Entry>>();
+
+    /** The sessions with waiting tasks, next to be served first. */
+    private final ArrayDeque<String> turns = new ArrayDeque<String>();
+
+    private int depth = 0;
+
+    private boolean closed = false;
+
+    private long started = 0;
+
+    private long rejected = 0;
+
+    private long totalWait = 0;
+
+    private long maxWait = 0;
+
+    /**
+     * @param name the name of the lane
+     * @param capacity the maximum number of waiting tasks
+     * @param sessionCapacity the maximum number of waiting tasks per session
+     */
+    FairQueue(String name, int capacity, int sessionCapacity) {
+        if (capacity < 1 || sessionCapacity < 1) {
+            throw new IllegalArgumentException("Capacities must be positive");
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.sessionCapacity = sessionCapacity;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Queues a task unless the lane or the session's share of it is full.
+     *
+     * @param session the session calling
+     * @param task the task to run
+     * @param current the current of the call, may be null
+     * @return if the task was queued
+     */
+    synchronized boolean offer(String session, Task task, Ice.Current current) {
+        ArrayDeque<Entry> waiting = sessions.get(session);
+        if (closed || depth >= capacity
+                || (waiting != null && waiting.size() >= sessionCapacity)) {
+            rejected++;
+            return false;
+        }
+        if (waiting == null) {
+            waiting = new ArrayDeque<Entry>();
+            sessions.put(session, waiting);
+            turns.add(session);
+        }
+        waiting.add(new Entry(task, current));
+        depth++;
+        notify();
+        return true;
+    }
+
+    /**
+     * Waits for a task, taking the oldest task of the session whose turn it
+     * is.
+     *
+     * @return the task, or null once closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized Entry take() throws InterruptedException {
+        while (turns.isEmpty() && !closed) {
+            wait();
+        }
+        if (closed) {
+            return null;
+        }
+        String session = turns.poll();
+        ArrayDeque<Entry> waiting = sessions.get(session);
+        Entry entry = waiting.poll();
+        if (waiting.isEmpty()) {
+            sessions.remove(session);
+        } else {
+            turns.add(session);
+        }
+        depth--;
+        started++;
+        long wait = System.nanoTime() - entry.queued;
+        totalWait += wait;
+        maxWait = Math.max(maxWait, wait);
+        return entry;
+    }
+
+    /**
+     * Stops accepting tasks and wakes the workers.
+     *
+     * @return the tasks which were waiting
+     */
+    synchronized List<Task> close() {
+        closed = true;
+        List<Task> remaining = new ArrayList<Task>(depth);
+        for (String session : turns) {
+            for (Entry entry : sessions.get(session)) {
+                remaining.add(entry.task);
+            }
+        }
+        sessions.clear();
+        turns.clear();
+        depth = 0;
+        notifyAll();
+        return remaining;
+    }
+
+    synchronized int getDepth() {
+        return depth;
+    }
+
+    synchronized long getStarted() {
+        return started;
+    }
+
+    synchronized long getRejected() {
+        return rejected;
+    }
+
+    synchronized double getMeanWaitMillis() {
+        return started == 0 ? 0 : totalWait / 1e6 / started;
+    }
+
+    synchronized double getMaxWaitMillis() {
+        return maxWait / 1e6;
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.throttling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import ome.api.RawFileStore;
+import ome.api.RawPixelsStore;
+import ome.api.ServiceInterface;
+import ome.api.ThumbnailStore;
+import ome.conditions.OverUsageException;
+import ome.security.basic.CurrentDetails;
+import ome.services.blitz.util.IceMethodInvoker;
+import omero.util.IceMapper;
+
+import Ice.Current;
+
+/**
+ * Throttling implementation which runs calls on separate pools of worker
+ * threads, or lanes, for IO-intensive, database-intensive and other tasks, so
+ * that slow pixel reads cannot hold up metadata queries. A {@link Callback}
+ * is placed in a lane according to its {@link Callback#ioIntensive()} and
+ * {@link Callback#dbIntensive()} flags or, if these are unknown, according to
+ * the service called: the binary stores are IO-intensive, all other services
+ * database-intensive. Runnable calls use the other lane.
+ *
+ * Within a lane, the sessions which have calls waiting are served in turn, so
+ * a session with many queued calls delays those of other sessions by at most
+ * one call each. Each lane holds a bounded number of waiting calls, both in
+ * total and per session; further calls are rejected with an
+ * {@link OverUsageException} which the client may retry.
+ *
+ * @since 5.5.0
+ */
+public class FairThrottlingStrategy extends AbstractThrottlingStrategy {
+
+    public final static String IO_LANE = "io";
+
+    public final static String DB_LANE = "db";
+
+    public final static String OTHER_LANE = "other";
+
+    /**
+     * How long {@link #destroy()} waits in total for the calls which are
+     * running to finish.
+     */
+    final static long DESTROY_TIMEOUT_MS = 10000;
+
+    private final CurrentDetails cd;
+
+    private final FairQueue io, db, other;
+
+    private final List<Thread> workers = new ArrayList<Thread>();
+
+    /**
+     * @param cd
+     *            the current details, set up for each call
+     * @param ioThreads
+     *            the number of workers for IO-intensive calls
+     * @param dbThreads
+     *            the number of workers for database-intensive calls
+     * @param otherThreads
+     *            the number of workers for other calls
+     * @param capacity
+     *            the maximum number of calls waiting in each lane
+     * @param sessionCapacity
+     *            the maximum number of calls of a single session waiting in
+     *            each lane
+     */
+    public FairThrottlingStrategy(CurrentDetails cd, int ioThreads,
+            int dbThreads, int otherThreads, int capacity, int sessionCapacity) {
+        this.cd = cd;
+        this.io = new FairQueue(IO_LANE, capacity, sessionCapacity);
+        this.db = new FairQueue(DB_LANE, capacity, sessionCapacity);
+        this.other = new FairQueue(OTHER_LANE, capacity, sessionCapacity);
+        start(io, ioThreads);
+        start(db, dbThreads);
+        start(other, otherThreads);
+    }
+
+    private void start(final FairQueue lane, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Lane " + lane.getName()
+                    + " needs at least one thread");
+        }
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(new Runnable() {
+                public void run() {
+                    work(lane);
+                }
+            }, "Blitz-" + lane.getName() + "-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Runs the calls of the given lane until it is closed.
+     */
+    private void work(FairQueue lane) {
+        while (true) {
+            FairQueue.Entry entry;
+            try {
+                entry = lane.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (entry == null) {
+                return;
+            }
+            if (entry.current != null) {
+                cd.setContext(entry.current.ctx);
+            }
+            try {
+                execute(entry.task);
+            } catch (Throwable t) {
+                log.error("Exception during call in lane " + lane.getName(), t);
+            } finally {
+                cd.setContext(null);
+            }
+        }
+    }
+
+    /**
+     * Sessions are identified by the category of the servant identities.
+     */
+    private static String session(Ice.Current current) {
+        if (current == null || current.id == null
+                || current.id.category == null) {
+            return "";
+        }
+        return current.id.category;
+    }
+
+    private FairQueue lane(Callback cb, ServiceInterface service) {
+        Boolean ioIntensive = cb.ioIntensive();
+        Boolean dbIntensive = cb.dbIntensive();
+        if (ioIntensive == null && dbIntensive == null) {
+            if (service instanceof RawPixelsStore
+                    || service instanceof RawFileStore
+                    || service instanceof ThumbnailStore) {
+                return io;
+            }
+            return db;
+        } else if (Boolean.TRUE.equals(ioIntensive)) {
+            return io;
+        } else if (Boolean.TRUE.equals(dbIntensive)) {
+            return db;
+        }
+        return other;
+    }
+
+    private void submit(FairQueue lane, Task task, Ice.Current current) {
+        if (!lane.offer(session(current), task, current)) {
+            String msg = String.format(
+                    "Too many calls waiting in the %s lane; retry later",
+                    lane.getName());
+            if (task.cb == null) {
+                log.warn("Dropping " + task + ": " + msg);
+            } else {
+                task.exception(new OverUsageException(msg), ctx);
+            }
+        }
+    }
+
+    public void callInvokerOnRawArgs(ServiceInterface service,
+            IceMethodInvoker invoker, Object __cb, Ice.Current __current,
+            Object... args) {
+        IceMapper mapper = new IceMapper();
+        Callback cb = new Callback(service, invoker, mapper, __cb, __current,
+                args);
+        submit(lane(cb, service), cb, __current);
+    }
+
+    public void callInvokerWithMappedArgs(ServiceInterface service,
+            IceMethodInvoker invoker, IceMapper mapper, Object __cb,
+            Current __current, Object... args) {
+        Callback cb = new Callback(service, invoker, mapper, __cb, __current,
+                args);
+        submit(lane(cb, service), cb, __current);
+    }
+
+    public <R> void safeRunnableCall(Current __current, Object __cb,
+            boolean isVoid, Callable<R> callable) {
+        submit(other, new Callback2<R>(__current, __cb, isVoid, callable),
+                __current);
+    }
+
+    public void runnableCall(Current __current, Task runnable) {
+        submit(other, runnable, __current);
+    }
+
+    /**
+     * Cancels the waiting calls and waits up to {@link #DESTROY_TIMEOUT_MS}
+     * for the workers to finish their current calls. Workers are not
+     * interrupted, so calls which are still running are left to complete.
+     */
+    public void destroy() {
+        for (FairQueue lane : new FairQueue[] { io, db, other }) {
+            for (Task task : lane.close()) {
+                task.exception(new Queue.CancelledException(), ctx);
+            }
+        }
+        final long deadline = System.currentTimeMillis() + DESTROY_TIMEOUT_MS;
+        for (Thread worker : workers) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                try {
+                    worker.join(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (worker.isAlive()) {
+                log.warn(worker.getName() + " still running a call on shutdown");
+            }
+        }
+    }
+
+    // Metrics
+    // =========================================================================
+
+    private FairQueue getLane(String name) {
+        if (IO_LANE.equals(name)) {
+            return io;
+        } else if (DB_LANE.equals(name)) {
+            return db;
+        } else if (OTHER_LANE.equals(name)) {
+            return other;
+        }
+        throw new IllegalArgumentException("Unknown lane: " + name);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return io.getDepth() + db.getDepth() + other.getDepth();
+    }
+
+    /**
+     * @param lane one of {@link #IO_LANE}, {@link #DB_LANE}, {@link #OTHER_LANE}
+     * @return the number of calls waiting in the lane
+     */
+    public int getQueueDepth(String lane) {
+        return getLane(lane).getDepth();
+    }
+
+    /**
+     * @param lane one of {@link #IO_LANE}, {@link #DB_LANE}, {@link #OTHER_LANE}
+     * @return the number of calls rejected by the lane
+     */
+    public long getRejectedCount(String lane) {
+        return getLane(lane).getRejected();
+    }
+
+    /**
+     * @param lane one of {@link #IO_LANE}, {@link #DB_LANE}, {@link #OTHER_LANE}
+     * @return the number of calls started by the lane
+     */
+    public long getStartedCount(String lane) {
+        return getLane(lane).getStarted();
+    }
+
+    /**
+     * @param lane one of {@link #IO_LANE}, {@link #DB_LANE}, {@link #OTHER_LANE}
+     * @return the mean time calls waited in the lane before starting, in
+     *         milliseconds
+     */
+    public double getMeanWaitMillis(String lane) {
+        return getLane(lane).getMeanWaitMillis();
+    }
+
+    /**
+     * @param lane one of {@link #IO_LANE}, {@link #DB_LANE}, {@link #OTHER_LANE}
+     * @return the longest time a call waited in the lane before starting, in
+     *         milliseconds
+     */
+    public double getMaxWaitMillis(String lane) {
+        return getLane(lane).getMaxWaitMillis();
+    }
+
+}
@@ -5,6 +5,9 @@
 
 package ome.services.throttling;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 
 import ome.system.OmeroContext;
@@ -17,7 +20,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Simple base task which contains logic for routing calls reflectively to
- * ice_response and ice_exception of any AMD callback.
+ * ice_response and ice_exception of any AMD callback. The methods are looked
+ * up and compiled into {@link MethodHandle}s once per callback class.
  * 
  * @since Beta4
  */
@@ -25,6 +29,43 @@ public abstract class Task {
 
     private final static Logger log = LoggerFactory.getLogger(Task.class);
 
+    private final static Object[] NO_ARGS = new Object[0];
+
+    private final static MethodType GENERIC = MethodType.methodType(
+            void.class, Object.class, Object[].class);
+
+    /**
+     * The callback methods of an AMD callback class, with the handles which
+     * call them, or null handles if reflection must be used instead.
+     */
+    private static class Invokers {
+
+        final Method response, exception;
+
+        final MethodHandle responseHandle, exceptionHandle;
+
+        /** The Slice interface of the callback, e.g. RawPixelsStore. */
+        final String servant;
+
+        Invokers(Class<?> c) {
+            Class<?> iface = getPublicInterface(c);
+            String name = iface.getSimpleName().substring(4);
+            int op = name.lastIndexOf('_');
+            servant = op > 0 ? name.substring(0, op) : name;
+            response = getMethod(iface, "ice_response");
+            exception = getMethod(iface, "ice_exception");
+            responseHandle = compile(response);
+            exceptionHandle = compile(exception);
+        }
+    }
+
+    private final static ClassValue<Invokers> invokers = new ClassValue<Invokers>() {
+        @Override
+        protected Invokers computeValue(Class<?> c) {
+            return new Invokers(c);
+        }
+    };
+
     protected final Object cb;
 
     protected final boolean isVoid;
@@ -35,32 +76,69 @@ public abstract class Task {
 
     protected final Method exception;
 
+    private final MethodHandle responseHandle;
+
+    private final MethodHandle exceptionHandle;
+
+    private final String servant;
+
+    /** {@link System#nanoTime()} when this task was created. */
+    final long created = System.nanoTime();
+
+    /** The size in bytes of the response, or -1 if not known. */
+    volatile long payload = -1;
+
     public Task(Object callback, Ice.Current current, boolean isVoid) {
         this.current = current;
         this.isVoid = isVoid;
         this.cb = callback;
         if (callback != null) {
-            response = getMethod(callback, "ice_response");
-            exception = getMethod(callback, "ice_exception");
+            Invokers i = invokers.get(callback.getClass());
+            response = i.response;
+            exception = i.exception;
+            responseHandle = i.responseHandle;
+            exceptionHandle = i.exceptionHandle;
+            servant = i.servant;
         } else {
             response = null;
             exception = null;
+            responseHandle = null;
+            exceptionHandle = null;
+            String name = getClass().getName();
+            name = name.substring(name.lastIndexOf('.') + 1);
+            int inner = name.indexOf('$');
+            servant = inner > 0 ? name.substring(0, inner) : name;
         }
     }
 
     public abstract void run(OmeroContext ctx);
 
+    /**
+     * The name under which {@link CallMetrics} records this task: the Slice
+     * interface of the AMD callback or, if there is none, the class which
+     * defines this task.
+     */
+    public String getServant() {
+        return servant;
+    }
+
     /**
      * Calls the response method
      */
     protected void response(Object rv, OmeroContext ctx) {
         try {
-            if (isVoid) {
-                response.invoke(cb);
+            Object[] args = NO_ARGS;
+            if (!isVoid) {
+                rv = postProcess(rv);
+                payload = CallMetrics.sizeOf(rv);
+                args = new Object[] { rv };
+            }
+            if (responseHandle != null) {
+                responseHandle.invokeExact(cb, args);
             } else {
-                response.invoke(cb, postProcess(rv));
+                response.invoke(cb, args);
             }
-        } catch (Exception e) {
+        } catch (Throwable e) {
             InternalException ie = new InternalException();
             IceMapper.fillServerError(ie, e);
             ie.message = "Failed to invoke: " + this.toString();
@@ -87,8 +165,12 @@ public abstract class Task {
             }
             IceMapper mapper = new IceMapper();
             ex = mapper.handleException(ex, ctx);
-            exception.invoke(cb, ex);
-        } catch (Exception e2) {
+            if (exceptionHandle != null) {
+                exceptionHandle.invokeExact(cb, new Object[] { ex });
+            } else {
+                exception.invoke(cb, ex);
+            }
+        } catch (Throwable e2) {
             String msg = "Failed to invoke exception()";
             log.error(msg, e2);
             throw new RuntimeException("Failed to invoke exception()", e2);
@@ -99,7 +181,10 @@ public abstract class Task {
     // =========================================================================
 
     Method getMethod(Object o, String methodName) {
-        Class c = getPublicInterface(o.getClass());
+        return getMethod(getPublicInterface(o.getClass()), methodName);
+    }
+
+    private static Method getMethod(Class<?> c, String methodName) {
         Method[] methods = c.getMethods();
         Method rv = null;
         for (int i = 0; i < methods.length; i++) {
@@ -119,7 +204,7 @@ public abstract class Task {
      * The Ice AMD-implementations are package-private and so cannot be executed
      * on. Instead, we have to find the public interface and use its methods.
      */
-    private Class getPublicInterface(Class c) {
+    private static Class getPublicInterface(Class c) {
         if (!c.getName().startsWith("AMD_")) {
             while (!c.equals(Object.class)) {
                 Class[] ifaces = c.getInterfaces();
@@ -138,6 +223,25 @@ public abstract class Task {
     }
 
 
+    /**
+     * Compiles the callback method into a handle of type {@link #GENERIC}
+     * which spreads the argument array over the parameters, or returns null
+     * if access to the method is denied.
+     */
+    private static MethodHandle compile(Method m) {
+        if (m == null) {
+            return null;
+        }
+        try {
+            return MethodHandles.publicLookup().unreflect(m)
+                    .asSpreader(Object[].class, m.getParameterTypes().length)
+                    .asType(GENERIC);
+        } catch (IllegalAccessException iae) {
+            log.debug("Using reflection for " + m, iae);
+            return null;
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -19,4 +19,9 @@ import ome.services.blitz.util.BlitzExecutor;
  */
 public interface ThrottlingStrategy extends BlitzExecutor, ApplicationListener {
 
+    /**
+     * @return the number of calls waiting to be run
+     */
+    int getQueueDepth();
+
 }
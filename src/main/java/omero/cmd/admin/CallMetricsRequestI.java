@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package omero.cmd.admin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import ome.api.local.LocalAdmin;
+import ome.services.throttling.CallMetrics;
+import ome.services.throttling.Histogram;
+import ome.services.util.ReadOnlyStatus;
+import ome.system.EventContext;
+import omero.cmd.CallMetricsRequest;
+import omero.cmd.CallMetricsResponse;
+import omero.cmd.ERR;
+import omero.cmd.HandleI.Cancel;
+import omero.cmd.Helper;
+import omero.cmd.IRequest;
+import omero.cmd.OperationMetrics;
+import omero.cmd.Response;
+import omero.util.ObjectFactoryRegistry;
+
+import Ice.Communicator;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Reports the {@link CallMetrics} of the server to administrators.
+ *
+ * @since 5.5.0
+ */
+@SuppressWarnings("serial")
+public class CallMetricsRequestI extends CallMetricsRequest
+    implements IRequest, ReadOnlyStatus.IsAware {
+
+    private final static double[] DEFAULT_PERCENTILES = { 50, 90, 99, 100 };
+
+    public static class Factory extends ObjectFactoryRegistry {
+        private final ObjectFactory factory;
+        public Factory(final CallMetrics metrics) {
+            factory = new ObjectFactory(ice_staticId()) {
+                @Override
+                public Ice.Object create(String name) {
+                    return new CallMetricsRequestI(metrics);
+                }};
+            }
+
+        @Override
+        public Map<String, ObjectFactory> createFactories(Communicator ic) {
+            return new ImmutableMap.Builder<String, ObjectFactory>()
+                    .put(ice_staticId(), factory).build();
+        }
+    }
+
+    protected Helper helper;
+
+    protected final CallMetrics metrics;
+
+    public CallMetricsRequestI(CallMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    //
+    // CMD API
+    //
+
+    @Override
+    public Map<String, String> getCallContext() {
+        return null;
+    }
+
+    public void init(Helper helper) {
+        this.helper = helper;
+
+        final EventContext ec = ((LocalAdmin) helper.getServiceFactory()
+                .getAdminService()).getEventContextQuiet();
+        if (!ec.isCurrentUserAdmin()) {
+            throw helper.cancel(new ERR(), null, "no-permissions",
+                    "ApiUsageException",
+                    "Only administrators may read the call metrics.");
+        }
+        if (percentiles == null || percentiles.length == 0) {
+            percentiles = DEFAULT_PERCENTILES;
+        }
+        for (double percentile : percentiles) {
+            if (percentile < 0 || percentile > 100) {
+                throw helper.cancel(new ERR(), null, "bad-percentile",
+                        "ApiUsageException",
+                        String.format("Percentile %s not between 0 and 100",
+                                percentile));
+            }
+        }
+        this.helper.setSteps(1);
+    }
+
+    public Object step(int step) throws Cancel {
+        helper.assertStep(step);
+        List<CallMetrics.Operation> operations = metrics.list();
+        List<OperationMetrics> rv = new ArrayList<OperationMetrics>(
+                operations.size());
+        for (CallMetrics.Operation operation : operations) {
+            OperationMetrics om = new OperationMetrics();
+            om.servant = operation.getServant();
+            om.operation = operation.getOperation();
+            om.count = operation.getRunTime().getCount();
+            om.queueWait = values(operation.getQueueWait());
+            om.runTime = values(operation.getRunTime());
+            om.payloadBytes = values(operation.getPayloadBytes());
+            rv.add(om);
+        }
+        if (reset) {
+            metrics.reset();
+        }
+        return rv;
+    }
+
+    private long[] values(Histogram histogram) {
+        long[] values = new long[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            values[i] = histogram.getValueAtPercentile(percentiles[i]);
+        }
+        return values;
+    }
+
+    @Override
+    public void finish() throws Cancel {
+        // no-op
+    }
+
+    @SuppressWarnings("unchecked")
+    public void buildResponse(int step, Object object) {
+        helper.assertResponse(step);
+        if (helper.isLast(step)) {
+            CallMetricsResponse rsp = new CallMetricsResponse();
+            rsp.percentiles = percentiles;
+            rsp.operations = (List<OperationMetrics>) object;
+            helper.setResponseIfNull(rsp);
+        }
+    }
+
+    public Response getResponse() {
+        return helper.getResponse();
+    }
+
+    @Override
+    public boolean isReadOnly(ReadOnlyStatus readOnly) {
+        return true;
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package omero.gateway.facility;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ome.services.blitz.util.ChecksumAlgorithmMapper;
+import ome.util.checksum.ChecksumProvider;
+import ome.util.checksum.ChecksumProviderFactory;
+import ome.util.checksum.ChecksumProviderFactoryImpl;
+import ome.util.checksum.ChecksumType;
+import omero.ServerError;
+import omero.api.RawFileStorePrx;
+import omero.gateway.Gateway;
+import omero.gateway.SecurityContext;
+import omero.gateway.exception.DSAccessException;
+import omero.gateway.exception.DSOutOfServiceException;
+import omero.log.LogMessage;
+import omero.model.OriginalFile;
+
+/**
+ * Downloads a list of original files on a pool of threads, each using its
+ * own {@link RawFileStorePrx}. Files larger than {@link #RANGE_SIZE} are
+ * split into ranges which are read concurrently and written in place
+ * through a positional {@link FileChannel}, which is opened when the first
+ * range of the file starts and closed once its last range has finished.
+ * The checksum of each file is calculated as the written prefix of the file
+ * grows by whichever worker extends it, reading back the newly contiguous
+ * bytes from the page cache outside of any lock, so no more than one block
+ * per thread is held in memory.
+ *
+ * If the target file already exists and is no longer than the original
+ * file, its content is taken to be a prefix of the original file and only
+ * the remainder is downloaded; the prefix is hashed by the workers along
+ * with the rest. When a transfer fails the file is truncated to its
+ * contiguous prefix so that it can be resumed by a later call. Files whose
+ * checksum does not match are deleted.
+ *
+ * @since 5.5.0
+ */
+class ParallelFileDownload {
+
+    /** Size of the ranges into which large files are split. */
+    static final long RANGE_SIZE = 64L * 1024 * 1024;
+
+    private static final ChecksumProviderFactory checksumProviderFactory =
+            new ChecksumProviderFactoryImpl();
+
+    private final Gateway gateway;
+
+    private final SecurityContext context;
+
+    private final int threads;
+
+    /* every store opened by the workers, so that all may be closed */
+    private final List<RawFileStorePrx> stores =
+            Collections.synchronizedList(new ArrayList<RawFileStorePrx>());
+
+    private final ThreadLocal<RawFileStorePrx> workerStore =
+            new ThreadLocal<RawFileStorePrx>();
+
+    /* the buffer into which each worker reads back bytes to be hashed */
+    private final ThreadLocal<ByteBuffer> readBack = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(TransferFacilityHelper.INC);
+        }
+    };
+
+    /**
+     * Creates a new instance.
+     *
+     * @param gateway
+     *            Reference to the gateway.
+     * @param context
+     *            The security context.
+     * @param threads
+     *            The maximum number of concurrent reads.
+     */
+    ParallelFileDownload(Gateway gateway, SecurityContext context, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive: "
+                    + threads);
+        this.gateway = gateway;
+        this.context = context;
+        this.threads = threads;
+    }
+
+    /**
+     * Downloads the given files into the target directory.
+     *
+     * @param files
+     *            The files to download.
+     * @param targetPath
+     *            The directory to download to.
+     * @return The files which were completely downloaded and verified, in
+     *         the same order as given.
+     * @throws DSAccessException
+     *             If interrupted while waiting for the download.
+     */
+    List<File> download(List<OriginalFile> files, String targetPath)
+            throws DSAccessException {
+        final List<Target> targets = new ArrayList<Target>(files.size());
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (OriginalFile of : files) {
+                final Target target = new Target(of, new File(targetPath, of
+                        .getName().getValue()));
+                targets.add(target);
+                // a file with nothing left to read still gets one, empty,
+                // range so that it is created and verified by a worker
+                long start = target.resumeFrom;
+                do {
+                    final long offset = start;
+                    final long end = Math.min(target.size, start + RANGE_SIZE);
+                    futures.add(pool.submit(new Callable<Void>() {
+                        public Void call() throws Exception {
+                            transferRange(target, offset, end);
+                            return null;
+                        }
+                    }));
+                    start = end;
+                } while (start < target.size);
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DSAccessException("Interrupted during download",
+                            e);
+                } catch (ExecutionException e) {
+                    // recorded by the target
+                }
+            }
+
+            final List<File> result = new ArrayList<File>(targets.size());
+            for (Target target : targets) {
+                if (target.complete)
+                    result.add(target.file);
+            }
+            return result;
+        } finally {
+            pool.shutdownNow();
+            for (Target target : targets)
+                target.close();
+            synchronized (stores) {
+                for (RawFileStorePrx store : stores) {
+                    try {
+                        store.close();
+                    } catch (ServerError e) {
+                    }
+                }
+                stores.clear();
+            }
+        }
+    }
+
+    /**
+     * Transfers a range of a file, recording any failure and finishing the
+     * file if this is the last of its ranges.
+     */
+    private void transferRange(Target target, long start, long end)
+            throws Exception {
+        try {
+            final FileChannel channel = target.open();
+            readRange(target, channel, start, end);
+            if (start == end)
+                target.written(start, 0);
+        } catch (Exception e) {
+            target.fail(e);
+            throw e;
+        } catch (Error e) {
+            target.fail(e);
+            throw e;
+        } finally {
+            target.release();
+        }
+    }
+
+    /**
+     * Reads a range of a file and writes it in place.
+     */
+    private void readRange(Target target, FileChannel channel, long start,
+            long end) throws ServerError, IOException, DSOutOfServiceException {
+        if (start == end)
+            return;
+        final RawFileStorePrx store = getWorkerStore();
+        store.setFileId(target.id);
+        for (long offset = start; offset < end;) {
+            final int length = (int) Math.min(TransferFacilityHelper.INC, end
+                    - offset);
+            final byte[] block = store.read(offset, length);
+            if (block.length == 0)
+                throw new IOException("Unexpected end of file ID "
+                        + target.id + " at " + offset);
+            final ByteBuffer buffer = ByteBuffer.wrap(block);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            target.written(offset, block.length);
+            offset += block.length;
+        }
+    }
+
+    /**
+     * Returns the store for the current worker thread, creating it if
+     * necessary.
+     */
+    private RawFileStorePrx getWorkerStore() throws DSOutOfServiceException {
+        RawFileStorePrx store = workerStore.get();
+        if (store == null) {
+            store = gateway.getRawFileService(context);
+            stores.add(store);
+            workerStore.set(store);
+        }
+        return store;
+    }
+
+    /**
+     * A file being downloaded along with the state of its checksum. The
+     * channel is only open while ranges of the file are being transferred.
+     */
+    private class Target {
+
+        final long id;
+
+        final long size;
+
+        final File file;
+
+        final long resumeFrom;
+
+        /* null if the file's hasher is not known */
+        final ChecksumProvider checksum;
+
+        final String expectedHash;
+
+        /* whether an existing file is too long to be a prefix */
+        private final boolean truncate;
+
+        /* the number of ranges which have not yet finished */
+        private int remaining;
+
+        /* null until the first range starts and after the last finishes */
+        private FileChannel channel;
+
+        /* the length of the contiguous prefix written so far */
+        private long verified;
+
+        /* the length of the prefix which has been hashed */
+        private long hashed;
+
+        /* whether a worker is hashing, in which case others leave it to it */
+        private boolean hashing;
+
+        /* written blocks beyond the verified prefix, start to end */
+        private final TreeMap<Long, Long> pending = new TreeMap<Long, Long>();
+
+        private volatile Throwable failure;
+
+        /* whether the file was downloaded and verified */
+        volatile boolean complete;
+
+        Target(OriginalFile of, File file) {
+            this.id = of.getId().getValue();
+            this.size = of.getSize().getValue();
+            this.file = file;
+            final ChecksumType type = of.getHasher() == null ? null
+                    : ChecksumAlgorithmMapper.getChecksumType(of.getHasher());
+            this.checksum = type == null || of.getHash() == null ? null
+                    : checksumProviderFactory.getProvider(type);
+            this.expectedHash = checksum == null ? null : of.getHash()
+                    .getValue();
+            final long existing = file.length();
+            this.truncate = existing > size;
+            this.resumeFrom = truncate ? 0 : existing;
+            this.remaining = resumeFrom < size ?
+                    (int) ((size - resumeFrom + RANGE_SIZE - 1) / RANGE_SIZE) : 1;
+            if (resumeFrom > 0)
+                pending.put(0L, resumeFrom);
+        }
+
+        /**
+         * Returns the channel to write to, opening the file if this is the
+         * first of its ranges to start.
+         */
+        synchronized FileChannel open() throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                if (truncate)
+                    channel.truncate(0);
+            }
+            return channel;
+        }
+
+        void fail(Throwable t) {
+            if (failure == null)
+                failure = t;
+        }
+
+        /**
+         * Records that a range has finished, finishing and closing the file
+         * if it was the last.
+         */
+        void release() {
+            synchronized (this) {
+                if (--remaining > 0)
+                    return;
+            }
+            complete = finish();
+            close();
+        }
+
+        /**
+         * Records that a block has been written. If the prefix of the file
+         * has grown and no other worker is hashing, the new bytes are hashed
+         * outside of the lock, followed by any which other workers make
+         * contiguous in the meantime.
+         */
+        void written(long offset, long length) throws IOException {
+            long from, to;
+            FileChannel ch;
+            synchronized (this) {
+                if (length > 0)
+                    pending.put(offset, offset + length);
+                while (!pending.isEmpty() && pending.firstKey() <= verified) {
+                    verified = Math.max(verified, pending.pollFirstEntry()
+                            .getValue());
+                }
+                if (checksum == null || hashing || hashed == verified)
+                    return;
+                hashing = true;
+                from = hashed;
+                to = verified;
+                ch = channel;
+            }
+            try {
+                while (true) {
+                    hash(ch, from, to);
+                    synchronized (this) {
+                        hashed = to;
+                        if (hashed == verified) {
+                            hashing = false;
+                            return;
+                        }
+                        from = hashed;
+                        to = verified;
+                    }
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    hashing = false;
+                }
+                throw e;
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    hashing = false;
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Adds the given part of the file to the checksum.
+         */
+        private void hash(FileChannel ch, long from, long to)
+                throws IOException {
+            final ByteBuffer buffer = readBack.get();
+            for (long position = from; position < to;) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), to - position));
+                final int read = ch.read(buffer, position);
+                if (read < 0)
+                    throw new IOException("Unexpected end of " + file);
+                checksum.putBytes(buffer.array(), 0, read);
+                position += read;
+            }
+        }
+
+        /**
+         * Completes the download of the file, keeping a failed download for
+         * resumption and deleting a file which failed verification. Only
+         * called once all of the ranges of the file have finished.
+         *
+         * @return <code>true</code> if the file was downloaded and verified.
+         */
+        private synchronized boolean finish() {
+            try {
+                if (failure != null || verified < size || channel == null) {
+                    if (channel != null)
+                        channel.truncate(verified);
+                    gateway.getLogger().warn(this, new LogMessage(
+                            "Download of " + file + " stopped after "
+                            + verified + " bytes", failure));
+                    return false;
+                }
+                if (checksum != null
+                        && (hashed < size || !expectedHash.equals(checksum
+                                .checksumAsString()))) {
+                    channel.close();
+                    channel = null;
+                    file.delete();
+                    gateway.getLogger().warn(this, "Checksum mismatch for "
+                            + file + ", deleted");
+                    return false;
+                }
+                return true;
+            } catch (IOException e) {
+                gateway.getLogger().warn(this, new LogMessage(
+                        "Failed to complete " + file, e));
+                return false;
+            }
+        }
+
+        synchronized void close() {
+            if (channel == null)
+                return;
+            try {
+                channel.close();
+            } catch (IOException e) {
+            }
+            channel = null;
+        }
+    }
+}
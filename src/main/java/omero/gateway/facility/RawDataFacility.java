@@ -20,8 +20,13 @@
  */
 package omero.gateway.facility;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import omero.gateway.Gateway;
 import omero.gateway.SecurityContext;
@@ -39,6 +44,15 @@ import org.apache.commons.collections.map.MultiKeyMap;
 /**
  * A {@link Facility} for accessing raw data
  * 
+ * Tiles and planes are kept in a least recently used cache, bounded by the
+ * number of bytes of pixel data (see {@link #setTileCacheSize(long)}), so
+ * that requesting the same tile again, e.g. when panning a viewer back and
+ * forth, does not go to the server. If prefetching is enabled (see
+ * {@link #setPrefetch(boolean)}), the neighbouring tiles and the same tile of
+ * the adjacent z-sections and timepoints are loaded into the cache in the
+ * background whenever a tile has to be loaded from the server. Prefetching
+ * uses its own pixels store so that requested tiles never wait behind it.
+ * 
  * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
  *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
  * @since 5.1
@@ -46,9 +60,31 @@ import org.apache.commons.collections.map.MultiKeyMap;
 
 public class RawDataFacility extends Facility implements AutoCloseable {
 
+    /** The default maximum size of the tile cache in bytes (64 MB) */
+    public static final long DEFAULT_TILE_CACHE_SIZE = 64L * 1024 * 1024;
+
+    /** The maximum number of tiles being prefetched at once */
+    private static final int MAX_PREFETCH = 16;
+
     /** Cache the {@link DataSink}s for re-use (keys: ctx.groupid and pixelsId) */
     private MultiKeyMap cache = new MultiKeyMap();
 
+    /** The {@link DataSink}s used only for prefetching (same keys) */
+    private MultiKeyMap prefetchCache = new MultiKeyMap();
+
+    /** The cached tiles and planes */
+    private final TileCache tileCache = new TileCache(DEFAULT_TILE_CACHE_SIZE);
+
+    /** The tiles being prefetched */
+    private final Set<TileCache.Key> prefetching = Collections
+            .newSetFromMap(new ConcurrentHashMap<TileCache.Key, Boolean>());
+
+    /** Flag indicating if neighbouring tiles and planes are prefetched */
+    private volatile boolean prefetch;
+
+    /** Flag indicating if the facility has been closed, guarded by this */
+    private boolean closed;
+
     /**
      * Creates a new instance
      * 
@@ -164,7 +200,16 @@ public class RawDataFacility extends Facility implements AutoCloseable {
             return null;
         
         try {
-            return getDataSink(ctx, pixels, gateway).getPlane(z, t, c);
+            TileCache.Key key = new TileCache.Key(pixels.getId(), -1, z, c, t,
+                    0, 0, -1, -1);
+            Plane2D plane = tileCache.get(key);
+            if (plane == null) {
+                plane = getDataSink(ctx, pixels, gateway).getPlane(z, t, c);
+                tileCache.put(key, plane);
+                if (prefetch)
+                    prefetch(ctx, pixels, key, false);
+            }
+            return plane;
         } catch (Exception e) {
             handleException(this, e, "Couldn't get plane z=" + z + " t=" + t
                     + " c=" + c);
@@ -201,15 +246,212 @@ public class RawDataFacility extends Facility implements AutoCloseable {
     public Plane2D getTile(SecurityContext ctx, PixelsData pixels, int z,
             int t, int c, int x, int y, int w, int h)
             throws DataSourceException {
+        return getTile(ctx, pixels, -1, z, t, c, x, y, w, h);
+    }
+
+    /**
+     * Extracts a 2D tile of the given resolution level from the pixels set
+     * 
+     * @param ctx
+     *            The security context.
+     * @param pixels
+     *            The {@link PixelsData} object to fetch the data from.
+     * @param resolution
+     *            The resolution level, <code>-1</code> for the full
+     *            resolution.
+     * @param z
+     *            The z-section at which data is to be fetched.
+     * @param t
+     *            The timepoint at which data is to be fetched.
+     * @param c
+     *            The channel at which data is to be fetched.
+     * @param x
+     *            The x coordinate
+     * @param y
+     *            The y coordinate
+     * @param w
+     *            The width of the tile
+     * @param h
+     *            The height of the tile
+     * @return A plane 2D object that encapsulates the actual tile pixels.
+     * @throws DataSourceException
+     *             If an error occurs while retrieving the plane data from the
+     *             pixels source.
+     */
+    public Plane2D getTile(SecurityContext ctx, PixelsData pixels,
+            int resolution, int z, int t, int c, int x, int y, int w, int h)
+            throws DataSourceException {
         if (pixels == null)
             return null;
         
+        TileCache.Key key = new TileCache.Key(pixels.getId(),
+                resolution < 0 ? -1 : resolution, z, c, t, x, y, w, h);
+        Plane2D tile = tileCache.get(key);
         try {
-            return getDataSink(ctx, pixels, gateway).getTile(z, t, c, x, y, w,
-                    h);
+            if (tile == null) {
+                tile = getDataSink(ctx, pixels, gateway).getTile(
+                        key.resolution, z, t, c, x, y, w, h);
+                tileCache.put(key, tile);
+                if (prefetch)
+                    prefetch(ctx, pixels, key, true);
+            }
         } catch (DSOutOfServiceException e) {
             throw new DataSourceException("Can't initiate DataSink", e);
         }
+        return tile;
+    }
+
+    /**
+     * Loads the tiles next to the given one in the background: the adjacent
+     * tiles of the same size and the same tile in the adjacent z-sections
+     * and timepoints. For a whole plane, only the adjacent planes are loaded.
+     * Tiles already cached or being loaded are skipped, as are all tiles if
+     * too many are being loaded already. The tiles are read through a
+     * separate {@link DataSink} so that they do not delay requested tiles.
+     * 
+     * @param ctx
+     *            The security context.
+     * @param pixels
+     *            The pixels set.
+     * @param key
+     *            The requested tile.
+     * @param tile
+     *            Pass <code>true</code> for a tile, <code>false</code> for a
+     *            whole plane.
+     */
+    private void prefetch(final SecurityContext ctx, final PixelsData pixels,
+            TileCache.Key key, boolean tile) {
+        List<TileCache.Key> keys = new ArrayList<TileCache.Key>();
+        if (tile) {
+            int[] size;
+            try {
+                size = getDataSink(ctx, pixels, gateway).getResolutionSize(
+                        key.resolution);
+            } catch (Exception e) {
+                logDebug(this, "Not prefetching tiles of " + key, e);
+                return;
+            }
+            int[][] offsets = { { key.x - key.w, key.y },
+                    { key.x + key.w, key.y }, { key.x, key.y - key.h },
+                    { key.x, key.y + key.h } };
+            for (int[] offset : offsets) {
+                int x = offset[0], y = offset[1];
+                if (x < 0 || y < 0 || x >= size[0] || y >= size[1])
+                    continue;
+                keys.add(new TileCache.Key(key.pixelsId, key.resolution,
+                        key.z, key.c, key.t, x, y,
+                        Math.min(key.w, size[0] - x),
+                        Math.min(key.h, size[1] - y)));
+            }
+        }
+        int[][] planes = { { key.z - 1, key.t }, { key.z + 1, key.t },
+                { key.z, key.t - 1 }, { key.z, key.t + 1 } };
+        for (int[] plane : planes) {
+            int z = plane[0], t = plane[1];
+            if (z < 0 || t < 0 || z >= pixels.getSizeZ()
+                    || t >= pixels.getSizeT())
+                continue;
+            keys.add(new TileCache.Key(key.pixelsId, key.resolution, z,
+                    key.c, t, key.x, key.y, key.w, key.h));
+        }
+        for (final TileCache.Key k : keys) {
+            if (tileCache.contains(k) || prefetching.size() >= MAX_PREFETCH
+                    || !prefetching.add(k))
+                continue;
+            gateway.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    try {
+                        if (tileCache.contains(k))
+                            return null;
+                        DataSink ds = getPrefetchDataSink(ctx, pixels);
+                        if (ds == null)
+                            return null;
+                        Plane2D plane = k.w < 0 ? ds.getPlane(k.z, k.t, k.c)
+                                : ds.getTile(k.resolution, k.z, k.t, k.c, k.x,
+                                        k.y, k.w, k.h);
+                        tileCache.put(k, plane);
+                    } catch (Exception e) {
+                        logDebug(RawDataFacility.this, "Could not prefetch "
+                                + k, e);
+                    } finally {
+                        prefetching.remove(k);
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Sets the maximum number of bytes of pixel data held by the tile cache,
+     * evicting the least recently used tiles if needed. The default is
+     * {@link #DEFAULT_TILE_CACHE_SIZE}.
+     * 
+     * @param bytes
+     *            The maximum number of bytes, <code>0</code> to disable the
+     *            cache
+     */
+    public void setTileCacheSize(long bytes) {
+        tileCache.setMaxBytes(Math.max(0, bytes));
+    }
+
+    /**
+     * Get the maximum number of bytes of pixel data held by the tile cache
+     * 
+     * @return See above
+     */
+    public long getTileCacheSize() {
+        return tileCache.getMaxBytes();
+    }
+
+    /**
+     * Enables or disables loading the neighbouring tiles and planes of the
+     * requested ones into the tile cache in the background. Disabled by
+     * default.
+     * 
+     * @param prefetch
+     *            Pass <code>true</code> to enable prefetching
+     */
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Returns <code>true</code> if neighbouring tiles and planes are
+     * prefetched
+     * 
+     * @return See above
+     */
+    public boolean isPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Get the number of requested tiles and planes which were found in the
+     * tile cache
+     * 
+     * @return See above
+     */
+    public long getTileCacheHits() {
+        return tileCache.getHits();
+    }
+
+    /**
+     * Get the number of requested tiles and planes which had to be loaded
+     * from the server
+     * 
+     * @return See above
+     */
+    public long getTileCacheMisses() {
+        return tileCache.getMisses();
+    }
+
+    /**
+     * Removes all tiles and planes from the tile cache
+     */
+    public void clearTileCache() {
+        tileCache.clear();
     }
 
     /**
@@ -225,8 +467,9 @@ public class RawDataFacility extends Facility implements AutoCloseable {
      * @throws DSOutOfServiceException
      *             If an error occurs when initializing the RawPixelsStore
      */
-    private DataSink getDataSink(SecurityContext ctx, PixelsData pixels,
-            Gateway gateway) throws DSOutOfServiceException {
+    private synchronized DataSink getDataSink(SecurityContext ctx,
+            PixelsData pixels, Gateway gateway)
+            throws DSOutOfServiceException {
         DataSink ds = (DataSink) cache.get(ctx.getGroupID(), pixels.getId());
         if (ds == null) {
             ds = new DataSink(ctx, pixels, gateway);
@@ -235,13 +478,44 @@ public class RawDataFacility extends Facility implements AutoCloseable {
         return ds;
     }
 
+    /**
+     * Retrieves the data sink used to prefetch tiles of the pixels. Checked
+     * under the same lock as {@link #close()} so that no pixels store is
+     * created once the facility has been closed.
+     *
+     * @param ctx
+     *            The SecurityContext
+     * @param pixels
+     *            The pixels to handle.
+     * @return See above, <code>null</code> if the facility has been closed.
+     * @throws DSOutOfServiceException
+     *             If an error occurs when initializing the RawPixelsStore
+     */
+    private synchronized DataSink getPrefetchDataSink(SecurityContext ctx,
+            PixelsData pixels) throws DSOutOfServiceException {
+        if (closed)
+            return null;
+        DataSink ds = (DataSink) prefetchCache.get(ctx.getGroupID(),
+                pixels.getId());
+        if (ds == null) {
+            ds = new DataSink(ctx, pixels, gateway);
+            prefetchCache.put(ctx.getGroupID(), pixels.getId(), ds);
+        }
+        return ds;
+    }
+
     @Override
-    public void close() {
-        MapIterator it = cache.mapIterator();
-        while (it.hasNext()) {
-            it.next();
-            ((DataSink) it.getValue()).close();
+    public synchronized void close() {
+        closed = true;
+        tileCache.clear();
+        for (MultiKeyMap sinks : new MultiKeyMap[] { cache, prefetchCache }) {
+            MapIterator it = sinks.mapIterator();
+            while (it.hasNext()) {
+                it.next();
+                ((DataSink) it.getValue()).close();
+            }
         }
+        prefetchCache.clear();
         firePropertyChanged(Gateway.PROP_FACILITY_CLOSED,
                 null, getClass().getName());
         removePropertyChangeListener(null);
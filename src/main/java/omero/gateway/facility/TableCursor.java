@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package omero.gateway.facility;
+
+import java.util.NoSuchElementException;
+
+import omero.ServerError;
+import omero.gateway.exception.DSAccessException;
+import omero.gateway.exception.DSOutOfServiceException;
+import omero.gateway.model.ColumnarTableData;
+import omero.gateway.model.TableDataColumn;
+import omero.grid.Data;
+import omero.grid.TablePrx;
+
+/**
+ * Iterates over a range of rows of an OMERO.table in chunks, keeping the
+ * table open in between. When a chunk is returned by {@link #next()}, the
+ * read of the following chunk has already been sent to the server, so that
+ * it is transferred while the caller processes the current one.
+ *
+ * A cursor is not thread-safe and has to be closed after use. It is created
+ * by
+ * {@link TablesFacility#openTableCursor(omero.gateway.SecurityContext, long, long, long, int, long...)}.
+ *
+ * @since 5.5.0
+ */
+public class TableCursor implements AutoCloseable {
+
+    /** Reference to the facility, for error handling */
+    private final TablesFacility facility;
+
+    /** The open table, <code>null</code> once closed */
+    private TablePrx table;
+
+    /** The id of the original file */
+    private final long fileId;
+
+    /** The column definitions */
+    private final TableDataColumn[] header;
+
+    /** The column indices */
+    private final long[] columns;
+
+    /** The row after the last row to read */
+    private final long end;
+
+    /** The number of rows in the table */
+    private final long numberOfRows;
+
+    /** The number of rows to read at once */
+    private final int chunkSize;
+
+    /** The first row of the outstanding read */
+    private long position;
+
+    /** The outstanding read, <code>null</code> if there is none */
+    private Ice.AsyncResult pending;
+
+    /**
+     * Creates a new instance and requests the first chunk.
+     *
+     * @param facility
+     *            Reference to the facility
+     * @param table
+     *            The open table, which is closed with the cursor
+     * @param fileId
+     *            The id of the original file
+     * @param header
+     *            The column definitions
+     * @param columns
+     *            The column indices
+     * @param rowFrom
+     *            The start row (inclusive)
+     * @param rowTo
+     *            The end row (inclusive)
+     * @param numberOfRows
+     *            The number of rows in the table
+     * @param chunkSize
+     *            The number of rows to read at once
+     */
+    TableCursor(TablesFacility facility, TablePrx table, long fileId,
+            TableDataColumn[] header, long[] columns, long rowFrom,
+            long rowTo, long numberOfRows, int chunkSize) {
+        this.facility = facility;
+        this.table = table;
+        this.fileId = fileId;
+        this.header = header;
+        this.columns = columns;
+        this.end = rowTo + 1;
+        this.numberOfRows = numberOfRows;
+        this.chunkSize = chunkSize;
+        this.position = rowFrom;
+        request();
+    }
+
+    /**
+     * Sends the read of the chunk starting at the current position, if any
+     * rows are left.
+     */
+    private void request() {
+        if (position < end)
+            pending = table.begin_read(columns, position,
+                    Math.min(end, position + chunkSize));
+        else
+            pending = null;
+    }
+
+    /**
+     * Get the column definitions
+     *
+     * @return See above
+     */
+    public TableDataColumn[] getColumns() {
+        return header;
+    }
+
+    /**
+     * Get the number of rows of the table
+     *
+     * @return See above
+     */
+    public long getNumberOfRows() {
+        return numberOfRows;
+    }
+
+    /**
+     * Returns <code>true</code> if there are rows left to read
+     *
+     * @return See above
+     */
+    public boolean hasNext() {
+        return pending != null;
+    }
+
+    /**
+     * Get the next chunk of rows. The read of the following chunk is sent
+     * before this method returns.
+     *
+     * @return See above
+     * @throws DSOutOfServiceException
+     *             If the connection is broken, or not logged in
+     * @throws DSAccessException
+     *             If an error occurred while trying to retrieve data from OMERO
+     *             service.
+     */
+    public ColumnarTableData next() throws DSOutOfServiceException,
+            DSAccessException {
+        if (pending == null)
+            throw new NoSuchElementException();
+        Ice.AsyncResult result = pending;
+        long offset = position;
+        pending = null;
+        try {
+            Data data = table.end_read(result);
+            position += data.rowNumbers.length;
+            if (data.rowNumbers.length > 0)
+                request();
+            ColumnarTableData chunk = new ColumnarTableData(header, data);
+            chunk.setOffset(offset);
+            chunk.setOriginalFileId(fileId);
+            chunk.setNumberOfRows(numberOfRows);
+            return chunk;
+        } catch (Exception e) {
+            facility.handleException(this, e, "Could not load table data");
+        }
+        return null;
+    }
+
+    /**
+     * Waits for an outstanding read and closes the table.
+     */
+    @Override
+    public void close() {
+        if (table == null)
+            return;
+        try {
+            if (pending != null)
+                pending.waitForCompleted();
+            table.close();
+        } catch (ServerError e) {
+            facility.logError(this, "Could not close table", e);
+        } finally {
+            pending = null;
+            table = null;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import omero.gateway.SecurityContext;
 import omero.gateway.exception.DSAccessException;
 import omero.gateway.exception.DSOutOfServiceException;
 import omero.gateway.model.AnnotationData;
+import omero.gateway.model.ColumnarTableData;
 import omero.gateway.model.DataObject;
 import omero.gateway.model.FileAnnotationData;
 import omero.gateway.model.TableData;
@@ -437,54 +438,154 @@ public class TablesFacility extends Facility {
 
             table = sr.openTable(file);
 
-            Column[] cols = table.getHeaders();
+            RowRange range = readRange(table, rowFrom, rowTo, columns);
+            if (range.data == null)
+                return new TableData(range.header,
+                        new Object[range.header.length][0]);
 
-            if (columns == null || columns.length == 0) {
-                columns = new long[cols.length];
-                for (int i = 0; i < cols.length; i++) {
-                    columns[i] = i;
-                }
-            }
-
-            TableDataColumn[] header = new TableDataColumn[columns.length];
-            for (int i = 0; i < columns.length; i++) {
-                int columnIndex = (int) columns[i];
-                header[i] = new TableDataColumn(cols[columnIndex].name,
-                        cols[columnIndex].description, columnIndex,
-                        Object.class);
-            }
+            TablesFacilityHelper helper = new TablesFacilityHelper(this);
+            helper.parseData(range.data, range.header);
 
-            if (table.getNumberOfRows() == 0)
-                return new TableData(header, new Object[columns.length][0]);
+            TableData result = new TableData(range.header,
+                    helper.getDataArray());
+            result.setOffset(range.rowFrom);
+            result.setOriginalFileId(fileId);
+            result.setNumberOfRows(range.numberOfRows);
+            return result;
+        } catch (Exception e) {
+            handleException(this, e, "Could not load table data");
+        } finally {
+            if (table != null)
+                try {
+                    table.close();
+                } catch (ServerError e) {
+                    logError(this, "Could not close table", e);
+                }
+        }
+        return null;
+    }
 
-            if (rowFrom < 0)
-                rowFrom = 0;
+    /**
+     * Load data from a table, keeping the primitive column arrays as
+     * received from the server rather than creating an object per cell.
+     * This is preferable to
+     * {@link #getTable(SecurityContext, long, long, long, long...)} for
+     * large tables.
+     *
+     * @param ctx
+     *            The {@link SecurityContext}
+     * @param fileId
+     *            The id of the {@link OriginalFile} which stores the table
+     * @param rowFrom
+     *            The start row (inclusive)
+     * @param rowTo
+     *            The end row (inclusive) (can be <code>-1</code> in which case
+     *            {@link TablesFacility#DEFAULT_MAX_ROWS_TO_FETCH} rows will be
+     *            fetched)
+     * @param columns
+     *            The columns to take into account (can be left unspecified, in
+     *            which case all columns will used)
+     * @return The specified data
+     * @throws DSOutOfServiceException
+     *             If the connection is broken, or not logged in
+     * @throws DSAccessException
+     *             If an error occurred while trying to retrieve data from OMERO
+     *             service.
+     */
+    public ColumnarTableData getColumnarTable(SecurityContext ctx,
+            long fileId, long rowFrom, long rowTo, long... columns)
+            throws DSOutOfServiceException, DSAccessException {
+        if (fileId < 0)
+            return null;
 
-            long maxRow = table.getNumberOfRows() - 1;
+        TablePrx table = null;
+        try {
+            OriginalFile file = new OriginalFileI(fileId, false);
+            SharedResourcesPrx sr = gateway.getSharedResources(ctx);
+            if (!sr.areTablesEnabled()) {
+                throw new DSAccessException(
+                        "Tables feature is not enabled on this server!");
+            }
 
-            if (rowTo < 0)
-                rowTo = rowFrom + DEFAULT_MAX_ROWS_TO_FETCH;
-            if (rowTo > maxRow)
-                rowTo = maxRow;
+            table = sr.openTable(file);
 
-            if (rowTo - rowFrom > Integer.MAX_VALUE)
-                throw new Exception("Can't fetch more than "
-                        + (Integer.MAX_VALUE - 1) + " rows at once.");
+            RowRange range = readRange(table, rowFrom, rowTo, columns);
+            ColumnarTableData result = range.data == null
+                    ? ColumnarTableData.empty(range.header, range.headers)
+                    : new ColumnarTableData(range.header, range.data);
+            result.setOffset(range.rowFrom);
+            result.setOriginalFileId(fileId);
+            result.setNumberOfRows(range.numberOfRows);
+            return result;
+        } catch (Exception e) {
+            handleException(this, e, "Could not load table data");
+        } finally {
+            if (table != null)
+                try {
+                    table.close();
+                } catch (ServerError e) {
+                    logError(this, "Could not close table", e);
+                }
+        }
+        return null;
+    }
 
-            TableData result = null;
+    /**
+     * Open a cursor over a range of rows of a table. The table is kept
+     * open until the cursor is closed and the rows are read in chunks, the
+     * next chunk being requested while the current one is processed.
+     *
+     * @param ctx
+     *            The {@link SecurityContext}
+     * @param fileId
+     *            The id of the {@link OriginalFile} which stores the table
+     * @param rowFrom
+     *            The start row (inclusive)
+     * @param rowTo
+     *            The end row (inclusive) (can be <code>-1</code> in which case
+     *            all rows up to the end of the table will be read)
+     * @param chunkSize
+     *            The number of rows to read at once (can be <code>-1</code> in
+     *            which case {@link TablesFacility#DEFAULT_MAX_ROWS_TO_FETCH}
+     *            rows will be read at once)
+     * @param columns
+     *            The columns to take into account (can be left unspecified, in
+     *            which case all columns will used)
+     * @return The cursor, which has to be closed after use, or
+     *         <code>null</code> if the file id is invalid
+     * @throws DSOutOfServiceException
+     *             If the connection is broken, or not logged in
+     * @throws DSAccessException
+     *             If an error occurred while trying to retrieve data from OMERO
+     *             service.
+     */
+    public TableCursor openTableCursor(SecurityContext ctx, long fileId,
+            long rowFrom, long rowTo, int chunkSize, long... columns)
+            throws DSOutOfServiceException, DSAccessException {
+        if (fileId < 0)
+            return null;
 
-            Data data = table.read(columns, rowFrom, rowTo + 1);
+        TablePrx table = null;
+        try {
+            OriginalFile file = new OriginalFileI(fileId, false);
+            SharedResourcesPrx sr = gateway.getSharedResources(ctx);
+            if (!sr.areTablesEnabled()) {
+                throw new DSAccessException(
+                        "Tables feature is not enabled on this server!");
+            }
 
-            TablesFacilityHelper helper = new TablesFacilityHelper(this);
-            helper.parseData(data, header);
+            table = sr.openTable(file);
 
-            result = new TableData(header, helper.getDataArray());
-            result.setOffset(rowFrom);
-            result.setOriginalFileId(fileId);
-            result.setNumberOfRows(maxRow + 1);
-            return result;
+            RowRange range = resolveRange(table, rowFrom,
+                    rowTo < 0 ? Long.MAX_VALUE : rowTo, columns);
+            TableCursor cursor = new TableCursor(this, table, fileId,
+                    range.header, range.columns, range.rowFrom,
+                    range.rowTo, range.numberOfRows,
+                    chunkSize < 1 ? DEFAULT_MAX_ROWS_TO_FETCH : chunkSize);
+            table = null;
+            return cursor;
         } catch (Exception e) {
-            handleException(this, e, "Could not load table data");
+            handleException(this, e, "Could not open table");
         } finally {
             if (table != null)
                 try {
@@ -496,6 +597,128 @@ public class TablesFacility extends Facility {
         return null;
     }
 
+    /**
+     * Read a range of rows from an open table
+     *
+     * @param table
+     *            The table
+     * @param rowFrom
+     *            The start row (inclusive)
+     * @param rowTo
+     *            The end row (inclusive) (can be <code>-1</code> in which case
+     *            {@link TablesFacility#DEFAULT_MAX_ROWS_TO_FETCH} rows will be
+     *            fetched)
+     * @param columns
+     *            The columns to take into account (can be left unspecified, in
+     *            which case all columns will used)
+     * @return The header and the data, which is <code>null</code> if the
+     *         table or the range is empty
+     * @throws Exception
+     *             If the table could not be read
+     */
+    private RowRange readRange(TablePrx table, long rowFrom, long rowTo,
+            long[] columns) throws Exception {
+        RowRange range = resolveRange(table, rowFrom, rowTo, columns);
+        if (range.numberOfRows == 0 || range.rowFrom > range.rowTo)
+            return range;
+
+        if (range.rowTo - range.rowFrom > Integer.MAX_VALUE)
+            throw new Exception("Can't fetch more than "
+                    + (Integer.MAX_VALUE - 1) + " rows at once.");
+
+        range.data = table.read(range.columns, range.rowFrom,
+                range.rowTo + 1);
+        return range;
+    }
+
+    /**
+     * Determine the columns and the bounds of a range of rows of an open
+     * table
+     *
+     * @param table
+     *            The table
+     * @param rowFrom
+     *            The start row (inclusive)
+     * @param rowTo
+     *            The end row (inclusive) (can be <code>-1</code> in which case
+     *            {@link TablesFacility#DEFAULT_MAX_ROWS_TO_FETCH} rows will be
+     *            taken into account)
+     * @param columns
+     *            The columns to take into account (can be left unspecified, in
+     *            which case all columns will used)
+     * @return The header and the bounds, without data
+     * @throws ServerError
+     *             If the table could not be accessed
+     */
+    private RowRange resolveRange(TablePrx table, long rowFrom, long rowTo,
+            long[] columns) throws ServerError {
+        Column[] cols = table.getHeaders();
+
+        if (columns == null || columns.length == 0) {
+            columns = new long[cols.length];
+            for (int i = 0; i < cols.length; i++) {
+                columns[i] = i;
+            }
+        }
+
+        RowRange range = new RowRange();
+        range.columns = columns;
+        range.header = new TableDataColumn[columns.length];
+        range.headers = new Column[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            int columnIndex = (int) columns[i];
+            range.headers[i] = cols[columnIndex];
+            range.header[i] = new TableDataColumn(cols[columnIndex].name,
+                    cols[columnIndex].description, columnIndex,
+                    Object.class);
+        }
+
+        range.numberOfRows = table.getNumberOfRows();
+        if (range.numberOfRows == 0)
+            return range;
+
+        if (rowFrom < 0)
+            rowFrom = 0;
+
+        long maxRow = range.numberOfRows - 1;
+
+        if (rowTo < 0)
+            rowTo = rowFrom + DEFAULT_MAX_ROWS_TO_FETCH;
+        if (rowTo > maxRow)
+            rowTo = maxRow;
+
+        range.rowFrom = rowFrom;
+        range.rowTo = rowTo;
+        return range;
+    }
+
+    /**
+     * The result of {@link TablesFacility#readRange(TablePrx, long, long, long[])}
+     */
+    private static class RowRange {
+
+        /** The column definitions */
+        TableDataColumn[] header;
+
+        /** The omero.grid columns, without data */
+        Column[] headers;
+
+        /** The column indices */
+        long[] columns;
+
+        /** The data, <code>null</code> if the table is empty */
+        Data data;
+
+        /** The first row */
+        long rowFrom;
+
+        /** The last row (inclusive), <code>-1</code> if the table is empty */
+        long rowTo = -1;
+
+        /** The number of rows in the table */
+        long numberOfRows;
+    }
+
     /**
      * Get all available tables for a the specified object
      *
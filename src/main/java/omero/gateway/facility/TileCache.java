@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package omero.gateway.facility;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import omero.gateway.rnd.Plane2D;
+
+/**
+ * A least recently used cache of tiles and planes, bounded by the number of
+ * bytes of pixel data it holds. Planes larger than the whole cache are not
+ * kept. The cache counts the lookups which found a tile and those which did
+ * not.
+ *
+ * This class is thread-safe.
+ *
+ * @since 5.5.0
+ */
+class TileCache {
+
+    /**
+     * Identifies a tile, or a whole plane, of a pixels set.
+     */
+    static final class Key {
+
+        final long pixelsId;
+
+        final int resolution, z, c, t, x, y, w, h;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param pixelsId
+         *            The id of the pixels set
+         * @param resolution
+         *            The resolution level, <code>-1</code> for the full
+         *            resolution
+         * @param z
+         *            The z-section
+         * @param c
+         *            The channel
+         * @param t
+         *            The timepoint
+         * @param x
+         *            The x coordinate
+         * @param y
+         *            The y coordinate
+         * @param w
+         *            The width of the tile, <code>-1</code> for a whole plane
+         * @param h
+         *            The height of the tile, <code>-1</code> for a whole plane
+         */
+        Key(long pixelsId, int resolution, int z, int c, int t, int x, int y,
+                int w, int h) {
+            this.pixelsId = pixelsId;
+            this.resolution = resolution;
+            this.z = z;
+            this.c = c;
+            this.t = t;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return pixelsId == k.pixelsId && resolution == k.resolution
+                    && z == k.z && c == k.c && t == k.t && x == k.x
+                    && y == k.y && w == k.w && h == k.h;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (pixelsId ^ (pixelsId >>> 32));
+            result = 31 * result + resolution;
+            result = 31 * result + z;
+            result = 31 * result + c;
+            result = 31 * result + t;
+            result = 31 * result + x;
+            result = 31 * result + y;
+            result = 31 * result + w;
+            result = 31 * result + h;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "Tile[pixels=" + pixelsId + ", resolution=" + resolution
+                    + ", z=" + z + ", c=" + c + ", t=" + t + ", x=" + x
+                    + ", y=" + y + ", w=" + w + ", h=" + h + "]";
+        }
+    }
+
+    /** The cached tiles, in access order */
+    private final LinkedHashMap<Key, Plane2D> tiles = new LinkedHashMap<Key, Plane2D>(
+            16, 0.75f, true);
+
+    /** The maximum number of bytes to hold */
+    private long maxBytes;
+
+    /** The number of bytes held */
+    private long bytes;
+
+    /** The number of lookups which found a tile */
+    private long hits;
+
+    /** The number of lookups which did not find a tile */
+    private long misses;
+
+    /**
+     * Creates a new instance
+     *
+     * @param maxBytes
+     *            The maximum number of bytes of pixel data to hold
+     */
+    TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the number of bytes of pixel data of the given plane
+     *
+     * @param plane
+     *            The plane
+     * @return See above
+     */
+    private static long sizeOf(Plane2D plane) {
+        return plane.getBuffer().capacity();
+    }
+
+    /**
+     * Removes the least recently used tiles until no more than the maximum
+     * number of bytes is held
+     */
+    private void evict() {
+        Iterator<Map.Entry<Key, Plane2D>> it = tiles.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= sizeOf(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    /**
+     * Looks up a tile, counting a hit or a miss
+     *
+     * @param key
+     *            The tile
+     * @return The cached tile or <code>null</code>
+     */
+    synchronized Plane2D get(Key key) {
+        Plane2D plane = tiles.get(key);
+        if (plane == null)
+            misses++;
+        else
+            hits++;
+        return plane;
+    }
+
+    /**
+     * Returns <code>true</code> if the tile is cached, without counting a
+     * lookup or changing the order of eviction
+     *
+     * @param key
+     *            The tile
+     * @return See above
+     */
+    synchronized boolean contains(Key key) {
+        return tiles.containsKey(key);
+    }
+
+    /**
+     * Adds a tile, evicting the least recently used ones if needed
+     *
+     * @param key
+     *            The tile
+     * @param plane
+     *            The pixel data
+     */
+    synchronized void put(Key key, Plane2D plane) {
+        long size = sizeOf(plane);
+        if (size > maxBytes)
+            return;
+        Plane2D previous = tiles.put(key, plane);
+        if (previous != null)
+            bytes -= sizeOf(previous);
+        bytes += size;
+        evict();
+    }
+
+    /**
+     * Sets the maximum number of bytes to hold, evicting tiles if needed
+     *
+     * @param maxBytes
+     *            The maximum number of bytes, <code>0</code> to disable the
+     *            cache
+     */
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Get the maximum number of bytes to hold
+     *
+     * @return See above
+     */
+    synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get the number of bytes held
+     *
+     * @return See above
+     */
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get the number of lookups which found a tile
+     *
+     * @return See above
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of lookups which did not find a tile
+     *
+     * @return See above
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Removes all tiles, keeping the counters
+     */
+    synchronized void clear() {
+        tiles.clear();
+        bytes = 0;
+    }
+}
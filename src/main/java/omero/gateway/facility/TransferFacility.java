@@ -70,4 +70,30 @@ public class TransferFacility extends Facility {
         return helper.downloadImage(context, targetPath, imageId);
     }
 
+    /**
+     * Downloads the original file of an image from the server, reading
+     * several files, and ranges of large files, concurrently. Each file is
+     * verified against its checksum as it is written; files which fail
+     * verification are deleted. A file left partially downloaded by an
+     * earlier call is resumed rather than downloaded again.
+     *
+     * @param context The security context.
+     * @param targetPath Path to the file.
+     * @param imageId The identifier of the image.
+     * @param threads The maximum number of concurrent reads.
+     * @return The files which were downloaded and verified
+     * @throws DSOutOfServiceException
+     *             If the connection is broken, or not logged in
+     * @throws DSAccessException
+     *             If an error occurred while trying to retrieve data from OMERO
+     *             service.
+     */
+    public List<File> downloadImage(SecurityContext context, String targetPath,
+            long imageId, int threads) throws DSAccessException,
+            DSOutOfServiceException {
+        if (imageId < 0)
+            return Collections.emptyList();
+        return helper.downloadImage(context, targetPath, imageId, threads);
+    }
+
 }
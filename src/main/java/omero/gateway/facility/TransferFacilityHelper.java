@@ -52,7 +52,7 @@ import org.apache.commons.collections.CollectionUtils;
 public class TransferFacilityHelper {
 
     /** Maximum size of bytes read at once. */
-    private static final int INC = 262144;//
+    static final int INC = 262144;//
 
     private BrowseFacility browse;
 
@@ -91,71 +91,20 @@ public class TransferFacilityHelper {
             long imageId) throws DSAccessException, DSOutOfServiceException {
         List<File> files = new ArrayList<File>();
 
-        ImageData image = browse.findObject(context, ImageData.class, imageId,
-                true);
-
-        String query;
-        List<?> filesets;
-        try {
-            IQueryPrx service = gateway.getQueryService(context);
-            ParametersI param = new ParametersI();
-            long id;
-            if (image.isFSImage()) {
-                id = image.getId();
-                List<RType> l = new ArrayList<RType>();
-                l.add(omero.rtypes.rlong(id));
-                param.add("imageIds", omero.rtypes.rlist(l));
-                query = createFileSetQuery();
-            } else {// Prior to FS
-                if (image.isArchived()) {
-                    StringBuffer buffer = new StringBuffer();
-                    id = image.getDefaultPixels().getId();
-                    buffer.append("select ofile from OriginalFile as ofile ");
-                    buffer.append("join fetch ofile.hasher ");
-                    buffer.append("left join ofile.pixelsFileMaps as pfm ");
-                    buffer.append("left join pfm.child as child ");
-                    buffer.append("where child.id = :id");
-                    param.map.put("id", omero.rtypes.rlong(id));
-                    query = buffer.toString();
-                } else
-                    return null;
-            }
-            filesets = service.findAllByQuery(query, param);
-        } catch (Exception e) {
-            throw new DSAccessException("Cannot retrieve original file", e);
-        }
-
-        if (CollectionUtils.isEmpty(filesets))
-            return files;
-        Iterator<?> i;
-        List<OriginalFile> values = new ArrayList<OriginalFile>();
-        if (image.isFSImage()) {
-            i = filesets.iterator();
-            Fileset set;
-            List<FilesetEntry> entries;
-            Iterator<FilesetEntry> j;
-            while (i.hasNext()) {
-                set = (Fileset) i.next();
-                entries = set.copyUsedFiles();
-                j = entries.iterator();
-                while (j.hasNext()) {
-                    FilesetEntry fs = j.next();
-                    values.add(fs.getOriginalFile());
-                }
-            }
-        } else
-            values.addAll((List<OriginalFile>) filesets);
+        List<OriginalFile> values = loadOriginalFiles(context, imageId);
+        if (values == null)
+            return null;
 
         RawFileStorePrx store = null;
         OriginalFile of;
         long size;
         FileOutputStream stream = null;
         long offset = 0;
-        i = values.iterator();
+        Iterator<OriginalFile> i = values.iterator();
         File f = null;
 
         while (i.hasNext()) {
-            of = (OriginalFile) i.next();
+            of = i.next();
 
             try {
                 store = gateway.getRawFileService(context);
@@ -205,6 +154,105 @@ public class TransferFacilityHelper {
         return files;
     }
 
+    /**
+     * Downloads the original files of an image from the server, transferring
+     * several files and ranges of large files concurrently. Each file is
+     * verified against its checksum as it is written, and a file which was
+     * partially downloaded by an earlier attempt is resumed.
+     *
+     * @param context
+     *            The security context.
+     * @param targetPath
+     *            Path to the file.
+     * @param imageId
+     *            The identifier of the image.
+     * @param threads
+     *            The maximum number of concurrent reads.
+     * @return See above
+     * @throws DSOutOfServiceException
+     * @throws DSAccessException
+     */
+    List<File> downloadImage(SecurityContext context, String targetPath,
+            long imageId, int threads) throws DSAccessException,
+            DSOutOfServiceException {
+        List<OriginalFile> values = loadOriginalFiles(context, imageId);
+        if (values == null)
+            return null;
+        return new ParallelFileDownload(gateway, context, threads).download(
+                values, targetPath);
+    }
+
+    /**
+     * Loads the original files of an image, along with their hashers.
+     *
+     * @param context
+     *            The security context.
+     * @param imageId
+     *            The identifier of the image.
+     * @return The files or <code>null</code> if the image was imported prior
+     *         to FS and its files were not archived.
+     * @throws DSOutOfServiceException
+     * @throws DSAccessException
+     */
+    private List<OriginalFile> loadOriginalFiles(SecurityContext context,
+            long imageId) throws DSAccessException, DSOutOfServiceException {
+        ImageData image = browse.findObject(context, ImageData.class, imageId,
+                true);
+
+        String query;
+        List<?> filesets;
+        try {
+            IQueryPrx service = gateway.getQueryService(context);
+            ParametersI param = new ParametersI();
+            long id;
+            if (image.isFSImage()) {
+                id = image.getId();
+                List<RType> l = new ArrayList<RType>();
+                l.add(omero.rtypes.rlong(id));
+                param.add("imageIds", omero.rtypes.rlist(l));
+                query = createFileSetQuery();
+            } else {// Prior to FS
+                if (image.isArchived()) {
+                    StringBuffer buffer = new StringBuffer();
+                    id = image.getDefaultPixels().getId();
+                    buffer.append("select ofile from OriginalFile as ofile ");
+                    buffer.append("join fetch ofile.hasher ");
+                    buffer.append("left join ofile.pixelsFileMaps as pfm ");
+                    buffer.append("left join pfm.child as child ");
+                    buffer.append("where child.id = :id");
+                    param.map.put("id", omero.rtypes.rlong(id));
+                    query = buffer.toString();
+                } else
+                    return null;
+            }
+            filesets = service.findAllByQuery(query, param);
+        } catch (Exception e) {
+            throw new DSAccessException("Cannot retrieve original file", e);
+        }
+
+        List<OriginalFile> values = new ArrayList<OriginalFile>();
+        if (CollectionUtils.isEmpty(filesets))
+            return values;
+        Iterator<?> i;
+        if (image.isFSImage()) {
+            i = filesets.iterator();
+            Fileset set;
+            List<FilesetEntry> entries;
+            Iterator<FilesetEntry> j;
+            while (i.hasNext()) {
+                set = (Fileset) i.next();
+                entries = set.copyUsedFiles();
+                j = entries.iterator();
+                while (j.hasNext()) {
+                    FilesetEntry fs = j.next();
+                    values.add(fs.getOriginalFile());
+                }
+            }
+        } else
+            values.addAll((List<OriginalFile>) filesets);
+        return values;
+    }
+
     /**
      * Creates the query to load the file set corresponding to a given image.
      *
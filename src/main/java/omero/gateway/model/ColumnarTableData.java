@@ -0,0 +1,507 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package omero.gateway.model;
+
+import omero.grid.BoolColumn;
+import omero.grid.Column;
+import omero.grid.Data;
+import omero.grid.DatasetColumn;
+import omero.grid.DoubleArrayColumn;
+import omero.grid.DoubleColumn;
+import omero.grid.FileColumn;
+import omero.grid.FloatArrayColumn;
+import omero.grid.ImageColumn;
+import omero.grid.LongArrayColumn;
+import omero.grid.LongColumn;
+import omero.grid.MaskColumn;
+import omero.grid.PlateColumn;
+import omero.grid.RoiColumn;
+import omero.grid.StringColumn;
+import omero.grid.WellColumn;
+import omero.model.FileAnnotationI;
+import omero.model.ImageI;
+import omero.model.PlateI;
+import omero.model.RoiI;
+import omero.model.WellSampleI;
+
+/**
+ * A column oriented 'container' for an OMERO.table which keeps the primitive
+ * arrays of the omero.grid columns as they were received from the server.
+ * Unlike {@link TableData}, no object is created per cell; the same
+ * objects as {@link TableData#getData()} would contain are only created
+ * when requested via {@link #getValue(int, int)}.
+ *
+ * @since 5.5.0
+ */
+public class ColumnarTableData {
+
+    /** The column definitions */
+    private final TableDataColumn columns[];
+
+    /** The omero.grid columns holding the data */
+    private final Column data[];
+
+    /** The number of rows loaded */
+    private final int rowCount;
+
+    /**
+     * The offset, if this ColumnarTableData represents only a subset of the
+     * original table
+     */
+    private long offset = 0;
+
+    /** The Id of the original file */
+    private long originalFileId = -1;
+
+    /** Number of rows in the original table */
+    private long numberOfRows = 0;
+
+    /**
+     * Creates a new instance, updating the column definitions with the
+     * types of the values {@link #getValue(int, int)} returns.
+     *
+     * @param columns
+     *            The column definitions
+     * @param data
+     *            The data as read from the table
+     */
+    public ColumnarTableData(TableDataColumn[] columns, Data data) {
+        this.columns = columns != null ? columns : new TableDataColumn[0];
+        this.data = data != null && data.columns != null ? data.columns
+                : new Column[0];
+        this.rowCount = data != null && data.rowNumbers != null ? data.rowNumbers.length
+                : 0;
+        if (this.columns.length != this.data.length)
+            throw new IllegalArgumentException(
+                    "Number of column definitions must match the number of columns of the table");
+        for (int i = 0; i < this.data.length; i++)
+            this.columns[i].setType(getType(this.data[i]));
+    }
+
+    /**
+     * Creates an instance without rows, holding an empty column of the
+     * same type as each of the given table headers; used when the table or
+     * the requested range of rows is empty.
+     *
+     * @param columns
+     *            The column definitions
+     * @param headers
+     *            The omero.grid columns as returned by the table's
+     *            <code>getHeaders()</code>, one per column definition
+     * @return See above
+     */
+    public static ColumnarTableData empty(TableDataColumn[] columns,
+            Column[] headers) {
+        Data data = new Data();
+        data.rowNumbers = new long[0];
+        data.columns = new Column[headers != null ? headers.length : 0];
+        for (int i = 0; i < data.columns.length; i++)
+            data.columns[i] = emptyColumn(headers[i]);
+        return new ColumnarTableData(columns, data);
+    }
+
+    /**
+     * Creates a column of the same type, name and description as the given
+     * one, holding no values.
+     *
+     * @param header
+     *            The omero.grid column
+     * @return See above
+     */
+    private static Column emptyColumn(Column header) {
+        Column c;
+        if (header instanceof BoolColumn) {
+            c = new BoolColumn();
+            ((BoolColumn) c).values = new boolean[0];
+        } else if (header instanceof DoubleArrayColumn) {
+            c = new DoubleArrayColumn();
+            ((DoubleArrayColumn) c).size = ((DoubleArrayColumn) header).size;
+            ((DoubleArrayColumn) c).values = new double[0][];
+        } else if (header instanceof DoubleColumn) {
+            c = new DoubleColumn();
+            ((DoubleColumn) c).values = new double[0];
+        } else if (header instanceof FileColumn) {
+            c = new FileColumn();
+            ((FileColumn) c).values = new long[0];
+        } else if (header instanceof FloatArrayColumn) {
+            c = new FloatArrayColumn();
+            ((FloatArrayColumn) c).size = ((FloatArrayColumn) header).size;
+            ((FloatArrayColumn) c).values = new float[0][];
+        } else if (header instanceof ImageColumn) {
+            c = new ImageColumn();
+            ((ImageColumn) c).values = new long[0];
+        } else if (header instanceof LongArrayColumn) {
+            c = new LongArrayColumn();
+            ((LongArrayColumn) c).size = ((LongArrayColumn) header).size;
+            ((LongArrayColumn) c).values = new long[0][];
+        } else if (header instanceof LongColumn) {
+            c = new LongColumn();
+            ((LongColumn) c).values = new long[0];
+        } else if (header instanceof MaskColumn) {
+            MaskColumn mc = new MaskColumn();
+            mc.imageId = new long[0];
+            mc.theZ = new int[0];
+            mc.theT = new int[0];
+            mc.x = new double[0];
+            mc.y = new double[0];
+            mc.w = new double[0];
+            mc.h = new double[0];
+            mc.bytes = new byte[0][];
+            c = mc;
+        } else if (header instanceof PlateColumn) {
+            c = new PlateColumn();
+            ((PlateColumn) c).values = new long[0];
+        } else if (header instanceof RoiColumn) {
+            c = new RoiColumn();
+            ((RoiColumn) c).values = new long[0];
+        } else if (header instanceof StringColumn) {
+            c = new StringColumn();
+            ((StringColumn) c).size = ((StringColumn) header).size;
+            ((StringColumn) c).values = new String[0];
+        } else if (header instanceof WellColumn) {
+            c = new WellColumn();
+            ((WellColumn) c).values = new long[0];
+        } else if (header instanceof DatasetColumn) {
+            c = new DatasetColumn();
+            ((DatasetColumn) c).values = new long[0];
+        } else {
+            c = new Column();
+        }
+        c.name = header.name;
+        c.description = header.description;
+        return c;
+    }
+
+    /**
+     * Get the type of the values which {@link TableData} uses for a
+     * column.
+     *
+     * @param column
+     *            The omero.grid column
+     * @return See above
+     */
+    public static Class<?> getType(Column column) {
+        if (column instanceof BoolColumn)
+            return Boolean.class;
+        if (column instanceof DoubleArrayColumn)
+            return Double[].class;
+        if (column instanceof DoubleColumn)
+            return Double.class;
+        if (column instanceof FileColumn)
+            return FileAnnotationData.class;
+        if (column instanceof FloatArrayColumn)
+            return Float[].class;
+        if (column instanceof ImageColumn)
+            return ImageData.class;
+        if (column instanceof LongArrayColumn)
+            return Long[].class;
+        if (column instanceof LongColumn)
+            return Long.class;
+        if (column instanceof MaskColumn)
+            return MaskData.class;
+        if (column instanceof PlateColumn)
+            return PlateData.class;
+        if (column instanceof RoiColumn)
+            return ROIData.class;
+        if (column instanceof StringColumn)
+            return String.class;
+        if (column instanceof WellColumn)
+            return WellSampleData.class;
+        return Object.class;
+    }
+
+    /**
+     * Get the headers
+     *
+     * @return See above
+     */
+    public TableDataColumn[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * Get the number of rows loaded
+     *
+     * @return See above
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Get the omero.grid column holding the data of a column
+     *
+     * @param column
+     *            The column index
+     * @return See above
+     */
+    public Column getColumn(int column) {
+        return data[column];
+    }
+
+    /**
+     * Get the values of a {@link DoubleColumn}
+     *
+     * @param column
+     *            The column index
+     * @return See above
+     */
+    public double[] getDoubles(int column) {
+        return column(column, DoubleColumn.class).values;
+    }
+
+    /**
+     * Get the values of a {@link LongColumn}, or the IDs held by a
+     * file, image, plate, ROI or well column
+     *
+     * @param column
+     *            The column index
+     * @return See above
+     */
+    public long[] getLongs(int column) {
+        Column c = data[column];
+        if (c instanceof LongColumn)
+            return ((LongColumn) c).values;
+        if (c instanceof FileColumn)
+            return ((FileColumn) c).values;
+        if (c instanceof ImageColumn)
+            return ((ImageColumn) c).values;
+        if (c instanceof PlateColumn)
+            return ((PlateColumn) c).values;
+        if (c instanceof RoiColumn)
+            return ((RoiColumn) c).values;
+        if (c instanceof WellColumn)
+            return ((WellColumn) c).values;
+        throw typeMismatch(column, "long");
+    }
+
+    /**
+     * Get the values of a {@link BoolColumn}
+     *
+     * @param column
+     *            The column index
+     * @return See above
+     */
+    public boolean[] getBooleans(int column) {
+        return column(column, BoolColumn.class).values;
+    }
+
+    /**
+     * Get the values of a {@link StringColumn}
+     *
+     * @param column
+     *            The column index
+     * @return See above
+     */
+    public String[] getStrings(int column) {
+        return column(column, StringColumn.class).values;
+    }
+
+    /**
+     * Get the values of a {@link DoubleArrayColumn}
+     *
+     * @param column
+     *            The column index
+     * @return See above
+     */
+    public double[][] getDoubleArrays(int column) {
+        return column(column, DoubleArrayColumn.class).values;
+    }
+
+    /**
+     * Get the values of a {@link FloatArrayColumn}
+     *
+     * @param column
+     *            The column index
+     * @return See above
+     */
+    public float[][] getFloatArrays(int column) {
+        return column(column, FloatArrayColumn.class).values;
+    }
+
+    /**
+     * Get the values of a {@link LongArrayColumn}
+     *
+     * @param column
+     *            The column index
+     * @return See above
+     */
+    public long[][] getLongArrays(int column) {
+        return column(column, LongArrayColumn.class).values;
+    }
+
+    /**
+     * Get the value of a single cell as the same type of object which
+     * {@link TableData#getData()} would hold for it. The object is created
+     * on each call.
+     *
+     * @param column
+     *            The column index
+     * @param row
+     *            The row index, relative to the offset
+     * @return See above
+     */
+    public Object getValue(int column, int row) {
+        Column c = data[column];
+        if (c instanceof BoolColumn)
+            return ((BoolColumn) c).values[row];
+        if (c instanceof DoubleArrayColumn) {
+            double[] src = ((DoubleArrayColumn) c).values[row];
+            Double[] dst = new Double[src.length];
+            for (int k = 0; k < src.length; k++)
+                dst[k] = src[k];
+            return dst;
+        }
+        if (c instanceof DoubleColumn)
+            return ((DoubleColumn) c).values[row];
+        if (c instanceof FileColumn)
+            return new FileAnnotationData(new FileAnnotationI(
+                    ((FileColumn) c).values[row], false));
+        if (c instanceof FloatArrayColumn) {
+            float[] src = ((FloatArrayColumn) c).values[row];
+            Float[] dst = new Float[src.length];
+            for (int k = 0; k < src.length; k++)
+                dst[k] = src[k];
+            return dst;
+        }
+        if (c instanceof ImageColumn)
+            return new ImageData(new ImageI(((ImageColumn) c).values[row],
+                    false));
+        if (c instanceof LongArrayColumn) {
+            long[] src = ((LongArrayColumn) c).values[row];
+            Long[] dst = new Long[src.length];
+            for (int k = 0; k < src.length; k++)
+                dst[k] = src[k];
+            return dst;
+        }
+        if (c instanceof LongColumn)
+            return ((LongColumn) c).values[row];
+        if (c instanceof MaskColumn) {
+            MaskColumn mc = (MaskColumn) c;
+            MaskData md = new MaskData(mc.x[row], mc.y[row], mc.w[row],
+                    mc.h[row], mc.bytes[row]);
+            md.setZ(mc.theZ[row]);
+            md.setT(mc.theT[row]);
+            return md;
+        }
+        if (c instanceof PlateColumn)
+            return new PlateData(new PlateI(((PlateColumn) c).values[row],
+                    false));
+        if (c instanceof RoiColumn)
+            return new ROIData(new RoiI(((RoiColumn) c).values[row], false));
+        if (c instanceof StringColumn)
+            return ((StringColumn) c).values[row];
+        if (c instanceof WellColumn)
+            return new WellSampleData(new WellSampleI(
+                    ((WellColumn) c).values[row], false));
+        return null;
+    }
+
+    /**
+     * Creates a {@link TableData} holding an object per cell, for callers
+     * which need the data in that form.
+     *
+     * @return See above
+     */
+    public TableData toTableData() {
+        Object[][] values = new Object[data.length][rowCount];
+        for (int i = 0; i < data.length; i++)
+            for (int j = 0; j < rowCount; j++)
+                values[i][j] = getValue(i, j);
+        TableData result = new TableData(columns, values);
+        result.setOffset(offset);
+        result.setOriginalFileId(originalFileId);
+        result.setNumberOfRows(numberOfRows);
+        return result;
+    }
+
+    /**
+     * Get the row offset (if this {@link ColumnarTableData} represents only a
+     * subset of the original table)
+     *
+     * @return See above
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Set the row offset
+     *
+     * @param offset
+     *            The offset
+     */
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * Get the original file id
+     *
+     * @return See above
+     */
+    public long getOriginalFileId() {
+        return originalFileId;
+    }
+
+    /**
+     * Set the original file id
+     *
+     * @param originalFileId
+     *            The original file id
+     */
+    public void setOriginalFileId(long originalFileId) {
+        this.originalFileId = originalFileId;
+    }
+
+    /**
+     * Get the number of rows of the original table
+     *
+     * @return See above
+     */
+    public long getNumberOfRows() {
+        return numberOfRows;
+    }
+
+    /**
+     * Set the number of rows of the original table
+     *
+     * @param numberOfRows
+     *            The number of rows
+     */
+    public void setNumberOfRows(long numberOfRows) {
+        this.numberOfRows = numberOfRows;
+    }
+
+    /**
+     * Get a column as the given type of omero.grid column
+     */
+    private <T extends Column> T column(int column, Class<T> type) {
+        Column c = data[column];
+        if (!type.isInstance(c))
+            throw typeMismatch(column, type.getSimpleName());
+        return type.cast(c);
+    }
+
+    private IllegalArgumentException typeMismatch(int column, String expected) {
+        return new IllegalArgumentException(expected
+                + " type expected for column " + column + ", but is "
+                + data[column].getClass().getSimpleName() + " !");
+    }
+}
@@ -24,6 +24,7 @@ import java.util.Map;
 
 import omero.ServerError;
 import omero.api.RawPixelsStorePrx;
+import omero.api.ResolutionDescription;
 import omero.gateway.Gateway;
 import omero.gateway.SecurityContext;
 import omero.gateway.exception.DSOutOfServiceException;
@@ -75,12 +76,6 @@ public class DataSink implements AutoCloseable
     /** The data source. */
     private PixelsData source;
 
-    /** The number of bytes per pixel. */
-    private int bytesPerPixels;
-
-    /** Strategy used to transform the raw data. */
-    private BytesConverter strategy;
-
     /** The pixels store for that pixels set.*/
     private RawPixelsStorePrx store;
 
@@ -89,6 +84,15 @@ public class DataSink implements AutoCloseable
 
     /**Reference to the SecurityContext.*/
     private SecurityContext ctx;
+
+    /** The resolution level the store is set to, <code>-1</code> if unset. */
+    private int resolution = -1;
+
+    /** The number of resolution levels, <code>0</code> if not loaded yet. */
+    private int resolutionLevels;
+
+    /** The size of each resolution level, from the full resolution down. */
+    private ResolutionDescription[] resolutionDescriptions;
     
     /**
      * Creates a new instance.
@@ -113,18 +117,15 @@ public class DataSink implements AutoCloseable
         } catch (ServerError e) {
             throw new DSOutOfServiceException("Can't set pixels id", e);
         }
-        String type = source.getPixelType();
-        bytesPerPixels = getBytesPerPixels(type);
-        strategy = BytesConverter.getConverter(type);
     }
 
     /**
      * Returns the number of bytes per pixel depending on the pixel type.
      *
      * @param v The pixels Type.
-     * @return See above.
+     * @return See above, <code>-1</code> if the type is not supported.
      */
-    private int getBytesPerPixels(String v)
+    static int getBytesPerPixels(String v)
     {
         if (INT_8.equals(v) || UINT_8.equals(v)) return 1;
         if (INT_16.equals(v) || UINT_16.equals(v)) return 2;
@@ -139,19 +140,18 @@ public class DataSink implements AutoCloseable
      * @param z The z-section at which data is to be fetched.
      * @param t The timepoint at which data is to be fetched.
      * @param c The channel at which data is to be fetched.
-     * @param strategy To transform bytes into pixels values.
      * @return A plane 2D object that encapsulates the actual plane pixels.
      * @throws DataSourceException If an error occurs while retrieving the
      *                              plane data from the pixels source.
      */
-    private Plane2D createPlane(int z, int t, int c,
-            BytesConverter strategy)
+    private Plane2D createPlane(int z, int t, int c)
                     throws DataSourceException
     {
         //Retrieve data
         Plane2D plane = null;
         byte[] data = null; 
         try {
+            setResolution(-1);
             data = store.getPlane(z, c, t);
         } catch (Exception e) {
             String p = "("+z+", "+c+", "+t+")";
@@ -159,10 +159,88 @@ public class DataSink implements AutoCloseable
         }
         ReadOnlyByteArray array = new ReadOnlyByteArray(data, 0, data.length);
         plane = new Plane2D(array, source.getSizeX(), source.getSizeY(), 
-                bytesPerPixels, strategy);
+                source.getPixelType());
         return plane;
     }
 
+    /**
+     * Loads the resolution levels of the pixels set if not done yet.
+     *
+     * @throws ServerError If the levels could not be retrieved.
+     */
+    private void loadResolutions() throws ServerError
+    {
+        if (resolutionLevels > 0) return;
+        resolutionDescriptions = store.getResolutionDescriptions();
+        resolutionLevels = store.getResolutionLevels();
+    }
+
+    /**
+     * Sets the resolution level of the store if it differs from the current
+     * one.
+     *
+     * @param level The resolution level, <code>-1</code> for the full
+     *              resolution.
+     * @throws ServerError If the level could not be set.
+     */
+    private void setResolution(int level) throws ServerError
+    {
+        if (level < 0) {
+            if (resolution < 0) return;
+            loadResolutions();
+            level = resolutionLevels-1;
+        }
+        if (level == resolution) return;
+        store.setResolutionLevel(level);
+        resolution = level;
+    }
+
+    /**
+     * Returns the number of resolution levels of the pixels set, the full
+     * resolution being the highest level.
+     *
+     * @return See above.
+     * @throws DataSourceException If the levels could not be retrieved.
+     */
+    public synchronized int getResolutionLevels()
+            throws DataSourceException
+    {
+        try {
+            loadResolutions();
+            return resolutionLevels;
+        } catch (Exception e) {
+            throw new DataSourceException("Cannot retrieve resolution levels",
+                    e);
+        }
+    }
+
+    /**
+     * Returns the size along the x-axis and the y-axis of the given
+     * resolution level.
+     *
+     * @param level The resolution level, <code>-1</code> for the full
+     *              resolution.
+     * @return See above.
+     * @throws DataSourceException If the levels could not be retrieved.
+     */
+    public synchronized int[] getResolutionSize(int level)
+            throws DataSourceException
+    {
+        if (level < 0)
+            return new int[] {source.getSizeX(), source.getSizeY()};
+        try {
+            loadResolutions();
+        } catch (Exception e) {
+            throw new DataSourceException("Cannot retrieve resolution levels",
+                    e);
+        }
+        int index = resolutionLevels-1-level;
+        if (index < 0 || index >= resolutionDescriptions.length)
+            throw new DataSourceException("No resolution level "+level);
+        ResolutionDescription d = resolutionDescriptions[index];
+        return new int[] {d.sizeX, d.sizeY};
+    }
+
     /**
      * Extracts a 2D tile from the pixels set this object is working for.
      *
@@ -187,8 +265,40 @@ public class DataSink implements AutoCloseable
      */
     public Plane2D getTile(int z, int t, int c, int x,
             int y, int w, int h) throws DataSourceException {
+        return getTile(-1, z, t, c, x, y, w, h);
+    }
+
+    /**
+     * Extracts a 2D tile of the given resolution level from the pixels set
+     * this object is working for.
+     *
+     * @param level
+     *            The resolution level, <code>-1</code> for the full
+     *            resolution.
+     * @param z
+     *            The z-section at which data is to be fetched.
+     * @param t
+     *            The timepoint at which data is to be fetched.
+     * @param c
+     *            The channel at which data is to be fetched.
+     * @param x
+     *            The x coordinate
+     * @param y
+     *            The y coordinate
+     * @param w
+     *            The width of the tile
+     * @param h
+     *            The height of the tile
+     * @return A plane 2D object that encapsulates the actual plane pixels.
+     * @throws DataSourceException
+     *             If an error occurs while retrieving the plane data from the
+     *             pixels source.
+     */
+    public synchronized Plane2D getTile(int level, int z, int t, int c,
+            int x, int y, int w, int h) throws DataSourceException {
         byte[] data = null;
         try {
+            setResolution(level);
             data = store.getTile(z, c, t, x, y, w, h);
         } catch (Exception e) {
             String p = "(" + z + ", " + c + ", " + t + ", " + x + ", " + y
@@ -196,7 +306,7 @@ public class DataSink implements AutoCloseable
             throw new DataSourceException("Cannot retrieve the plane " + p, e);
         }
         ReadOnlyByteArray array = new ReadOnlyByteArray(data, 0, data.length);
-        return new Plane2D(array, w, h, bytesPerPixels, strategy);
+        return new Plane2D(array, w, h, source.getPixelType());
     }
 
     /**
@@ -209,10 +319,10 @@ public class DataSink implements AutoCloseable
      * @throws DataSourceException If an error occurs while retrieving the
      *                              plane data from the pixels source.
      */
-    public Plane2D getPlane(int z, int t, int c)
+    public synchronized Plane2D getPlane(int z, int t, int c)
             throws DataSourceException
     {
-        return createPlane(z, t, c, strategy);
+        return createPlane(z, t, c);
     }
 
     /**
@@ -233,8 +343,8 @@ public class DataSink implements AutoCloseable
      *         index
      * @throws DataSourceException  If an error occurred 
      */
-    public Map<Integer, int[]> getHistogram(int[] channels, int binCount,
-            boolean globalRange, PlaneDef plane)
+    public synchronized Map<Integer, int[]> getHistogram(int[] channels,
+            int binCount, boolean globalRange, PlaneDef plane)
             throws DataSourceException {
         try {
             if (plane == null)
@@ -20,10 +20,17 @@
  */
 package omero.gateway.rnd;
 
+import java.nio.ByteBuffer;
+
 import omero.util.ReadOnlyByteArray;
 
 /** 
  * Holds structure used to mapped the raw pixels data.
+ * The pixels are kept in the original byte array, in their native type, and
+ * are only converted to <code>double</code> on demand. The typed
+ * <code>copyPixels</code> methods copy the plane in row-major order, that is
+ * the pixel at <code>(x, y)</code> is at index <code>y*sizeX+x</code>, into an
+ * array provided by the caller.
  *
  * @author Jean-Marie Burel &nbsp;&nbsp;&nbsp;&nbsp;
  * <a href="mailto:j.burel@dundee.ac.uk">j.burel@dundee.ac.uk</a>
@@ -41,42 +48,62 @@ public class Plane2D
     /** The number of elements along the x-axis. */
     private int sizeX;
 
+    /** The number of elements along the y-axis. */
+    private int sizeY;
+
     /** The original array. */
     private ReadOnlyByteArray data;
 
-    /** Strategy used to transform original data. */
-    private BytesConverter strategy;
+    /** Big-endian view of the original array. */
+    private ByteBuffer buffer;
+
+    /** The type of the pixels, one of the constants defined by {@link DataSink}. */
+    private String pixelType;
+
+    /** Flag indicating if the pixels are signed. */
+    private boolean signed;
 
-    /** The converted raw data. */
-    private double[][] mappedData;
+    /** Flag indicating if the pixels are floating point values. */
+    private boolean floating;
 
-    /** 
-     * Determines the offset value.
+    /**
+     * Determines the pixel type corresponding to the given strategy.
      *
-     * @param x The x-coordinate.
-     * @param y The y-coordinate.
+     * @param strategy The strategy used to transform pixels.
+     * @param bytesPerPixel The number of bytes per pixel.
      * @return See above.
      */
-    private int calculateOffset(int x, int y)
+    private static String getPixelType(BytesConverter strategy,
+            int bytesPerPixel)
     {
-        return bytesPerPixel*(sizeX*y+x);
+        if (strategy instanceof FloatConverter) return DataSink.FLOAT;
+        if (strategy instanceof DoubleConverter) return DataSink.DOUBLE;
+        boolean signed = strategy instanceof IntConverter;
+        switch (bytesPerPixel) {
+            case 1:
+                return signed ? DataSink.INT_8 : DataSink.UINT_8;
+            case 2:
+                return signed ? DataSink.INT_16 : DataSink.UINT_16;
+            case 4:
+                return signed ? DataSink.INT_32 : DataSink.UINT_32;
+        }
+        throw new IllegalArgumentException("Unsupported pixel size: "
+                +bytesPerPixel);
     }
 
     /**
-     * Converts the raw data.
+     * Creates a new instance.
      *
+     * @param data The array of byte.
+     * @param sizeX The number of pixels along the x-axis.
      * @param sizeY The number of pixels along the y-axis.
+     * @param bytesPerPixel The number of bytes per pixel.
+     * @param strategy Strategy to transform pixel.
      */
-    private void mappedData(int sizeY)
+    public Plane2D(ReadOnlyByteArray data, int sizeX, int sizeY,
+            int bytesPerPixel, BytesConverter strategy)
     {
-        mappedData = new double[sizeX][sizeY];
-        int offset;
-        for (int x = 0; x < sizeX; x++) {
-            for (int y = 0; y < sizeY; y++) {
-                offset = calculateOffset(x, y);
-                mappedData[x][y] = strategy.pack(data, offset, bytesPerPixel);
-            }
-        }
+        this(data, sizeX, sizeY, getPixelType(strategy, bytesPerPixel));
     }
 
     /**
@@ -85,17 +112,123 @@ public class Plane2D
      * @param data The array of byte.
      * @param sizeX The number of pixels along the x-axis.
      * @param sizeY The number of pixels along the y-axis.
-     * @param bytesPerPixel The number of bytes per pixel.
-     * @param strategy Strategy to transform pixel.
+     * @param pixelType The type of the pixels, one of the constants defined
+     *                  by {@link DataSink}.
      */
     public Plane2D(ReadOnlyByteArray data, int sizeX, int sizeY,
-            int bytesPerPixel, BytesConverter strategy)
+            String pixelType)
     {
-        this.bytesPerPixel = bytesPerPixel;
+        this.bytesPerPixel = DataSink.getBytesPerPixels(pixelType);
+        if (bytesPerPixel < 0)
+            throw new IllegalArgumentException("Unsupported pixel type: "
+                    +pixelType);
+        if (data.length < bytesPerPixel*sizeX*sizeY)
+            throw new IllegalArgumentException("Not enough data for a "
+                    +sizeX+"x"+sizeY+" "+pixelType+" plane: "+data.length);
         this.data = data;
-        this.strategy = strategy;
+        this.buffer = data.asByteBuffer();
         this.sizeX = sizeX;
-        mappedData(sizeY);
+        this.sizeY = sizeY;
+        this.pixelType = pixelType;
+        this.floating = DataSink.FLOAT.equals(pixelType) ||
+                DataSink.DOUBLE.equals(pixelType);
+        this.signed = floating || DataSink.INT_8.equals(pixelType) ||
+                DataSink.INT_16.equals(pixelType) ||
+                DataSink.INT_32.equals(pixelType);
+    }
+
+    /**
+     * Returns the number of pixels along the x-axis.
+     *
+     * @return See above.
+     */
+    public int getSizeX()
+    {
+        return sizeX;
+    }
+
+    /**
+     * Returns the number of pixels along the y-axis.
+     *
+     * @return See above.
+     */
+    public int getSizeY()
+    {
+        return sizeY;
+    }
+
+    /**
+     * Returns the type of the pixels, one of the constants defined by
+     * {@link DataSink}.
+     *
+     * @return See above.
+     */
+    public String getPixelType()
+    {
+        return pixelType;
+    }
+
+    /**
+     * Returns a read-only, big-endian view of the raw pixels, in row-major
+     * order. The bytes are not copied.
+     *
+     * @return See above.
+     */
+    public ByteBuffer getBuffer()
+    {
+        return buffer.duplicate();
+    }
+
+    /**
+     * Converts the pixel at the given index to a double.
+     *
+     * @param index The index of the pixel in row-major order.
+     * @return See above.
+     */
+    private double getValue(int index)
+    {
+        int offset = index*bytesPerPixel;
+        switch (bytesPerPixel) {
+            case 1:
+                byte b = buffer.get(offset);
+                return signed ? b : b & 0xFF;
+            case 2:
+                short s = buffer.getShort(offset);
+                return signed ? s : s & 0xFFFF;
+            case 4:
+                if (floating) return buffer.getFloat(offset);
+                int i = buffer.getInt(offset);
+                return signed ? i : i & 0xFFFFFFFFL;
+            default:
+                return buffer.getDouble(offset);
+        }
+    }
+
+    /**
+     * Makes sure the pixels are of the given size and the destination array
+     * is large enough.
+     *
+     * @param size The expected number of bytes per pixel.
+     * @param length The length of the destination array.
+     */
+    private void checkCopy(int size, int length)
+    {
+        if (bytesPerPixel != size)
+            throw new IllegalArgumentException("Cannot copy "+pixelType
+                    +" pixels to an array of "+size+"-byte elements");
+        checkLength(length);
+    }
+
+    /**
+     * Makes sure the destination array is large enough.
+     *
+     * @param length The length of the destination array.
+     */
+    private void checkLength(int length)
+    {
+        if (length < sizeX*sizeY)
+            throw new IllegalArgumentException("Array too short: "+length
+                    +" < "+sizeX*sizeY);
     }
 
     /**
@@ -108,16 +241,104 @@ public class Plane2D
      */
     public double getPixelValue(int x, int y)
     {
-        return mappedData[x][y];
+        if (x < 0 || x >= sizeX || y < 0 || y >= sizeY)
+            throw new ArrayIndexOutOfBoundsException("("+x+", "+y
+                    +") not in "+sizeX+"x"+sizeY);
+        return getValue(sizeX*y+x);
     }
 
     /**
-     * Returns the pixels values
+     * Returns the pixels values, indexed by x-coordinate then y-coordinate.
+     * The values are converted on each call, prefer
+     * {@link #copyPixels(double[])} or the typed variants for large planes.
      * 
      * @return See above.
      */
     public double[][] getPixelValues() {
-        return copyArray(mappedData);
+        double[][] values = new double[sizeX][sizeY];
+        int index = 0;
+        for (int y = 0; y < sizeY; y++) {
+            for (int x = 0; x < sizeX; x++) {
+                values[x][y] = getValue(index++);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Copies the pixels values, converted to double, in row-major order.
+     *
+     * @param dst The array to copy the values into, of at least
+     *            <code>sizeX*sizeY</code> elements.
+     */
+    public void copyPixels(double[] dst)
+    {
+        checkLength(dst.length);
+        int n = sizeX*sizeY;
+        if (floating && bytesPerPixel == 8) {
+            getBuffer().asDoubleBuffer().get(dst, 0, n);
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            dst[i] = getValue(i);
+        }
+    }
+
+    /**
+     * Copies the raw pixels of a 1-byte pixel type in row-major order.
+     * Unsigned values have to be masked with <code>0xFF</code>.
+     *
+     * @param dst The array to copy the values into, of at least
+     *            <code>sizeX*sizeY</code> elements.
+     */
+    public void copyPixels(byte[] dst)
+    {
+        checkCopy(1, dst.length);
+        getBuffer().get(dst, 0, sizeX*sizeY);
+    }
+
+    /**
+     * Copies the raw pixels of a 2-byte pixel type in row-major order.
+     * Unsigned values have to be masked with <code>0xFFFF</code>.
+     *
+     * @param dst The array to copy the values into, of at least
+     *            <code>sizeX*sizeY</code> elements.
+     */
+    public void copyPixels(short[] dst)
+    {
+        checkCopy(2, dst.length);
+        getBuffer().asShortBuffer().get(dst, 0, sizeX*sizeY);
+    }
+
+    /**
+     * Copies the raw pixels of a 4-byte integer pixel type in row-major
+     * order. Unsigned values have to be masked with <code>0xFFFFFFFFL</code>.
+     *
+     * @param dst The array to copy the values into, of at least
+     *            <code>sizeX*sizeY</code> elements.
+     */
+    public void copyPixels(int[] dst)
+    {
+        if (floating)
+            throw new IllegalArgumentException(
+                    "Cannot copy float pixels to an int array");
+        checkCopy(4, dst.length);
+        getBuffer().asIntBuffer().get(dst, 0, sizeX*sizeY);
+    }
+
+    /**
+     * Copies the pixels of a float pixel type in row-major order.
+     *
+     * @param dst The array to copy the values into, of at least
+     *            <code>sizeX*sizeY</code> elements.
+     */
+    public void copyPixels(float[] dst)
+    {
+        if (!floating)
+            throw new IllegalArgumentException("Cannot copy "+pixelType
+                    +" pixels to a float array");
+        checkCopy(4, dst.length);
+        getBuffer().asFloatBuffer().get(dst, 0, sizeX*sizeY);
     }
 
     /**
@@ -130,20 +351,4 @@ public class Plane2D
     {
         return data.get(offset);
     }
-    
-    /**
-     * Simply copies a 2-dimensional double array
-     * 
-     * @param src
-     *            The array to copy
-     * @return A copy of the array
-     */
-    private double[][] copyArray(double[][] src) {
-        int length = src.length;
-        double[][] target = new double[length][src[0].length];
-        for (int i = 0; i < length; i++) {
-            System.arraycopy(src[i], 0, target[i], 0, src[i].length);
-        }
-        return target;
-    }
 }
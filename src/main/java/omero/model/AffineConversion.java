@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package omero.model;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import ome.model.units.BigResult;
+import ome.model.units.Conversion;
+
+/**
+ * A {@link Conversion} between two units evaluated with precomputed
+ * <code>double</code> coefficients. All the conversions between units of
+ * the same quantity are of the form <code>slope * value + offset</code>,
+ * the offset only being non-zero for temperatures, so the coefficients are
+ * obtained once by evaluating the symbolic conversion at 0 and 1.
+ *
+ * When the slope or its inverse is exactly representable, as for most
+ * conversions between metric prefixes, the value is multiplied or divided
+ * by it and the result is the same as that of the {@link BigDecimal}
+ * evaluation. Otherwise the result may differ in the last bit. The exact
+ * evaluation is still used if a coefficient cannot be represented as a
+ * normal <code>double</code>, for values which are not finite and when the
+ * result overflows, so that {@link BigResult} is thrown as before.
+ *
+ * @since 5.5.0
+ */
+final class AffineConversion {
+
+    private final Conversion exact;
+
+    private final String source;
+
+    private final String target;
+
+    private final double slope;
+
+    /** The exact inverse of the slope, 0 if not representable. */
+    private final double divisor;
+
+    private final double offset;
+
+    /** If the coefficients are usable as <code>double</code>s. */
+    private final boolean fast;
+
+    AffineConversion(Conversion exact, String source, String target) {
+        this.exact = exact;
+        this.source = source;
+        this.target = target;
+        final BigDecimal zero = exact.convert(0);
+        final BigDecimal one = exact.convert(1);
+        this.offset = zero.doubleValue();
+        final BigDecimal exactSlope = one.subtract(zero);
+        this.slope = exactSlope.doubleValue();
+        this.divisor = exactInverse(exactSlope);
+        this.fast = Math.abs(slope) >= Double.MIN_NORMAL
+                && !Double.isInfinite(slope) && !Double.isInfinite(offset);
+    }
+
+    /**
+     * @return the inverse of the given value if it is an integer which can
+     * be represented exactly as a <code>double</code>, otherwise 0
+     */
+    private static double exactInverse(BigDecimal value) {
+        if (value.signum() == 0
+                || new BigDecimal(value.doubleValue()).compareTo(value) == 0) {
+            return 0;
+        }
+        final BigDecimal inverse = BigDecimal.ONE.divide(value, MathContext.DECIMAL128);
+        final double d = inverse.doubleValue();
+        if (Double.isInfinite(d) || Math.rint(d) != d
+                || new BigDecimal(d).multiply(value).compareTo(BigDecimal.ONE) != 0) {
+            return 0;
+        }
+        return d;
+    }
+
+    /**
+     * Precompiles each of the given conversions.
+     *
+     * @param type the unit enumeration
+     * @param conversions the symbolic conversions, by source and target unit
+     * @return the compiled conversions, by source and target unit
+     */
+    static <E extends Enum<E>> Map<E, Map<E, AffineConversion>> compile(
+            Class<E> type, Map<E, Map<E, Conversion>> conversions) {
+        final Map<E, Map<E, AffineConversion>> compiled =
+                new EnumMap<E, Map<E, AffineConversion>>(type);
+        for (Map.Entry<E, Map<E, Conversion>> from : conversions.entrySet()) {
+            final Map<E, AffineConversion> c = new EnumMap<E, AffineConversion>(type);
+            for (Map.Entry<E, Conversion> to : from.getValue().entrySet()) {
+                c.put(to.getKey(), new AffineConversion(to.getValue(),
+                        from.getKey().toString(), to.getKey().toString()));
+            }
+            compiled.put(from.getKey(), Collections.unmodifiableMap(c));
+        }
+        return Collections.unmodifiableMap(compiled);
+    }
+
+    /**
+     * Converts a single value.
+     *
+     * @param value the value in the source unit
+     * @return the value in the target unit
+     * @throws BigResult if the result cannot be represented as a double
+     */
+    double convert(double value) throws BigResult {
+        if (fast) {
+            final double converted = apply(value);
+            if (!Double.isInfinite(converted) && !Double.isNaN(converted)) {
+                return converted;
+            }
+        }
+        return convertExactly(value);
+    }
+
+    /**
+     * Converts values in bulk.
+     *
+     * @param values the values in the source unit
+     * @param converted where to store the values in the target unit, may be
+     * <code>values</code> itself
+     * @throws BigResult if a result cannot be represented as a double
+     */
+    void convert(double[] values, double[] converted) throws BigResult {
+        if (converted.length < values.length) {
+            throw new IllegalArgumentException("Result array too short: "
+                    + converted.length + " < " + values.length);
+        }
+        if (!fast) {
+            for (int i = 0; i < values.length; i++) {
+                converted[i] = convertExactly(values[i]);
+            }
+            return;
+        }
+        for (int i = 0; i < values.length; i++) {
+            final double c = apply(values[i]);
+            converted[i] = Double.isInfinite(c) || Double.isNaN(c)
+                    ? convertExactly(values[i]) : c;
+        }
+    }
+
+    private double apply(double value) {
+        return (divisor == 0 ? slope * value : value / divisor) + offset;
+    }
+
+    private double convertExactly(double value) throws BigResult {
+        final BigDecimal big = exact.convert(value);
+        final double converted = big.doubleValue();
+        if (Double.isInfinite(converted)) {
+            throw new BigResult(big,
+                    "Failed to convert " + source + ":" + target);
+        }
+        return converted;
+    }
+}
@@ -26,8 +26,6 @@ import static ome.model.units.Conversion.Pow;
 import static ome.model.units.Conversion.Rat;
 import static ome.model.units.Conversion.Sym;
 
-import java.math.BigDecimal;
-
 import java.util.Collections;
 import java.util.Map;
 import java.util.EnumMap;
@@ -632,6 +630,9 @@ public class FrequencyI extends Frequency implements ModelBased {
         conversions = Collections.unmodifiableMap(c);
     }
 
+    private static final Map<UnitsFrequency, Map<UnitsFrequency, AffineConversion>> compiled =
+            AffineConversion.compile(UnitsFrequency.class, conversions);
+
     private static final Map<UnitsFrequency, String> SYMBOLS;
     static {
         Map<UnitsFrequency, String> s = new HashMap<UnitsFrequency, String>();
@@ -777,21 +778,13 @@ public class FrequencyI extends Frequency implements ModelBased {
            setUnit(value.getUnit());
         } else {
             UnitsFrequency targetUnit = UnitsFrequency.valueOf(target);
-            Conversion conversion = conversions.get(value.getUnit()).get(targetUnit);
+            AffineConversion conversion = compiled.get(value.getUnit()).get(targetUnit);
             if (conversion == null) {
                 throw new RuntimeException(String.format(
                     "%f %s cannot be converted to %s",
                         value.getValue(), value.getUnit(), target));
             }
-            double orig = value.getValue();
-            BigDecimal big = conversion.convert(orig);
-            double converted = big.doubleValue();
-            if (Double.isInfinite(converted)) {
-                throw new BigResult(big,
-                        "Failed to convert " + source + ":" + target);
-            }
-
-            setValue(converted);
+            setValue(conversion.convert(value.getValue()));
             setUnit(targetUnit);
        }
     }
@@ -805,6 +798,33 @@ public class FrequencyI extends Frequency implements ModelBased {
         this(value, target.toString());
     }
 
+    /**
+     * Converts many values between units at once, e.g. for every plane of
+     * an image.
+     *
+     * @param values the values in the source unit. non-null.
+     * @param source the unit of the values. non-null.
+     * @param target unit that is desired. non-null.
+     * @return a new array holding the values in the target unit
+     * @throws BigResult if a value cannot be represented in the target unit
+     */
+    public static double[] convert(double[] values, UnitsFrequency source,
+            UnitsFrequency target) throws BigResult {
+        double[] converted = new double[values.length];
+        if (source == target) {
+            System.arraycopy(values, 0, converted, 0, values.length);
+            return converted;
+        }
+        Map<UnitsFrequency, AffineConversion> from = compiled.get(source);
+        AffineConversion conversion = from == null ? null : from.get(target);
+        if (conversion == null) {
+            throw new RuntimeException(String.format(
+                "%s cannot be converted to %s", source, target));
+        }
+        conversion.convert(values, converted);
+        return converted;
+    }
+
     /**
      * Convert a Bio-Formats {@link Length} to an OMERO Length.
      */
@@ -26,8 +26,6 @@ import static ome.model.units.Conversion.Pow;
 import static ome.model.units.Conversion.Rat;
 import static ome.model.units.Conversion.Sym;
 
-import java.math.BigDecimal;
-
 import java.util.Collections;
 import java.util.Map;
 import java.util.EnumMap;
@@ -1281,6 +1279,9 @@ public class PressureI extends Pressure implements ModelBased {
         conversions = Collections.unmodifiableMap(c);
     }
 
+    private static final Map<UnitsPressure, Map<UnitsPressure, AffineConversion>> compiled =
+            AffineConversion.compile(UnitsPressure.class, conversions);
+
     private static final Map<UnitsPressure, String> SYMBOLS;
     static {
         Map<UnitsPressure, String> s = new HashMap<UnitsPressure, String>();
@@ -1437,21 +1438,13 @@ public class PressureI extends Pressure implements ModelBased {
            setUnit(value.getUnit());
         } else {
             UnitsPressure targetUnit = UnitsPressure.valueOf(target);
-            Conversion conversion = conversions.get(value.getUnit()).get(targetUnit);
+            AffineConversion conversion = compiled.get(value.getUnit()).get(targetUnit);
             if (conversion == null) {
                 throw new RuntimeException(String.format(
                     "%f %s cannot be converted to %s",
                         value.getValue(), value.getUnit(), target));
             }
-            double orig = value.getValue();
-            BigDecimal big = conversion.convert(orig);
-            double converted = big.doubleValue();
-            if (Double.isInfinite(converted)) {
-                throw new BigResult(big,
-                        "Failed to convert " + source + ":" + target);
-            }
-
-            setValue(converted);
+            setValue(conversion.convert(value.getValue()));
             setUnit(targetUnit);
        }
     }
@@ -1465,6 +1458,33 @@ public class PressureI extends Pressure implements ModelBased {
         this(value, target.toString());
     }
 
+    /**
+     * Converts many values between units at once, e.g. for every plane of
+     * an image.
+     *
+     * @param values the values in the source unit. non-null.
+     * @param source the unit of the values. non-null.
+     * @param target unit that is desired. non-null.
+     * @return a new array holding the values in the target unit
+     * @throws BigResult if a value cannot be represented in the target unit
+     */
+    public static double[] convert(double[] values, UnitsPressure source,
+            UnitsPressure target) throws BigResult {
+        double[] converted = new double[values.length];
+        if (source == target) {
+            System.arraycopy(values, 0, converted, 0, values.length);
+            return converted;
+        }
+        Map<UnitsPressure, AffineConversion> from = compiled.get(source);
+        AffineConversion conversion = from == null ? null : from.get(target);
+        if (conversion == null) {
+            throw new RuntimeException(String.format(
+                "%s cannot be converted to %s", source, target));
+        }
+        conversion.convert(values, converted);
+        return converted;
+    }
+
     /**
      * Convert a Bio-Formats {@link Length} to an OMERO Length.
      */
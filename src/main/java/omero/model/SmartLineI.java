@@ -11,9 +11,7 @@ import static omero.rtypes.rdouble;
 
 import java.awt.Shape;
 import java.awt.geom.Line2D;
-import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.Set;
 import java.util.List;
 import java.util.Random;
 
@@ -25,9 +23,11 @@ public class SmartLineI extends omero.model.LineI implements SmartShape {
             return;
         }
         if (transform != null) s = Util.transformAwtShape(s, transform);
-        final Set<Point2D> points = Util.getQuantizedLinePoints((Line2D) s, null);
-        for (Point2D p : points)
-            cb.handle((int) p.getX(), (int) p.getY());
+        Util.quantizedLinePoints((Line2D) s, cb);
+    }
+
+    public void areaRuns(RunCallback cb) {
+        Util.pointsToRuns(this, cb);
     }
     
     public Shape asAwtShape() {
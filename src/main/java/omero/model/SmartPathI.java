@@ -22,6 +22,10 @@ public class SmartPathI extends omero.model.PathI implements SmartShape {
     public void areaPoints(PointCallback cb) {
         throw new UnsupportedOperationException();
     }
+
+    public void areaRuns(RunCallback cb) {
+        throw new UnsupportedOperationException();
+    }
     
     public Shape asAwtShape() {
         String str = d.getValue();
@@ -36,6 +36,10 @@ public class SmartPointI extends omero.model.PointI implements SmartShape {
         }
     }
 
+    public void areaRuns(RunCallback cb) {
+        Util.pointsToRuns(this, cb);
+    }
+
     public Shape asAwtShape() {
         List<Point> points = asPoints();
         if (points == null) {
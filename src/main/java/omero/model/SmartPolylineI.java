@@ -12,10 +12,8 @@ import static omero.rtypes.rstring;
 import java.awt.Shape;
 import java.awt.geom.Line2D;
 import java.awt.geom.PathIterator;
-import java.awt.geom.Point2D;
 import java.util.List;
 import java.util.Random;
-import java.util.Set;
 
 public class SmartPolylineI extends omero.model.PolylineI implements SmartShape {
 
@@ -31,14 +29,17 @@ public class SmartPolylineI extends omero.model.PolylineI implements SmartShape
             it.currentSegment(vals);
             double [] new_point = new double[] {vals[0], vals[1]};
             if (last_point != null) {
-                final Set<Point2D> points = Util.getQuantizedLinePoints(
-                    new Line2D.Double(last_point[0], last_point[1], new_point[0], new_point[1]), null);
-                for (Point2D p : points) cb.handle((int) p.getX(), (int) p.getY());
+                Util.quantizedLinePoints(
+                    new Line2D.Double(last_point[0], last_point[1], new_point[0], new_point[1]), cb);
             }
             last_point = new_point;
             it.next();
         }
     }
+
+    public void areaRuns(RunCallback cb) {
+        Util.pointsToRuns(this, cb);
+    }
     
     public Shape asAwtShape() {
         String str = this.points.getValue();
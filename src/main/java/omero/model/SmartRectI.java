@@ -17,13 +17,17 @@ import java.util.Random;
 public class SmartRectI extends omero.model.RectangleI implements SmartShape {
 
     public void areaPoints(PointCallback cb) {
+        Util.runsToPoints(this, cb);
+    }
+
+    public void areaRuns(RunCallback cb) {
         Shape s = asAwtShape();
         if (s == null) {
             return;
         }
         if (transform != null) s = Util.transformAwtShape(s, transform);
         Rectangle2D r = s.getBounds2D();
-        Util.pointsByBoundingBox(s, r, cb);
+        Util.runsByScanline(s, r, cb);
     }
 
     public Shape asAwtShape() {
@@ -10,10 +10,14 @@ package omero.model;
 import static omero.rtypes.rdouble;
 
 import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Random;
@@ -220,6 +224,257 @@ public interface SmartShape {
             }
         }
 
+        /**
+         * Tolerance used when flattening curves for
+         * {@link #runsByScanline(Shape, Rectangle2D, RunCallback)}.
+         */
+        private static final double FLATNESS = 0.01;
+
+        /**
+         * Rows are sampled in the middle of the 0.001 high box tested by
+         * {@link #pointsByBoundingBox(Shape, Rectangle2D, PointCallback)}.
+         */
+        private static final double ROW_OFFSET = 0.0005;
+
+        /**
+         * Passes the same points as
+         * {@link #pointsByBoundingBox(Shape, Rectangle2D, PointCallback)} to
+         * the {@link RunCallback} as horizontal runs, but rather than testing
+         * every sample in the bounding box calculates where each row crosses
+         * the edges of the shape. Samples are taken on the same grid, i.e. at
+         * integer offsets from the corner of the bounding box, and a sample
+         * is included if its row lies within the shape and its x is within
+         * 0.001 of the shape's interior. Curves are flattened to within
+         * {@link #FLATNESS} except for untransformed ellipses, which are
+         * calculated exactly.
+         *
+         * @param s the shape to rasterize
+         * @param r the bounding box of the shape
+         * @param cb the callback to pass each run of points to
+         */
+        public static void runsByScanline(Shape s, Rectangle2D r,
+                RunCallback cb) {
+
+            final double startX = r.getX();
+            final double startY = r.getY();
+            final double xEnd = (r.getX() + r.getWidth());
+            final double yEnd = (r.getY() + r.getHeight());
+            final long maxK = (long) Math.ceil(xEnd - startX) - 1;
+
+            if (s instanceof Ellipse2D) {
+                final Ellipse2D e = (Ellipse2D) s;
+                final double cx = e.getCenterX();
+                final double cy = e.getCenterY();
+                final double a = e.getWidth() / 2;
+                final double b = e.getHeight() / 2;
+                for (double y = startY; y < yEnd; ++y) {
+                    final double dy = (y + ROW_OFFSET - cy) / b;
+                    if (dy > -1 && dy < 1) {
+                        final double hw = a * Math.sqrt(1 - dy * dy);
+                        emitRun(cb, y, startX, maxK, cx - hw, cx + hw);
+                    }
+                }
+                return;
+            }
+
+            final EdgeTable edges = new EdgeTable(s.getPathIterator(null, FLATNESS));
+            double[] xs = new double[8];
+            int[] dirs = new int[8];
+            for (double y = startY; y < yEnd; ++y) {
+                final double row = y + ROW_OFFSET;
+                edges.advance(row);
+                final int n = edges.active;
+                if (n > xs.length) {
+                    xs = new double[n * 2];
+                    dirs = new int[n * 2];
+                }
+                // insertion sort of the crossings, there are usually few
+                for (int i = 0; i < n; i++) {
+                    final int edge = edges.activeEdges[i];
+                    final double x = edges.xAt(edge, row);
+                    final int dir = edges.dir[edge];
+                    int j = i - 1;
+                    while (j >= 0 && xs[j] > x) {
+                        xs[j + 1] = xs[j];
+                        dirs[j + 1] = dirs[j];
+                        j--;
+                    }
+                    xs[j + 1] = x;
+                    dirs[j + 1] = dir;
+                }
+                int winding = 0;
+                double spanStart = 0;
+                for (int i = 0; i < n; i++) {
+                    final boolean wasInside = edges.evenOdd ? (winding & 1) != 0 : winding != 0;
+                    winding += dirs[i];
+                    final boolean isInside = edges.evenOdd ? (winding & 1) != 0 : winding != 0;
+                    if (!wasInside && isInside) {
+                        spanStart = xs[i];
+                    } else if (wasInside && !isInside) {
+                        emitRun(cb, y, startX, maxK, spanStart, xs[i]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Pass the samples of the row whose x lies within 0.001 of the open
+         * interval (a, b) to the callback.
+         */
+        private static void emitRun(RunCallback cb, double y, double startX,
+                long maxK, double a, double b) {
+            final long kStart = Math.max(0, (long) Math.floor(a - 0.001 - startX) + 1);
+            final long kEnd = Math.min(maxK, (long) Math.ceil(b - startX) - 1);
+            if (kStart <= kEnd) {
+                cb.handle((int) y, (int) (startX + kStart), (int) (startX + kEnd));
+            }
+        }
+
+        /**
+         * The non-horizontal edges of a flattened path sorted by their
+         * lowest y, along with those which cross the current row.
+         */
+        private static class EdgeTable {
+
+            final boolean evenOdd;
+
+            int count = 0;
+
+            double[] yMin = new double[16], yMax = new double[16];
+
+            double[] x0 = new double[16], slope = new double[16];
+
+            int[] dir = new int[16];
+
+            int[] order;
+
+            int next = 0;
+
+            int[] activeEdges;
+
+            int active = 0;
+
+            EdgeTable(PathIterator it) {
+                evenOdd = it.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+                final double[] coords = new double[6];
+                double moveX = 0, moveY = 0, lastX = 0, lastY = 0;
+                while (!it.isDone()) {
+                    switch (it.currentSegment(coords)) {
+                        case PathIterator.SEG_MOVETO:
+                            add(lastX, lastY, moveX, moveY);
+                            moveX = lastX = coords[0];
+                            moveY = lastY = coords[1];
+                            break;
+                        case PathIterator.SEG_LINETO:
+                            add(lastX, lastY, coords[0], coords[1]);
+                            lastX = coords[0];
+                            lastY = coords[1];
+                            break;
+                        case PathIterator.SEG_CLOSE:
+                            add(lastX, lastY, moveX, moveY);
+                            lastX = moveX;
+                            lastY = moveY;
+                            break;
+                    }
+                    it.next();
+                }
+                // sub-paths are implicitly closed
+                add(lastX, lastY, moveX, moveY);
+
+                final Integer[] sorted = new Integer[count];
+                for (int i = 0; i < count; i++) {
+                    sorted[i] = i;
+                }
+                Arrays.sort(sorted, new Comparator<Integer>() {
+                    public int compare(Integer e1, Integer e2) {
+                        return Double.compare(yMin[e1], yMin[e2]);
+                    }
+                });
+                order = new int[count];
+                for (int i = 0; i < count; i++) {
+                    order[i] = sorted[i];
+                }
+                activeEdges = new int[count];
+            }
+
+            private void add(double xa, double ya, double xb, double yb) {
+                if (ya == yb) {
+                    return;
+                }
+                if (count == yMin.length) {
+                    final int size = count * 2;
+                    yMin = Arrays.copyOf(yMin, size);
+                    yMax = Arrays.copyOf(yMax, size);
+                    x0 = Arrays.copyOf(x0, size);
+                    slope = Arrays.copyOf(slope, size);
+                    dir = Arrays.copyOf(dir, size);
+                }
+                final boolean down = ya < yb;
+                yMin[count] = down ? ya : yb;
+                yMax[count] = down ? yb : ya;
+                x0[count] = down ? xa : xb;
+                slope[count] = (xb - xa) / (yb - ya);
+                dir[count] = down ? 1 : -1;
+                count++;
+            }
+
+            /**
+             * Update the active edges to those for which
+             * {@code yMin <= row < yMax}. Rows must be increasing.
+             */
+            void advance(double row) {
+                while (next < count && yMin[order[next]] <= row) {
+                    activeEdges[active++] = order[next++];
+                }
+                int kept = 0;
+                for (int i = 0; i < active; i++) {
+                    final int edge = activeEdges[i];
+                    if (yMax[edge] > row) {
+                        activeEdges[kept++] = edge;
+                    }
+                }
+                active = kept;
+            }
+
+            double xAt(int edge, double row) {
+                return x0[edge] + (row - yMin[edge]) * slope[edge];
+            }
+        }
+
+        /**
+         * Passes each point of the runs produced by a {@link SmartShape} to
+         * a {@link PointCallback}, for the shapes whose
+         * {@link SmartShape#areaPoints(PointCallback)} is implemented in
+         * terms of {@link SmartShape#areaRuns(RunCallback)}.
+         *
+         * @param shape the shape whose points are wanted
+         * @param cb the callback to pass each point to
+         */
+        public static void runsToPoints(SmartShape shape, final PointCallback cb) {
+            shape.areaRuns(new RunCallback() {
+                public void handle(int y, int xStart, int xEnd) {
+                    for (int x = xStart; x <= xEnd; x++) {
+                        cb.handle(x, y);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Passes each point of a {@link SmartShape} to a {@link RunCallback}
+         * as a run of length one, for the shapes which are not filled.
+         *
+         * @param shape the shape whose points are wanted
+         * @param cb the callback to pass each point to
+         */
+        public static void pointsToRuns(SmartShape shape, final RunCallback cb) {
+            shape.areaPoints(new PointCallback() {
+                public void handle(int x, int y) {
+                    cb.handle(y, x, x);
+                }
+            });
+        }
+
         public static java.awt.geom.AffineTransform getAwtTransform(AffineTransform transform) {
             if (transform == null) return null;
             return 
@@ -239,6 +494,44 @@ public interface SmartShape {
             return t.createTransformedShape(shape);
         }
         
+        /**
+         * Passes the same points as {@link #getQuantizedLinePoints(Line2D, Set)}
+         * to the {@link PointCallback} in the same order but without
+         * allocating a point per step. Since both coordinates change
+         * monotonically along a line, duplicates can only be adjacent.
+         *
+         * @param line the line to quantize
+         * @param cb the callback to pass each point to
+         */
+        public static void quantizedLinePoints(Line2D line, PointCallback cb) {
+            if (line == null) return;
+
+            final double startX = line.getX1();
+            final double startY = line.getY1();
+            final double mX = line.getX2() - startX;
+            final double mY = line.getY2() - startY;
+            final double lengthM = (Math.sqrt(mX*mX+mY*mY));
+            if (lengthM == 0) {
+                cb.handle((int) Math.floor(startX), (int) Math.floor(startY));
+                return;
+            }
+            final double normX = mX/lengthM;
+            final double normY = mY/lengthM;
+
+            boolean first = true;
+            double lastX = 0, lastY = 0;
+            for (double i = 0 ; i <= (lengthM + 0.1) ; i += 0.1) {
+                final double x = Math.floor(startX+i*normX);
+                final double y = Math.floor(startY+i*normY);
+                if (first || x != lastX || y != lastY) {
+                    cb.handle((int) x, (int) y);
+                    first = false;
+                    lastX = x;
+                    lastY = y;
+                }
+            }
+        }
+
         public static Set<Point2D> getQuantizedLinePoints(Line2D line, Set<Point2D> points) {
             if (line == null) return null;
 
@@ -293,6 +586,21 @@ public interface SmartShape {
         void handle(int x, int y);
     }
 
+    /**
+     * Callback interface passed every horizontal run of points which are
+     * within the area of a shape. Filled shapes produce their runs without
+     * allocating per point, so this is preferred over {@link PointCallback}
+     * for large shapes.
+     */
+    public interface RunCallback {
+        /**
+         * @param y the row of the run
+         * @param xStart the first x within the shape
+         * @param xEnd the last x within the shape, inclusive
+         */
+        void handle(int y, int xStart, int xEnd);
+    }
+
     /**
      * Calls the {@link PointCallback} with all of the x/y coordinates which are
      * within the shape.
@@ -300,6 +608,14 @@ public interface SmartShape {
      */
     void areaPoints(PointCallback action);
 
+    /**
+     * Calls the {@link RunCallback} with all of the runs of x coordinates
+     * which are within the shape. These cover the same points as passed to
+     * {@link #areaPoints(PointCallback)}.
+     * @param action the callback to call
+     */
+    void areaRuns(RunCallback action);
+
     /**
      * Converts the current {@link SmartShape} to a {@link java.awt.Shape}. This
      * is useful for determining paths and included points.
@@ -1139,6 +1139,19 @@ public class IceMapper extends ome.util.ModelMapper implements
     // =========================================================================
 
     protected boolean isPrimitive(Class<?> p) {
+        return isPrimitiveType(p);
+    }
+
+    /**
+     * Types which are passed through unchanged by
+     * {@link #handleInput(Class, Object)} and
+     * {@link #handleOutput(Class, Object)}, since Ice and the server use the
+     * same representation for them.
+     *
+     * @param p a parameter or return type
+     * @return if values of the type need no mapping
+     */
+    public static boolean isPrimitiveType(Class<?> p) {
         if (p.equals(byte.class) || p.equals(byte[].class)
                 || p.equals(int.class) || p.equals(int[].class)
                 || p.equals(long.class) || p.equals(long[].class)
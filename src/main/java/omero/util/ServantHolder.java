@@ -12,19 +12,17 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import omero.api._StatefulServiceInterfaceOperations;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.Striped;
 
 /**
  * Manager for all active servants in a single session.
@@ -33,6 +31,10 @@ import com.google.common.collect.MapMaker;
  * {@link Ice.Util#identityToString(Ice.Identity)} the servant tries to make the
  * two usages equivalent.
  *
+ * Servants are locked by name via a fixed number of lock stripes, so that
+ * the memory used for locking does not grow with the number of servants
+ * a long-lived session creates. Names which share a stripe block one another.
+ *
  * @author Josh Moore, josh at glencoesoftware.com
  * @since 3.0-Beta4
  */
@@ -47,15 +49,32 @@ public class ServantHolder {
     private final Map<String, Ice.Object> servants;
 
     /**
-     * A lock cache that returns a {@link Lock} for each given name, constructing it only if necessary.
+     * The default number of lock stripes.
      */
-    private final LoadingCache<String, Lock> locks = CacheBuilder.newBuilder().build(
-            new CacheLoader<String, Lock>() {
-                @Override
-                public Lock load(String key) {
-                    return new ReentrantLock();
-                }
-            });
+    public final static int DEFAULT_LOCK_STRIPES = 64;
+
+    /**
+     * The reentrant locks shared by all names, each name always mapping to
+     * the same {@link Lock}.
+     */
+    private final Striped<Lock> locks;
+
+    /**
+     * The number of registered servants, kept alongside {@link #servants}
+     * since the size of a concurrent map is costly to compute.
+     */
+    private final AtomicInteger servantCount = new AtomicInteger();
+
+    /**
+     * The number of times {@link #acquireLock(String)} was called.
+     */
+    private final AtomicLong lockAcquisitions = new AtomicLong();
+
+    /**
+     * The number of times {@link #acquireLock(String)} had to wait for
+     * another thread.
+     */
+    private final AtomicLong lockContentions = new AtomicLong();
 
     /**
      * An internal mapping to all client ids from {@link omero.cmd.SessionI} for a given
@@ -80,7 +99,13 @@ public class ServantHolder {
     }
 
     public ServantHolder(String session, int servantsPerSession) {
+        this(session, servantsPerSession, DEFAULT_LOCK_STRIPES);
+    }
+
+    public ServantHolder(String session, int servantsPerSession,
+            int lockStripes) {
         final MapMaker mapMaker = new MapMaker();
+        this.locks = Striped.lock(lockStripes);
         this.servants = mapMaker.makeMap();
         this.clientIds = mapMaker.makeMap();
         this.session = session;
@@ -124,28 +149,56 @@ public class ServantHolder {
     }
 
     /**
-     * Acquires the given lock or if necessary creates a new one.
+     * Acquires the lock for the given key, waiting if another thread holds
+     * it.
      * @param key the lock's key
      */
     public void acquireLock(String key) {
-        try {
-            locks.get(key).lock();
-        } catch (ExecutionException e) {
-            /* cannot occur unless loading thread is interrupted */
+        final Lock lock = locks.get(key);
+        lockAcquisitions.incrementAndGet();
+        if (!lock.tryLock()) {
+            lockContentions.incrementAndGet();
+            lock.lock();
         }
     }
 
     /**
-     * Releases the given lock if found, otherwise throws an
-     * {@link ome.conditions.InternalException}
+     * Releases the lock for the given key if held by this thread, otherwise
+     * throws an {@link ome.conditions.InternalException}
      * @param key the lock's key
      */
     public void releaseLock(String key) {
-        final Lock lock = locks.getIfPresent(key);
-        if (lock == null) {
-            throw new ome.conditions.InternalException("No lock found: " + key);
+        try {
+            locks.get(key).unlock();
+        } catch (IllegalMonitorStateException imse) {
+            throw new ome.conditions.InternalException("No lock held: " + key);
         }
-        lock.unlock();
+    }
+
+    //
+    // Gauges
+    //
+
+    /**
+     * @return the number of servants registered
+     */
+    public int getServantCount() {
+        return servantCount.get();
+    }
+
+    /**
+     * @return the number of times a lock was acquired
+     */
+    public long getLockAcquisitions() {
+        return lockAcquisitions.get();
+    }
+
+    /**
+     * @return the number of times acquiring a lock had to wait for another
+     *         thread
+     */
+    public long getLockContentions() {
+        return lockContentions.get();
     }
 
     public Ice.Object get(Ice.Identity id) {
@@ -163,8 +216,9 @@ public class ServantHolder {
 
     public void put(Ice.Identity id, Ice.Object servant)
         throws omero.OverUsageException {
-        final int size = servants.size();
+        final int size = servantCount.getAndIncrement();
         if (size >= servantsPerSession) {
+            servantCount.decrementAndGet();
             String msg = String.format("servantsPerSession reached for %s: %s",
                 session, servantsPerSession);
             log.error(msg);
@@ -213,17 +267,25 @@ public class ServantHolder {
     // Implementation
     //
 
+    /**
+     * Registers the servant, which must already be counted in
+     * {@link #servantCount}.
+     */
     private void put(String key, Ice.Object servant) {
         Object old = servants.put(key, servant);
         if (old == null) {
             log.debug(String.format("Added %s to %s as %s", servant, this, key));
         } else {
+            servantCount.decrementAndGet();
             log.debug(String.format("Replaced %s with %s to %s as %s", old, servant, this, key));
         }
     }
 
     private Ice.Object remove(String key) {
         Ice.Object servant = servants.remove(key);
+        if (servant != null) {
+            servantCount.decrementAndGet();
+        }
         log.debug(String.format("Removed %s from %s as %s", servant, this, key));
         return servant;
     }
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package loci.ome.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import loci.ome.io.OmeroReader.PendingRead;
+import loci.ome.io.OmeroReader.Region;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the prediction, caching and reading ahead of regions by
+ * {@link OmeroReader} against a fake image of two 100 x 80 planes which is
+ * read in tiles of 40 x 30, without a server.
+ *
+ * @since 5.5.0
+ */
+@Test(groups = "unit")
+public class OmeroReaderReadAheadTest {
+
+    /** Fakes the image and the pixels store, recording the calls made. */
+    private static class FakeReader extends OmeroReader {
+
+        final List<Region> fetched = new ArrayList<Region>();
+
+        final List<Region> requested = new ArrayList<Region>();
+
+        final List<Region> received = new ArrayList<Region>();
+
+        @Override
+        public int getSizeX() {
+            return 100;
+        }
+
+        @Override
+        public int getSizeY() {
+            return 80;
+        }
+
+        @Override
+        public int getImageCount() {
+            return 2;
+        }
+
+        @Override
+        byte[] fetch(Region region) {
+            fetched.add(region);
+            return new byte[region.w * region.h];
+        }
+
+        @Override
+        PendingRead request(final Region region) {
+            requested.add(region);
+            return new PendingRead() {
+                public boolean isCompleted() {
+                    return true;
+                }
+                public byte[] get() {
+                    received.add(region);
+                    return new byte[region.w * region.h];
+                }
+                public void waitForCompleted() {
+                }
+            };
+        }
+    }
+
+    private FakeReader reader;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        reader = new FakeReader();
+        reader.setReadAhead(0);
+    }
+
+    private static void assertRegion(Region r, int no, int x, int y, int w,
+            int h) {
+        Assert.assertNotNull(r);
+        Assert.assertEquals(r, new Region(no, x, y, w, h));
+    }
+
+    @Test
+    public void testNextAlongRow() {
+        assertRegion(reader.next(new Region(0, 0, 0, 40, 30)), 0, 40, 0, 40, 30);
+        assertRegion(reader.next(new Region(0, 40, 0, 40, 30)), 0, 80, 0, 20, 30);
+    }
+
+    @Test
+    public void testNextWrapsRow() throws Exception {
+        reader.readRegion(new Region(0, 0, 0, 40, 30));
+        // the short tile at the end of the row is followed by a full one
+        assertRegion(reader.next(new Region(0, 80, 0, 20, 30)), 0, 0, 30, 40, 30);
+        assertRegion(reader.next(new Region(0, 80, 30, 20, 30)), 0, 0, 60, 40, 20);
+    }
+
+    @Test
+    public void testNextWrapsPlane() throws Exception {
+        reader.readRegion(new Region(0, 0, 0, 40, 30));
+        assertRegion(reader.next(new Region(0, 80, 60, 20, 20)), 1, 0, 0, 40, 30);
+    }
+
+    @Test
+    public void testNextAfterLastTile() {
+        Assert.assertNull(reader.next(new Region(1, 80, 60, 20, 20)));
+    }
+
+    @Test
+    public void testCacheEvictsLeastRecentlyUsed() throws Exception {
+        final Region a = new Region(0, 0, 0, 10, 10);
+        final Region b = new Region(0, 10, 0, 10, 10);
+        final Region c = new Region(0, 20, 0, 10, 10);
+        reader.setCacheSize(250);
+        reader.readRegion(a);
+        reader.readRegion(b);
+        Assert.assertEquals(reader.getCachedBytes(), 200);
+        reader.readRegion(a);
+        Assert.assertEquals(reader.fetched.size(), 2);
+        reader.readRegion(c);
+        Assert.assertTrue(reader.isCached(a));
+        Assert.assertFalse(reader.isCached(b));
+        Assert.assertTrue(reader.isCached(c));
+        Assert.assertEquals(reader.getCachedBytes(), 200);
+    }
+
+    @Test
+    public void testCacheSkipsLargeRegions() throws Exception {
+        final Region r = new Region(0, 0, 0, 40, 30);
+        reader.setCacheSize(1000);
+        reader.readRegion(r);
+        Assert.assertFalse(reader.isCached(r));
+        Assert.assertEquals(reader.getCachedBytes(), 0);
+        reader.setCacheSize(0);
+        reader.readRegion(new Region(0, 0, 0, 1, 1));
+        Assert.assertEquals(reader.getCachedBytes(), 0);
+    }
+
+    @Test
+    public void testPredictedRegionIsReadFromRequest() throws Exception {
+        reader.setReadAhead(2);
+        reader.readRegion(new Region(0, 0, 0, 40, 30));
+        final Region next = new Region(0, 40, 0, 40, 30);
+        Assert.assertEquals(reader.requested.size(), 2);
+        Assert.assertTrue(reader.isPending(next));
+        reader.readRegion(next);
+        Assert.assertFalse(reader.isPending(next));
+        Assert.assertEquals(reader.received, Collections.singletonList(next));
+        Assert.assertEquals(reader.fetched.size(), 1);
+    }
+
+    @Test
+    public void testMispredictedRequestMovedToCache() throws Exception {
+        reader.setReadAhead(1);
+        reader.readRegion(new Region(0, 0, 0, 40, 30));
+        final Region predicted = new Region(0, 40, 0, 40, 30);
+        Assert.assertTrue(reader.isPending(predicted));
+
+        // reading elsewhere predicts other regions, so the completed request
+        // is no longer expected and is moved to the cache
+        reader.readRegion(new Region(1, 0, 30, 40, 30));
+        Assert.assertFalse(reader.isPending(predicted));
+        Assert.assertTrue(reader.isCached(predicted));
+        Assert.assertTrue(reader.isPending(new Region(1, 40, 30, 40, 30)));
+
+        Assert.assertEquals(reader.received, Collections.singletonList(predicted));
+        final int fetched = reader.fetched.size();
+        reader.readRegion(predicted);
+        Assert.assertEquals(reader.fetched.size(), fetched);
+    }
+}
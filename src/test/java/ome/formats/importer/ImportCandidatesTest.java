@@ -25,7 +25,9 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -38,6 +40,7 @@ import org.testng.annotations.Test;
 import com.google.common.collect.Collections2;
 
 import junit.framework.Assert;
+import ome.formats.importer.util.ErrorHandler;
 import omero.util.TempFileManager;
 
 /**
@@ -270,6 +273,65 @@ public class ImportCandidatesTest {
         FileUtils.deleteQuietly(fakeFolder);
     }
 
+    @Test
+    /**
+     * Tests that scanning on several threads and rescanning with a cache
+     * find the same filesets and unreadable files as a sequential scan.
+     */
+    public void testParallelScanWithCache() throws Exception {
+        File fakeFolder = TempFileManager.create_path("ImportCandidatesTest_5",
+                "", true);
+
+        File f1 = new File(fakeFolder, "test1.pattern");
+        echo("test1_T<1-4>.fake", f1);
+        for (int i = 1; i <= 6; i++) {
+            echo("", new File(fakeFolder, "test1_T" + i + ".fake"));
+        }
+        File f2 = new File(fakeFolder, "test2.pattern");
+        echo("test1_T<3-6>.fake", f2);
+        // A dangling link cannot be read, even by the superuser
+        File unreadable = new File(fakeFolder, "missing.fake");
+        Files.createSymbolicLink(unreadable.toPath(),
+                new File(fakeFolder, "nowhere.fake").toPath());
+
+        String[] files = new String[] { fakeFolder.getAbsolutePath() };
+        File cacheFile = new File(fakeFolder.getParentFile(),
+                fakeFolder.getName() + ".cache");
+
+        List<String> expectedUnreadable = new ArrayList<String>();
+        List<String> expected = paths(createImportCandidates(
+                new ImportConfig(), files, expectedUnreadable));
+        Assert.assertEquals(Collections.singletonList(
+                unreadable.getAbsolutePath()), expectedUnreadable);
+
+        ImportConfig config = new ImportConfig();
+        config.parallelScan.set(4);
+        config.scanCache.set(cacheFile.getAbsolutePath());
+        List<String> parallelUnreadable = new ArrayList<String>();
+        List<String> parallel = paths(createImportCandidates(config, files,
+                parallelUnreadable));
+        Assert.assertEquals(expected, parallel);
+        Assert.assertEquals(expectedUnreadable, parallelUnreadable);
+        Assert.assertTrue(cacheFile.exists());
+
+        List<String> cachedUnreadable = new ArrayList<String>();
+        List<String> cached = paths(createImportCandidates(config, files,
+                cachedUnreadable));
+        Assert.assertEquals(expected, cached);
+        Assert.assertEquals(expectedUnreadable, cachedUnreadable);
+
+        FileUtils.deleteQuietly(cacheFile);
+        FileUtils.deleteQuietly(fakeFolder);
+    }
+
+    private List<String> paths(List<ImportContainer> cons) {
+        List<String> paths = new ArrayList<String>();
+        for (ImportContainer con : cons) {
+            paths.add(con.getFile().getAbsolutePath());
+        }
+        return paths;
+    }
+
     /**
      * Creates a ImportCandidates from the provided files and returns its
      * ImportContainers.
@@ -279,11 +341,45 @@ public class ImportCandidatesTest {
      * @return The ImportContainers
      */
     private List<ImportContainer> createImportCandidates(String[] files) {
-        ImportConfig config = new ImportConfig();
+        return createImportCandidates(new ImportConfig(), files);
+    }
+
+    /**
+     * Creates a ImportCandidates from the provided files with the given
+     * configuration and returns its ImportContainers.
+     *
+     * @param config
+     *            The configuration
+     * @param files
+     *            The file to import
+     * @return The ImportContainers
+     */
+    private List<ImportContainer> createImportCandidates(ImportConfig config,
+            String[] files) {
+        return createImportCandidates(config, files, new ArrayList<String>());
+    }
+
+    /**
+     * Creates a ImportCandidates from the provided files with the given
+     * configuration and returns its ImportContainers.
+     *
+     * @param config
+     *            The configuration
+     * @param files
+     *            The file to import
+     * @param unreadable
+     *            Filled with the files reported as unreadable, in order
+     * @return The ImportContainers
+     */
+    private List<ImportContainer> createImportCandidates(ImportConfig config,
+            String[] files, final List<String> unreadable) {
         OMEROWrapper w = new OMEROWrapper(config);
         IObserver o = new IObserver() {
             public void update(IObservable importLibrary, ImportEvent event) {
-                // nothing to do
+                if (event instanceof ErrorHandler.UNREADABLE_FILE) {
+                    unreadable.add(
+                            ((ErrorHandler.UNREADABLE_FILE) event).filename);
+                }
             }
         };
         return (new ImportCandidates(w, files, o)).getContainers();
@@ -33,6 +33,7 @@ import omero.model.Image;
 import omero.model.ObjectiveSettings;
 import omero.model.Pixels;
 import omero.api.ServiceFactoryPrx;
+import omero.metadatastore.IObjectContainer;
 
 import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
@@ -116,6 +117,46 @@ public class IObjectContainerStoreTest
 				Pixels.class, IMAGE_INDEX + 1), 1);
 	}
 
+	@Test
+	public void testGetIObjectContainerReturnsCachedInstance()
+	{
+		LinkedHashMap<Index, Integer> indexes =
+			new LinkedHashMap<Index, Integer>();
+		indexes.put(Index.IMAGE_INDEX, IMAGE_INDEX);
+		IObjectContainer a = store.getIObjectContainer(Image.class, indexes);
+		IObjectContainer b = store.getIObjectContainer(Image.class, indexes);
+		Assert.assertSame(a, b);
+		Assert.assertSame(store.getContainerCache().get(
+				new LSID(Image.class, IMAGE_INDEX)), a);
+		Assert.assertEquals(store.countCachedContainers(Image.class), 2);
+	}
+
+	@Test
+	public void testRemoveIObjectContainer()
+	{
+		store.removeIObjectContainer(new LSID(Image.class, IMAGE_INDEX));
+		Assert.assertEquals(store.countCachedContainers(Image.class), 1);
+		Assert.assertEquals(store.getIObjectContainers(Image.class).size(), 1);
+		Assert.assertNull(store.getSourceObject(new LSID(Image.class, IMAGE_INDEX)));
+		Assert.assertNotNull(store.getSourceObject(new LSID(Image.class, IMAGE_INDEX + 1)));
+	}
+
+	@Test
+	public void testGetIObjectContainersOrdered()
+	{
+		for (int i = 9; i >= 2; i--)
+		{
+			store.setImageName(String.valueOf(i), i);
+		}
+		int expected = 0;
+		for (IObjectContainer container : store.getIObjectContainers(Image.class))
+		{
+			Assert.assertEquals(container.LSID,
+					new LSID(Image.class, expected++).toString());
+		}
+		Assert.assertEquals(expected, 10);
+	}
+
 	@Test
 	public void testHasReference()
 	{
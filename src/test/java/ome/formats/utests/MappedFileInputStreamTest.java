@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.formats.utests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Random;
+
+import ome.formats.importer.transfers.MappedFileInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link MappedFileInputStream} returns the same bytes as the
+ * file on disk, including across region boundaries.
+ *
+ * @since 5.5.0
+ */
+public class MappedFileInputStreamTest {
+
+    private File file;
+
+    private byte[] data;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        data = new byte[10007];
+        new Random(42).nextBytes(data);
+        file = File.createTempFile("mapped", ".bin");
+        FileUtils.writeByteArrayToFile(file, data);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        file.delete();
+    }
+
+    private byte[] readAll(InputStream in, int bufferSize) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[bufferSize];
+        int rlen;
+        while ((rlen = in.read(buf)) != -1) {
+            out.write(buf, 0, rlen);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testSingleRegion() throws Exception {
+        final InputStream in = new MappedFileInputStream(file);
+        try {
+            Assert.assertEquals(readAll(in, 4096), data);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testManyRegions() throws Exception {
+        final InputStream in = new MappedFileInputStream(file, 1000);
+        try {
+            Assert.assertEquals(in.available(), data.length);
+            Assert.assertEquals(readAll(in, 333), data);
+            Assert.assertEquals(in.available(), 0);
+            Assert.assertEquals(in.read(), -1);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testReadsFillAcrossRegions() throws Exception {
+        final InputStream in = new MappedFileInputStream(file, 1000);
+        try {
+            final byte[] buf = new byte[2500];
+            Assert.assertEquals(in.read(buf), buf.length);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testSkip() throws Exception {
+        final InputStream in = new MappedFileInputStream(file, 1000);
+        try {
+            Assert.assertEquals(in.read(), data[0] & 0xff);
+            Assert.assertEquals(in.skip(1500), 1500);
+            Assert.assertEquals(in.read(), data[1501] & 0xff);
+            Assert.assertEquals(in.skip(data.length), data.length - 1502);
+            Assert.assertEquals(in.read(), -1);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        FileUtils.writeByteArrayToFile(file, new byte[0]);
+        final InputStream in = new MappedFileInputStream(file);
+        try {
+            Assert.assertEquals(in.read(new byte[10]), -1);
+        } finally {
+            in.close();
+        }
+    }
+}
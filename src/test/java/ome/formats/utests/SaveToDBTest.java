@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package ome.formats.utests;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ome.formats.OMEROMetadataStoreClient;
+import ome.formats.model.BlitzInstanceProvider;
+import ome.xml.model.primitives.PositiveInteger;
+import omero.api.MetadataStorePrx;
+import omero.model.IObject;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the channel minimums and maximums can still be set once
+ * {@link OMEROMetadataStoreClient#saveToDB(omero.model.FilesetJobLink)} has
+ * evicted the saved containers, as happens when the pixel data is parsed
+ * after the metadata is saved.
+ *
+ * @since 5.5.0
+ */
+@Test(groups = "unit")
+public class SaveToDBTest
+{
+    private OMEROMetadataStoreClient store;
+
+    /** The calls made on the server-side store, by operation. */
+    private final Map<String, Object[]> calls = new HashMap<String, Object[]>();
+
+    @BeforeMethod
+    protected void setUp() throws Exception
+    {
+        calls.clear();
+        store = new OMEROMetadataStoreClient();
+        store.setEnumerationProvider(new TestEnumerationProvider());
+        store.setInstanceProvider(
+            new BlitzInstanceProvider(store.getEnumerationProvider()));
+        store.setReferenceStringCache(new HashMap<String, String[]>());
+
+        // Stands in for the server-side store, recording the calls made.
+        MetadataStorePrx delegate = (MetadataStorePrx) Proxy.newProxyInstance(
+            MetadataStorePrx.class.getClassLoader(),
+            new Class<?>[] { MetadataStorePrx.class },
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    calls.put(method.getName(), args);
+                    if (method.getName().equals("saveToDB"))
+                    {
+                        Map<String, List<IObject>> rv =
+                            new HashMap<String, List<IObject>>();
+                        rv.put("Pixels", new ArrayList<IObject>());
+                        return rv;
+                    }
+                    return null;
+                }
+            });
+        Field field = OMEROMetadataStoreClient.class.getDeclaredField("delegate");
+        field.setAccessible(true);
+        field.set(store, delegate);
+
+        store.setImageName("first", 0);
+        store.setPixelsSizeC(new PositiveInteger(3), 0);
+        store.setImageName("second", 1);
+        store.setPixelsSizeC(new PositiveInteger(2), 1);
+    }
+
+    @Test
+    public void testChannelGlobalMinMaxAfterSave()
+    {
+        store.saveToDB(null);
+        Assert.assertTrue(calls.containsKey("begin_updateObjects"));
+        Assert.assertTrue(calls.containsKey("end_updateObjects"));
+        Assert.assertEquals(store.countCachedContainers(null), 0);
+
+        store.setChannelGlobalMinMax(2, 1.0, 255.0, 0);
+        store.setChannelGlobalMinMax(1, 2.0, 127.0, 1);
+        store.populateMinMax();
+
+        double[][][] minMax = (double[][][]) calls.get("populateMinMax")[0];
+        Assert.assertEquals(minMax.length, 2);
+        Assert.assertEquals(minMax[0].length, 3);
+        Assert.assertEquals(minMax[1].length, 2);
+        Assert.assertEquals(minMax[0][2], new double[] { 1.0, 255.0 });
+        Assert.assertEquals(minMax[1][1], new double[] { 2.0, 127.0 });
+        Assert.assertNull(minMax[0][0]);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.blitz.test.utests;
+
+import static omero.rtypes.rlong;
+import static omero.rtypes.rstring;
+
+import java.lang.reflect.Method;
+
+import ome.api.ServiceInterface;
+import ome.services.blitz.util.IceMethodInvoker;
+import omero.util.IceMapper;
+
+import org.perf4j.StopWatch;
+import org.perf4j.slf4j.Slf4JStopWatch;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks the compiled dispatch of {@link IceMethodInvoker} and compares its
+ * overhead with that of mapping every argument and calling
+ * {@link Method#invoke(Object, Object...)}, as was done before.
+ * The comparison is in the "manual" group; its timings are logged.
+ *
+ * @since 5.5.0
+ */
+public class IceMethodInvokerBenchmarkTest {
+
+    private static final int WARMUP = 100000;
+
+    private static final int CALLS = 1000000;
+
+    public interface Adder extends ServiceInterface {
+
+        long add(long a, int b);
+
+        Long addBoxed(Long a, Long b);
+
+        String concat(String a, String b);
+    }
+
+    public static class AdderImpl implements Adder {
+
+        public long add(long a, int b) {
+            return a + b;
+        }
+
+        public Long addBoxed(Long a, Long b) {
+            return a + b;
+        }
+
+        public String concat(String a, String b) {
+            return a + b;
+        }
+    }
+
+    private final Adder adder = new AdderImpl();
+
+    private IceMethodInvoker invoker;
+
+    private IceMapper mapper;
+
+    private Ice.Current current;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        invoker = new IceMethodInvoker(Adder.class, null);
+        mapper = new IceMapper();
+        current = new Ice.Current();
+        current.operation = "add";
+    }
+
+    @Test(groups = "unit")
+    public void testPrimitiveCall() throws Exception {
+        Assert.assertEquals(invoker.invoke(adder, current, mapper, 40L, 2),
+                42L);
+    }
+
+    @Test(groups = "unit")
+    public void testMappedCall() throws Exception {
+        current.operation = "addBoxed";
+        Object rv = invoker.invoke(adder, current, mapper, rlong(40),
+                rlong(2));
+        Assert.assertEquals(((omero.RLong) rv).getValue(), 42L);
+    }
+
+    @Test(groups = "unit")
+    public void testRStringIntoStringParameter() throws Exception {
+        current.operation = "concat";
+        Assert.assertEquals(invoker.invoke(adder, current, mapper, "4", "2"),
+                "42");
+        Assert.assertEquals(invoker.invoke(adder, current, mapper,
+                rstring("4"), "2"), "42");
+        Assert.assertEquals(invoker.invoke(adder, current, mapper,
+                rstring("4"), rstring("2")), "42");
+    }
+
+    @Test(groups = "unit", expectedExceptions = IllegalArgumentException.class)
+    public void testWrongArgumentCount() throws Exception {
+        invoker.invoke(adder, current, mapper, 40L);
+    }
+
+    /**
+     * The call as made before the methods were compiled: each argument and
+     * the return value go through the mapper.
+     */
+    private Object reflective(Method m, Object... args) throws Exception {
+        Class<?>[] params = m.getParameterTypes();
+        Object[] objs = new Object[params.length];
+        for (int i = 0; i < params.length; i++) {
+            objs[i] = mapper.handleInput(params[i], args[i]);
+        }
+        return mapper.handleOutput(m.getReturnType(), m.invoke(adder, objs));
+    }
+
+    @Test(groups = "manual")
+    public void testDispatchOverhead() throws Exception {
+        final Method m = Adder.class.getMethod("add", long.class, int.class);
+        long sum = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sum += (Long) reflective(m, (long) i, 1);
+            sum += (Long) invoker.invoke(adder, current, mapper, (long) i, 1);
+        }
+        StopWatch watch = new Slf4JStopWatch();
+        for (int i = 0; i < CALLS; i++) {
+            sum += (Long) reflective(m, (long) i, 1);
+        }
+        watch.lap("invoker.reflective");
+        for (int i = 0; i < CALLS; i++) {
+            sum += (Long) invoker.invoke(adder, current, mapper, (long) i, 1);
+        }
+        watch.stop("invoker.compiled");
+        Assert.assertTrue(sum > 0);
+    }
+}
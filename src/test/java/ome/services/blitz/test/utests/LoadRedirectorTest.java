@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package ome.services.blitz.test.utests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import ome.services.blitz.redirect.LoadRedirector;
+import ome.services.blitz.redirect.Redirector;
+import ome.system.Principal;
+import omero.grid.NodeLoad;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test that {@link LoadRedirector} chooses the least loaded node, spreads
+ * logins while its load reports are cached and refetches them when the
+ * cluster changes.
+ *
+ * @since 5.5.0
+ */
+@Test(groups = "unit")
+public class LoadRedirectorTest {
+
+    /** Cluster of a local node "a" and a remote node "b". */
+    private static class Cluster implements Redirector.Context {
+
+        int aSessions, bSessions, fetches;
+
+        public String uuid() {
+            return "a";
+        }
+
+        public String getDirectProxy() {
+            return "proxy-a";
+        }
+
+        public Principal principal() {
+            return null;
+        }
+
+        public Ice.Communicator getCommunicator() {
+            return null;
+        }
+
+        public Set<String> getManagerList(boolean activeOnly) {
+            return null;
+        }
+
+        public List<NodeLoad> getNodeLoads() {
+            fetches++;
+            List<NodeLoad> loads = new ArrayList<NodeLoad>();
+            loads.add(new NodeLoad("a", "proxy-a", aSessions, 0, 0));
+            loads.add(new NodeLoad("b", "proxy-b", bSessions, 0, 0));
+            return loads;
+        }
+    }
+
+    /** Exposes the choice and skips the lookup of joined sessions. */
+    private static class TestRedirector extends LoadRedirector {
+
+        TestRedirector(long cacheMillis) {
+            super(null, cacheMillis);
+        }
+
+        @Override
+        protected String proxyForSession(Context ctx, String sessionUuid) {
+            return null;
+        }
+
+        String next(Context ctx) {
+            return choose(ctx).uuid;
+        }
+    }
+
+    @Test
+    public void testLoginsSpreadWhileCached() {
+        Cluster cluster = new Cluster();
+        cluster.aSessions = 2;
+        TestRedirector redirector = new TestRedirector(60000);
+        Assert.assertEquals(redirector.next(cluster), "b");
+        Assert.assertEquals(redirector.next(cluster), "b");
+        // a tie goes to the local node
+        Assert.assertEquals(redirector.next(cluster), "a");
+        Assert.assertEquals(redirector.next(cluster), "b");
+        Assert.assertEquals(cluster.fetches, 1);
+    }
+
+    @Test
+    public void testClusterChangeRefetches() {
+        Cluster cluster = new Cluster();
+        cluster.bSessions = 5;
+        TestRedirector redirector = new TestRedirector(60000);
+        Assert.assertEquals(redirector.next(cluster), "a");
+        cluster.aSessions = 10;
+        Assert.assertEquals(redirector.next(cluster), "a");
+        redirector.chooseNextRedirect(cluster, null);
+        Assert.assertEquals(redirector.next(cluster), "b");
+        Assert.assertEquals(cluster.fetches, 2);
+    }
+
+    @Test
+    public void testNodeShutdown() {
+        Cluster cluster = new Cluster();
+        cluster.aSessions = 10;
+        TestRedirector redirector = new TestRedirector(60000);
+        Assert.assertEquals(redirector.next(cluster), "b");
+        redirector.handleRingShutdown(cluster, "b");
+        Assert.assertEquals(redirector.next(cluster), "a");
+    }
+
+    @Test
+    public void testLocalSessionNotRedirected() throws Exception {
+        Cluster cluster = new Cluster();
+        cluster.bSessions = 1;
+        TestRedirector redirector = new TestRedirector(60000);
+        Ice.Current current = new Ice.Current();
+        current.ctx = new HashMap<String, String>();
+        Assert.assertNull(redirector.getProxyOrNull(cluster, "user", null,
+                current));
+        Assert.assertFalse(current.ctx.containsKey("omero.routed_from"));
+    }
+}
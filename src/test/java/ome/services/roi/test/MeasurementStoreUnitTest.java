@@ -10,6 +10,7 @@ package ome.services.roi.test;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,6 +22,7 @@ import ome.model.annotations.ImageAnnotationLink;
 import ome.model.annotations.XmlAnnotation;
 import ome.model.core.Image;
 import ome.model.core.OriginalFile;
+import ome.model.roi.Roi;
 import ome.services.blitz.measurements.MeasurementStore;
 import ome.services.blitz.measurements.OmeroMeasurementStore;
 import omero.ApiUsageException;
@@ -313,6 +315,37 @@ public class MeasurementStoreUnitTest extends MockObjectTestCase {
 
     }
 
+    public void testStreamingUsage() throws Exception {
+
+        Column[] cols = new Column[] { new RoiColumn(), new LongColumn() };
+        initialize(cols);
+        save(2, Arrays.asList(1L, 2L));
+        save(1, Arrays.asList(3L));
+        data(cols, 2);
+        data(cols, 1);
+
+        MeasurementStore store = new MeasurementStore(update, table);
+        store.setRoiBatchSize(2);
+        store.setRowChunkSize(2);
+        mea = store;
+        mea.initialize(new String[] { "roi_id", "value_1" },
+                new String[] { "Roi" }, new Class[] { Long.class }, null);
+        // the first two are saved once a batch is complete
+        mea.addObject("Roi:1", new Roi());
+        mea.addObject("Roi:2", new Roi());
+        mea.addObject("Roi:3", new Roi());
+        mea.appendRows(new Object[][] {//
+                new Object[] { "Roi:1", 1L },//
+                        new Object[] { "Roi:2", 0L } //
+                });
+        mea.appendRows(new Object[][] {//
+                new Object[] { "Roi:3", 1L } //
+                });
+        mea.flush();
+        assertEquals(Arrays.asList(1L, 2L, 3L), mea.getRoiIds());
+
+    }
+
     // Helpers
     // =========================================================================
 
@@ -392,6 +425,20 @@ public class MeasurementStoreUnitTest extends MockObjectTestCase {
         }).will(returnValue(arr));
     }
 
+    void save(final int batchSize, List<Long> ids) {
+        uMock.expects(once()).method("saveAndReturnIds").with(new Constraint() {
+            public boolean eval(Object arg0) {
+                IObject[] rois = (IObject[]) arg0;
+                return rois.length == batchSize;
+            }
+
+            public StringBuffer describeTo(StringBuffer arg0) {
+                arg0.append("saves a batch of " + batchSize);
+                return arg0;
+            }
+        }).will(returnValue(ids));
+    }
+
     void data(final Column[] testcols, final int size) {
         tMock.expects(once()).method("addData").with(new Constraint() {
             public boolean eval(Object arg0) {
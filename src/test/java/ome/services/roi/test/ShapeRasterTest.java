@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.roi.test;
+
+import static omero.rtypes.rstring;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.util.HashSet;
+import java.util.Set;
+
+import omero.model.SmartPolygonI;
+import omero.model.SmartShape.PointCallback;
+import omero.model.SmartShape.RunCallback;
+import omero.model.SmartShape.Util;
+
+import org.perf4j.StopWatch;
+import org.perf4j.slf4j.Slf4JStopWatch;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the scanline rasterizer used by
+ * {@link omero.model.SmartShape#areaRuns(RunCallback)} includes the same
+ * points as sampling every pixel of the bounding box and compares the time
+ * taken by each.
+ *
+ * @since 5.5.0
+ */
+@Test(groups = { "rois" })
+public class ShapeRasterTest {
+
+    private static Set<Long> byBoundingBox(Shape s) {
+        final Set<Long> points = new HashSet<Long>();
+        Util.pointsByBoundingBox(s, s.getBounds2D(), new PointCallback() {
+            public void handle(int x, int y) {
+                points.add(key(x, y));
+            }
+        });
+        return points;
+    }
+
+    private static Set<Long> byScanline(Shape s) {
+        final Set<Long> points = new HashSet<Long>();
+        Util.runsByScanline(s, s.getBounds2D(), new RunCallback() {
+            public void handle(int y, int xStart, int xEnd) {
+                for (int x = xStart; x <= xEnd; x++) {
+                    points.add(key(x, y));
+                }
+            }
+        });
+        return points;
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    private static Shape polygon(String points) {
+        return Util.parseAwtPath(Util.parsePointsToPath(points, true));
+    }
+
+    @Test
+    public void testRectangle() {
+        final Shape s = new Rectangle2D.Double(0, 0, 10, 10);
+        Assert.assertEquals(byScanline(s).size(), 100);
+        Assert.assertEquals(byScanline(s), byBoundingBox(s));
+    }
+
+    @Test
+    public void testFractionalRectangle() {
+        final Shape s = new Rectangle2D.Double(3.5, 2.25, 17.3, 9.9);
+        Assert.assertEquals(byScanline(s), byBoundingBox(s));
+    }
+
+    @Test
+    public void testEllipse() {
+        final Shape s = new Ellipse2D.Double(1.3, 7.7, 301.1, 97.2);
+        Assert.assertEquals(byScanline(s), byBoundingBox(s));
+    }
+
+    @Test
+    public void testRotatedRectangle() {
+        final Shape s = AffineTransform.getRotateInstance(0.3).createTransformedShape(
+                new Rectangle2D.Double(20, 20, 50, 30));
+        Assert.assertEquals(byScanline(s), byBoundingBox(s));
+    }
+
+    @Test
+    public void testSelfIntersectingPolygon() {
+        final Shape s = polygon("10,10 90,20 30,80 80,80 20,30");
+        Assert.assertEquals(byScanline(s), byBoundingBox(s));
+    }
+
+    @Test
+    public void testSmartPolygonPointsMatchRuns() {
+        final SmartPolygonI polygon = new SmartPolygonI();
+        polygon.setPoints(rstring("0,0 40,5 20,30 35,35 5,40"));
+        final Set<Long> points = new HashSet<Long>();
+        polygon.areaPoints(new PointCallback() {
+            public void handle(int x, int y) {
+                points.add(key(x, y));
+            }
+        });
+        Assert.assertEquals(points, byBoundingBox(polygon.asAwtShape()));
+    }
+
+    @Test
+    public void testLargeEllipseTiming() {
+        final Shape s = new Ellipse2D.Double(0, 0, 2000, 2000);
+        final long[] count = new long[2];
+        final StopWatch watch = new Slf4JStopWatch();
+        Util.pointsByBoundingBox(s, s.getBounds2D(), new PointCallback() {
+            public void handle(int x, int y) {
+                count[0]++;
+            }
+        });
+        watch.lap("rasterize.boundingBox");
+        Util.runsByScanline(s, s.getBounds2D(), new RunCallback() {
+            public void handle(int y, int xStart, int xEnd) {
+                count[1] += xEnd - xStart + 1;
+            }
+        });
+        watch.stop("rasterize.scanline");
+        Assert.assertEquals(count[1], count[0]);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package ome.services.throttling;
+
+import java.util.List;
+
+import ome.system.OmeroContext;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test that {@link FairQueue} serves sessions in turn and rejects tasks
+ * beyond its capacities.
+ *
+ * @since 5.5.0
+ */
+@Test(groups = "unit")
+public class FairQueueTest {
+
+    private static class Named extends Task {
+
+        final String name;
+
+        Named(String name) {
+            super(null, null, true);
+            this.name = name;
+        }
+
+        @Override
+        public void run(OmeroContext ctx) {
+        }
+    }
+
+    private static String next(FairQueue queue) throws InterruptedException {
+        return ((Named) queue.take().task).name;
+    }
+
+    @Test
+    public void testSessionsServedInTurn() throws Exception {
+        FairQueue queue = new FairQueue("test", 10, 10);
+        Assert.assertTrue(queue.offer("a", new Named("a1"), null));
+        Assert.assertTrue(queue.offer("a", new Named("a2"), null));
+        Assert.assertTrue(queue.offer("a", new Named("a3"), null));
+        Assert.assertTrue(queue.offer("b", new Named("b1"), null));
+        Assert.assertTrue(queue.offer("c", new Named("c1"), null));
+        Assert.assertTrue(queue.offer("b", new Named("b2"), null));
+        Assert.assertEquals(queue.getDepth(), 6);
+
+        Assert.assertEquals(next(queue), "a1");
+        Assert.assertEquals(next(queue), "b1");
+        Assert.assertEquals(next(queue), "c1");
+        Assert.assertEquals(next(queue), "a2");
+        Assert.assertEquals(next(queue), "b2");
+        Assert.assertEquals(next(queue), "a3");
+        Assert.assertEquals(queue.getDepth(), 0);
+        Assert.assertEquals(queue.getStarted(), 6);
+    }
+
+    @Test
+    public void testCapacities() throws Exception {
+        FairQueue queue = new FairQueue("test", 3, 2);
+        Assert.assertTrue(queue.offer("a", new Named("a1"), null));
+        Assert.assertTrue(queue.offer("a", new Named("a2"), null));
+        Assert.assertFalse(queue.offer("a", new Named("a3"), null));
+        Assert.assertTrue(queue.offer("b", new Named("b1"), null));
+        Assert.assertFalse(queue.offer("c", new Named("c1"), null));
+        Assert.assertEquals(queue.getRejected(), 2);
+
+        Assert.assertEquals(next(queue), "a1");
+        Assert.assertTrue(queue.offer("c", new Named("c1"), null));
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        FairQueue queue = new FairQueue("test", 10, 10);
+        queue.offer("a", new Named("a1"), null);
+        queue.offer("b", new Named("b1"), null);
+        List<Task> remaining = queue.close();
+        Assert.assertEquals(remaining.size(), 2);
+        Assert.assertNull(queue.take());
+        Assert.assertFalse(queue.offer("a", new Named("a2"), null));
+    }
+}
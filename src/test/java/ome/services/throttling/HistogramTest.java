@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package ome.services.throttling;
+
+import ome.system.OmeroContext;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test that {@link Histogram} reports percentiles within its precision and
+ * that {@link CallMetrics} records tasks per servant and operation.
+ *
+ * @since 5.5.0
+ */
+@Test(groups = "unit")
+public class HistogramTest {
+
+    @Test
+    public void testSmallValuesExact() {
+        Histogram h = new Histogram();
+        for (int i = 1; i <= 10; i++) {
+            h.record(i);
+        }
+        Assert.assertEquals(h.getCount(), 10);
+        Assert.assertEquals(h.getTotal(), 55);
+        Assert.assertEquals(h.getMax(), 10);
+        Assert.assertEquals(h.getValueAtPercentile(50), 5);
+        Assert.assertEquals(h.getValueAtPercentile(90), 9);
+        Assert.assertEquals(h.getValueAtPercentile(100), 10);
+        Assert.assertEquals(h.getMean(), 5.5, 1e-9);
+    }
+
+    @Test
+    public void testLargeValuesWithinPrecision() {
+        Histogram h = new Histogram();
+        for (long i = 1; i <= 1000; i++) {
+            h.record(i * 1000000L);
+        }
+        for (double p : new double[] { 10, 50, 90, 99 }) {
+            long expected = (long) (p * 10) * 1000000L;
+            long actual = h.getValueAtPercentile(p);
+            Assert.assertTrue(actual >= expected, p + ": " + actual);
+            Assert.assertTrue(actual <= expected * (1 + 1.0 / Histogram.SUB_BUCKETS),
+                    p + ": " + actual);
+        }
+        Assert.assertEquals(h.getValueAtPercentile(100), 1000000000L);
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        for (long v = 0; v < 100000; v++) {
+            int i = Histogram.index(v);
+            Assert.assertTrue(v <= Histogram.highest(i));
+            Assert.assertTrue(i == 0 || v > Histogram.highest(i - 1));
+        }
+        Assert.assertEquals(Histogram.highest(Histogram.index(Long.MAX_VALUE)),
+                Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testEmptyAndReset() {
+        Histogram h = new Histogram();
+        Assert.assertEquals(h.getValueAtPercentile(99), 0);
+        h.record(-5);
+        h.record(7);
+        Assert.assertEquals(h.getValueAtPercentile(0), 0);
+        h.reset();
+        Assert.assertEquals(h.getCount(), 0);
+        Assert.assertEquals(h.getMax(), 0);
+    }
+
+    private static class Read extends Task {
+
+        Read(Ice.Current current) {
+            super(null, current, false);
+        }
+
+        @Override
+        public void run(OmeroContext ctx) {
+        }
+    }
+
+    @Test
+    public void testCallMetrics() {
+        CallMetrics metrics = new CallMetrics();
+        Ice.Current current = new Ice.Current();
+        current.operation = "read";
+        Read task = new Read(current);
+        task.payload = CallMetrics.sizeOf(new int[16]);
+        metrics.record(task, task.created + 1000, task.created + 5000);
+        metrics.record(task, task.created + 3000, task.created + 4000);
+
+        CallMetrics.Operation op = metrics.getOperation("HistogramTest", "read");
+        Assert.assertNotNull(op);
+        Assert.assertEquals(op.getQueueWait().getMax(), 3000);
+        Assert.assertEquals(op.getRunTime().getMax(), 4000);
+        Assert.assertEquals(op.getPayloadBytes().getMax(), 64);
+        Assert.assertEquals(metrics.getOperations(),
+                new String[] { "HistogramTest.read" });
+        Assert.assertEquals(metrics.getRunTime("HistogramTest.read")[0], 2);
+
+        metrics.reset();
+        Assert.assertEquals(metrics.list().size(), 0);
+    }
+}
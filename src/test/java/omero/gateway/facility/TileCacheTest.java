@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package omero.gateway.facility;
+
+import omero.gateway.rnd.DataSink;
+import omero.gateway.rnd.Plane2D;
+import omero.util.ReadOnlyByteArray;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test that {@link TileCache} evicts the least recently used tiles to stay
+ * within its size and counts hits and misses.
+ *
+ * @since 5.5.0
+ */
+@Test(groups = "unit")
+public class TileCacheTest {
+
+    /** Creates a 10x10 8-bit tile, that is 100 bytes. */
+    private static Plane2D tile() {
+        byte[] data = new byte[100];
+        return new Plane2D(new ReadOnlyByteArray(data, 0, data.length), 10,
+                10, DataSink.UINT_8);
+    }
+
+    private static TileCache.Key key(int x) {
+        return new TileCache.Key(1, -1, 0, 0, 0, x, 0, 10, 10);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        TileCache cache = new TileCache(1000);
+        Plane2D tile = tile();
+        Assert.assertNull(cache.get(key(0)));
+        cache.put(key(0), tile);
+        Assert.assertSame(cache.get(key(0)), tile);
+        Assert.assertSame(cache.get(key(0)), tile);
+        Assert.assertNull(cache.get(key(10)));
+        Assert.assertEquals(cache.getHits(), 2);
+        Assert.assertEquals(cache.getMisses(), 2);
+        Assert.assertEquals(cache.getBytes(), 100);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        TileCache cache = new TileCache(300);
+        cache.put(key(0), tile());
+        cache.put(key(10), tile());
+        cache.put(key(20), tile());
+        /* make the first tile the most recently used */
+        Assert.assertNotNull(cache.get(key(0)));
+        cache.put(key(30), tile());
+        Assert.assertEquals(cache.getBytes(), 300);
+        Assert.assertTrue(cache.contains(key(0)));
+        Assert.assertFalse(cache.contains(key(10)));
+        Assert.assertTrue(cache.contains(key(20)));
+        Assert.assertTrue(cache.contains(key(30)));
+
+        cache.setMaxBytes(100);
+        Assert.assertEquals(cache.getBytes(), 100);
+        Assert.assertTrue(cache.contains(key(30)));
+    }
+
+    @Test
+    public void testDisabled() {
+        TileCache cache = new TileCache(0);
+        cache.put(key(0), tile());
+        Assert.assertFalse(cache.contains(key(0)));
+        Assert.assertEquals(cache.getBytes(), 0);
+    }
+
+    @Test
+    public void testReplace() {
+        TileCache cache = new TileCache(1000);
+        cache.put(key(0), tile());
+        Plane2D tile = tile();
+        cache.put(key(0), tile);
+        Assert.assertEquals(cache.getBytes(), 100);
+        Assert.assertSame(cache.get(key(0)), tile);
+        cache.clear();
+        Assert.assertEquals(cache.getBytes(), 0);
+        Assert.assertNull(cache.get(key(0)));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package omero.gateway.model;
+
+import omero.grid.Column;
+import omero.grid.Data;
+import omero.grid.DoubleColumn;
+import omero.grid.ImageColumn;
+import omero.grid.LongColumn;
+import omero.grid.StringColumn;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test that {@link ColumnarTableData} exposes the column arrays as read and
+ * creates the same values as {@link TableData} on demand.
+ *
+ * @since 5.5.0
+ */
+@Test(groups = "unit")
+public class ColumnarTableDataTest {
+
+    private final double[] doubles = { 1.5, 2.5, 3.5 };
+
+    private final long[] longs = { 7, 8, 9 };
+
+    private final long[] images = { 101, 102, 103 };
+
+    private ColumnarTableData create() {
+        Data data = new Data();
+        data.rowNumbers = new long[] { 0, 1, 2 };
+        data.columns = new Column[] {
+                new DoubleColumn("d", "", doubles),
+                new LongColumn("l", "", longs),
+                new ImageColumn("i", "", images) };
+        TableDataColumn[] header = new TableDataColumn[] {
+                new TableDataColumn("d", 0, Object.class),
+                new TableDataColumn("l", 1, Object.class),
+                new TableDataColumn("i", 2, Object.class) };
+        return new ColumnarTableData(header, data);
+    }
+
+    @Test
+    public void testPrimitiveArrays() {
+        ColumnarTableData table = create();
+        Assert.assertEquals(table.getRowCount(), 3);
+        Assert.assertSame(table.getDoubles(0), doubles);
+        Assert.assertSame(table.getLongs(1), longs);
+        Assert.assertSame(table.getLongs(2), images);
+        Assert.assertEquals(table.getColumns()[0].getType(), Double.class);
+        Assert.assertEquals(table.getColumns()[2].getType(), ImageData.class);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testTypeMismatch() {
+        create().getDoubles(1);
+    }
+
+    @Test
+    public void testValues() {
+        ColumnarTableData table = create();
+        Assert.assertEquals(table.getValue(0, 1), 2.5);
+        Assert.assertEquals(table.getValue(1, 2), 9L);
+        Object image = table.getValue(2, 0);
+        Assert.assertTrue(image instanceof ImageData);
+        Assert.assertEquals(((ImageData) image).getId(), 101);
+
+        TableData rows = table.toTableData();
+        Assert.assertEquals(rows.getData()[1][0], 7L);
+        Assert.assertEquals(((ImageData) rows.getData()[2][2]).getId(), 103);
+    }
+
+    @Test
+    public void testEmpty() {
+        Column[] headers = new Column[] {
+                new DoubleColumn("d", "doubles", null),
+                new ImageColumn("i", "", null),
+                new StringColumn("s", "", 64, null) };
+        TableDataColumn[] header = new TableDataColumn[] {
+                new TableDataColumn("d", 0, Object.class),
+                new TableDataColumn("i", 1, Object.class),
+                new TableDataColumn("s", 2, Object.class) };
+        ColumnarTableData table = ColumnarTableData.empty(header, headers);
+        Assert.assertEquals(table.getRowCount(), 0);
+        Assert.assertEquals(table.getDoubles(0).length, 0);
+        Assert.assertEquals(table.getLongs(1).length, 0);
+        Assert.assertEquals(table.getStrings(2).length, 0);
+        Assert.assertEquals(table.getColumn(0).description, "doubles");
+        Assert.assertEquals(((StringColumn) table.getColumn(2)).size, 64);
+        Assert.assertEquals(table.getColumns()[1].getType(), ImageData.class);
+        Assert.assertEquals(table.toTableData().getData()[2].length, 0);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package omero.gateway.rnd;
+
+import java.nio.ByteBuffer;
+
+import omero.util.ReadOnlyByteArray;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test that {@link Plane2D} reads pixels of each type as the
+ * {@link BytesConverter} strategies do, and copies them in row-major order.
+ *
+ * @since 5.5.0
+ */
+@Test(groups = "unit")
+public class Plane2DTest {
+
+    private static final int SIZE_X = 3;
+
+    private static final int SIZE_Y = 2;
+
+    private static ReadOnlyByteArray wrap(ByteBuffer buffer) {
+        byte[] bytes = buffer.array();
+        return new ReadOnlyByteArray(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Checks that the values match those of the strategy for the type.
+     */
+    private static void assertConverted(Plane2D plane, ReadOnlyByteArray data,
+            int bytesPerPixel) {
+        BytesConverter strategy = BytesConverter.getConverter(plane.getPixelType());
+        double[][] values = plane.getPixelValues();
+        double[] rowMajor = new double[SIZE_X * SIZE_Y];
+        plane.copyPixels(rowMajor);
+        for (int y = 0; y < SIZE_Y; y++) {
+            for (int x = 0; x < SIZE_X; x++) {
+                int index = y * SIZE_X + x;
+                double expected = strategy.pack(data, index * bytesPerPixel,
+                        bytesPerPixel);
+                Assert.assertEquals(plane.getPixelValue(x, y), expected);
+                Assert.assertEquals(values[x][y], expected);
+                Assert.assertEquals(rowMajor[index], expected);
+            }
+        }
+    }
+
+    @Test
+    public void testUint16() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE_X * SIZE_Y * 2);
+        short[] pixels = { 0, 1, -1, 1000, -32768, 32767 };
+        buffer.asShortBuffer().put(pixels);
+        ReadOnlyByteArray data = wrap(buffer);
+        Plane2D plane = new Plane2D(data, SIZE_X, SIZE_Y, DataSink.UINT_16);
+        assertConverted(plane, data, 2);
+        Assert.assertEquals(plane.getPixelValue(2, 0), 65535.0);
+
+        short[] copy = new short[SIZE_X * SIZE_Y];
+        plane.copyPixels(copy);
+        Assert.assertEquals(copy, pixels);
+    }
+
+    @Test
+    public void testInt8() {
+        byte[] pixels = { 0, 1, -1, 127, -128, 5 };
+        ReadOnlyByteArray data = new ReadOnlyByteArray(pixels, 0, pixels.length);
+        Plane2D plane = new Plane2D(data, SIZE_X, SIZE_Y, DataSink.INT_8);
+        assertConverted(plane, data, 1);
+        Assert.assertEquals(plane.getPixelValue(1, 1), -128.0);
+    }
+
+    @Test
+    public void testUint32() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE_X * SIZE_Y * 4);
+        int[] pixels = { 0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, 7 };
+        buffer.asIntBuffer().put(pixels);
+        ReadOnlyByteArray data = wrap(buffer);
+        Plane2D plane = new Plane2D(data, SIZE_X, SIZE_Y, DataSink.UINT_32);
+        assertConverted(plane, data, 4);
+
+        int[] copy = new int[SIZE_X * SIZE_Y];
+        plane.copyPixels(copy);
+        Assert.assertEquals(copy, pixels);
+    }
+
+    @Test
+    public void testFloat() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE_X * SIZE_Y * 4);
+        float[] pixels = { 0f, 1.5f, -2.25f, Float.MAX_VALUE, 1e-20f, 3f };
+        buffer.asFloatBuffer().put(pixels);
+        ReadOnlyByteArray data = wrap(buffer);
+        Plane2D plane = new Plane2D(data, SIZE_X, SIZE_Y, DataSink.FLOAT);
+        assertConverted(plane, data, 4);
+
+        float[] copy = new float[SIZE_X * SIZE_Y];
+        plane.copyPixels(copy);
+        Assert.assertEquals(copy, pixels);
+    }
+
+    @Test
+    public void testDouble() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE_X * SIZE_Y * 8);
+        double[] pixels = { 0, 1.5, -2.25, Double.MAX_VALUE, 1e-300, 3 };
+        buffer.asDoubleBuffer().put(pixels);
+        ReadOnlyByteArray data = wrap(buffer);
+        Plane2D plane = new Plane2D(data, SIZE_X, SIZE_Y, DataSink.DOUBLE);
+        assertConverted(plane, data, 8);
+    }
+
+    /**
+     * Planes created with a strategy behave as those created with the type.
+     */
+    @Test
+    public void testStrategyConstructor() {
+        byte[] pixels = { 0, 1, -1, 127, -128, 5 };
+        ReadOnlyByteArray data = new ReadOnlyByteArray(pixels, 0, pixels.length);
+        Plane2D plane = new Plane2D(data, SIZE_X, SIZE_Y, 1,
+                new UintConverter());
+        Assert.assertEquals(plane.getPixelType(), DataSink.UINT_8);
+        assertConverted(plane, data, 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testTypeMismatch() {
+        byte[] pixels = new byte[SIZE_X * SIZE_Y * 2];
+        ReadOnlyByteArray data = new ReadOnlyByteArray(pixels, 0, pixels.length);
+        new Plane2D(data, SIZE_X, SIZE_Y, DataSink.INT_16)
+                .copyPixels(new int[SIZE_X * SIZE_Y]);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testArrayTooShort() {
+        byte[] pixels = new byte[SIZE_X * SIZE_Y];
+        ReadOnlyByteArray data = new ReadOnlyByteArray(pixels, 0, pixels.length);
+        new Plane2D(data, SIZE_X, SIZE_Y, DataSink.UINT_8)
+                .copyPixels(new byte[SIZE_X]);
+    }
+}
@@ -20,6 +20,9 @@
 package omero.model;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
 
 import ome.model.units.BigResult;
 import omero.model.enums.UnitsLength;
@@ -54,4 +57,52 @@ public class UnitsTest {
         Assert.assertEquals(c.getValue(), 0, 1e-5);
         Assert.assertEquals(k.getValue(), 273.15, 1e-5);
     }
+
+    @Test
+    public void testMetricConversionIsExact() throws BigResult {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            double v = random.nextDouble() * 1000;
+            Length l = new LengthI(new LengthI(v, UnitsLength.MICROMETER),
+                    UnitsLength.MILLIMETER);
+            double expected = new BigDecimal(v).divide(
+                    BigDecimal.valueOf(1000)).doubleValue();
+            Assert.assertEquals(l.getValue(), expected);
+        }
+    }
+
+    @Test
+    public void testBulkLengthConversion() throws BigResult {
+        Random random = new Random(42);
+        double[] values = new double[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble() * 100;
+        }
+        double[] converted = LengthI.convert(values, UnitsLength.INCH,
+                UnitsLength.METER);
+        BigDecimal factor = BigDecimal.valueOf(10000).divide(
+                BigDecimal.valueOf(393701), MathContext.DECIMAL128);
+        for (int i = 0; i < values.length; i++) {
+            double expected = new BigDecimal(values[i]).multiply(factor)
+                    .doubleValue();
+            Assert.assertEquals(converted[i], expected, Math.ulp(expected));
+            Assert.assertEquals(converted[i], new LengthI(new LengthI(
+                    values[i], UnitsLength.INCH), UnitsLength.METER).getValue());
+        }
+    }
+
+    @Test
+    public void testBulkTemperatureConversion() throws BigResult {
+        double[] c = TemperatureI.convert(new double[] { 32, 212, -40 },
+                UnitsTemperature.FAHRENHEIT, UnitsTemperature.CELSIUS);
+        Assert.assertEquals(c[0], 0, 1e-9);
+        Assert.assertEquals(c[1], 100, 1e-9);
+        Assert.assertEquals(c[2], -40, 1e-9);
+    }
+
+    @Test(expectedExceptions = BigResult.class)
+    public void testBigResult() throws BigResult {
+        LengthI.convert(new double[] { 1, Double.MAX_VALUE / 10 },
+                UnitsLength.LIGHTYEAR, UnitsLength.YOCTOMETER);
+    }
 }
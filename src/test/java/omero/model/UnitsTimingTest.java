@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package omero.model;
+
+import static ome.model.units.Conversion.Int;
+import static ome.model.units.Conversion.Mul;
+import static ome.model.units.Conversion.Rat;
+import static ome.model.units.Conversion.Sym;
+
+import java.util.Random;
+
+import ome.model.units.BigResult;
+import ome.model.units.Conversion;
+import omero.model.enums.UnitsLength;
+
+import org.perf4j.StopWatch;
+import org.perf4j.slf4j.Slf4JStopWatch;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Times the unit conversions; in the "manual" group since the timings are
+ * only logged.
+ *
+ * @since 5.5.0
+ */
+@Test(groups = "manual")
+public class UnitsTimingTest {
+
+    /**
+     * Compares the time taken by the symbolic evaluation and the bulk
+     * conversion of a million values.
+     */
+    @Test
+    public void testConversionTiming() throws BigResult {
+        double[] values = new double[1000000];
+        Random random = new Random(42);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble() * 1000;
+        }
+        Conversion conversion = Mul(Rat(Int(1), Int(1000)), Sym("microm"));
+        double[] exact = new double[values.length];
+        StopWatch watch = new Slf4JStopWatch();
+        for (int i = 0; i < values.length; i++) {
+            exact[i] = conversion.convert(values[i]).doubleValue();
+        }
+        watch.lap("units.convert.bigdecimal");
+        double[] converted = LengthI.convert(values, UnitsLength.MICROMETER,
+                UnitsLength.MILLIMETER);
+        watch.stop("units.convert.bulk");
+        for (int i = 0; i < values.length; i++) {
+            Assert.assertEquals(converted[i], exact[i]);
+        }
+    }
+}
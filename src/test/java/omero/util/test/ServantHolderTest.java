@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019 University of Dundee & Open Microscopy Environment.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package omero.util.test;
+
+import java.util.concurrent.CountDownLatch;
+
+import omero.util.ServantHolder;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test the servant counting and the striped locks of {@link ServantHolder}.
+ *
+ * @since 5.5.0
+ */
+@Test(groups = "unit", timeOut = 30000)
+public class ServantHolderTest {
+
+    @Test
+    public void testServantCount() throws Exception {
+        ServantHolder holder = new ServantHolder("session", 2);
+        Ice.Identity a = holder.getIdentity("a");
+        Ice.Identity b = holder.getIdentity("b");
+        holder.put(a, new Ice.ObjectImpl());
+        holder.put(a, new Ice.ObjectImpl());
+        Assert.assertEquals(holder.getServantCount(), 1);
+        holder.put(b, new Ice.ObjectImpl());
+        Assert.assertEquals(holder.getServantCount(), 2);
+        try {
+            holder.put(holder.getIdentity("c"), new Ice.ObjectImpl());
+            Assert.fail("servantsPerSession exceeded");
+        } catch (omero.OverUsageException oue) {
+            // expected
+        }
+        Assert.assertEquals(holder.getServantCount(), 2);
+        Assert.assertNotNull(holder.remove(a));
+        Assert.assertNull(holder.remove(a));
+        Assert.assertEquals(holder.getServantCount(), 1);
+        holder.put(holder.getIdentity("c"), new Ice.ObjectImpl());
+        Assert.assertEquals(holder.getServantCount(), 2);
+    }
+
+    @Test
+    public void testLocksAreReentrant() {
+        ServantHolder holder = new ServantHolder("session", 10, 1);
+        holder.acquireLock("a");
+        holder.acquireLock("b");
+        holder.releaseLock("b");
+        holder.releaseLock("a");
+        Assert.assertEquals(holder.getLockAcquisitions(), 2);
+        Assert.assertEquals(holder.getLockContentions(), 0);
+    }
+
+    @Test(expectedExceptions = ome.conditions.InternalException.class)
+    public void testReleaseUnheldLock() {
+        new ServantHolder("session").releaseLock("a");
+    }
+
+    @Test
+    public void testContentionCounted() throws Exception {
+        final ServantHolder holder = new ServantHolder("session");
+        final CountDownLatch started = new CountDownLatch(1);
+        holder.acquireLock("a");
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                started.countDown();
+                holder.acquireLock("a");
+                holder.releaseLock("a");
+            }
+        };
+        other.start();
+        started.await();
+        while (holder.getLockContentions() == 0) {
+            Thread.sleep(10);
+        }
+        holder.releaseLock("a");
+        other.join();
+        Assert.assertEquals(holder.getLockAcquisitions(), 2);
+        Assert.assertEquals(holder.getLockContentions(), 1);
+    }
+}